@@ -31,3 +31,33 @@ def external_plugin_deps():
     artifact = "org.objenesis:objenesis:2.6",
     sha1 = "639033469776fd37c08358c6b92a4761feb2af4b",
   )
+
+  JMH_VERSION = "1.23"
+
+  maven_jar(
+    name = "jmh_core",
+    artifact = "org.openjdk.jmh:jmh-core:" + JMH_VERSION,
+    sha1 = "eb242d3261f3795c8bf09818d17c3241191284a0",
+    deps = [
+      "@jopt_simple//jar",
+      "@commons_math3//jar",
+    ],
+  )
+
+  maven_jar(
+    name = "jmh_generator_annprocess",
+    artifact = "org.openjdk.jmh:jmh-generator-annprocess:" + JMH_VERSION,
+    sha1 = "4ea76227ce15d5389a25c005b9b23f7390928fd3",
+  )
+
+  maven_jar(
+    name = "jopt_simple",
+    artifact = "net.sf.jopt-simple:jopt-simple:4.6",
+    sha1 = "306816fb57cf94f108a43c95731b08934dcae15c",
+  )
+
+  maven_jar(
+    name = "commons_math3",
+    artifact = "org.apache.commons:commons-math3:3.2",
+    sha1 = "ec2544ab27e110d2d431bdad7d538ed509b21e62",
+  )
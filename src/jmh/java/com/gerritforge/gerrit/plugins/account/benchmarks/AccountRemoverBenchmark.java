@@ -0,0 +1,125 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountDataRemovalStep;
+import com.gerritforge.gerrit.plugins.account.AccountDeletedEvents;
+import com.gerritforge.gerrit.plugins.account.AccountRemovalStep;
+import com.gerritforge.gerrit.plugins.account.AccountResourceFactory;
+import com.gerritforge.gerrit.plugins.account.AccountScrubber;
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.DeletePermissionCache;
+import com.gerritforge.gerrit.plugins.account.DeletionAuditLog;
+import com.gerritforge.gerrit.plugins.account.ExternalIdBatcher;
+import com.gerritforge.gerrit.plugins.account.GerritAccountRemover;
+import com.gerritforge.gerrit.plugins.account.PersonalRefsRemover;
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics;
+import com.gerritforge.gerrit.plugins.account.RemovalSteps;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.accounts.Accounts;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.SetInactiveFlag;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.restapi.account.PutName;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Removal of an account through the accounts API, against an in-memory account.
+ *
+ * <p>The NoteDb writes are not part of the measurement: this is the overhead of the plugin itself
+ * in listing, filtering and removing the account data, including the hand-off of the removal step
+ * to the step executor.
+ */
+@State(Scope.Thread)
+public class AccountRemoverBenchmark extends BenchmarkDefaults {
+  private static final int ACCOUNT_ID = 1000001;
+  private static final int CALLER_ID = 1000000;
+
+  private GerritAccountRemover remover;
+  private ScheduledExecutorService stepExecutor;
+  private AccountSize size;
+
+  @Setup
+  public void setup(AccountSize size) throws Exception {
+    this.size = size;
+
+    Accounts accounts = mock(Accounts.class);
+    when(accounts.id(ACCOUNT_ID)).thenReturn(size.account);
+    GerritApi api = mock(GerritApi.class);
+    when(api.accounts()).thenReturn(accounts);
+    CurrentUser caller = mock(CurrentUser.class);
+    when(caller.getAccountId()).thenReturn(Account.id(CALLER_ID));
+    Configuration config = mock(Configuration.class);
+    when(config.isTransactionalRemoval()).thenReturn(false);
+
+    stepExecutor = Executors.newSingleThreadScheduledExecutor();
+    WorkQueue workQueue = mock(WorkQueue.class);
+    when(workQueue.createQueue(anyInt(), anyString())).thenReturn(stepExecutor);
+    DynamicSet<AccountRemovalStep> steps = new DynamicSet<>();
+    steps.add(
+        "account",
+        new AccountDataRemovalStep(
+            api,
+            mock(PutName.class),
+            mock(AccountResourceFactory.class),
+            () -> caller,
+            mock(SetInactiveFlag.class),
+            config,
+            mock(AccountScrubber.class),
+            mock(ExternalIdBatcher.class)));
+
+    remover =
+        new GerritAccountRemover(
+            mock(DeletePermissionCache.class),
+            () -> caller,
+            mock(AccountScrubber.class),
+            new RemovalMetrics(new DisabledMetricMaker()),
+            new RemovalCheckpoints(Files.createTempDirectory("account-benchmarks")),
+            mock(DeletionAuditLog.class),
+            mock(AccountDeletedEvents.class),
+            new RemovalSteps(
+                steps, new ThreadLocalRequestContext(), () -> caller, workQueue, config),
+            mock(PersonalRefsRemover.class));
+  }
+
+  @TearDown
+  public void tearDown() {
+    stepExecutor.shutdown();
+  }
+
+  @Benchmark
+  public boolean removeAccount() throws Exception {
+    size.account.reset();
+    remover.removeAccount(ACCOUNT_ID);
+    return size.account.getActive();
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** An in-memory account of a typical, large or very large size. */
+@State(Scope.Thread)
+public class AccountSize {
+
+  /** Number of emails, SSH keys and external IDs of the account. */
+  @Param({"2,1,4", "10,5,20", "100,50,200"})
+  public String size;
+
+  InMemoryAccountApi account;
+
+  @Setup
+  public void setup() {
+    String[] counts = size.split(",");
+    account =
+        new InMemoryAccountApi(
+            Integer.parseInt(counts[0]), Integer.parseInt(counts[1]), Integer.parseInt(counts[2]));
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import static org.mockito.Mockito.mock;
+
+import com.gerritforge.gerrit.plugins.account.AccountLoginRedirectFilter;
+import com.gerritforge.gerrit.plugins.account.AccountRoutes;
+import com.gerritforge.gerrit.plugins.account.XAuthFilter;
+import com.google.gerrit.extensions.registration.DynamicItem;
+import com.google.gerrit.httpd.WebSession;
+import com.google.gerrit.server.CurrentUser;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-request overhead of the plugin filters, which run on every Gerrit HTTP request.
+ *
+ * <p>The {@code chainOnly} benchmark measures the cost of the stand-ins and of iterating over the
+ * request mix, the throughput of the others being bounded by it.
+ */
+@State(Scope.Thread)
+public class FilterBenchmark extends BenchmarkDefaults {
+  @Param({"true", "false"})
+  public boolean signedIn;
+
+  @Param({"realistic", "account"})
+  public String mix;
+
+  private AccountLoginRedirectFilter loginRedirectFilter;
+  private XAuthFilter xAuthFilter;
+  private StubHttpServletRequest[] requests;
+  private StubHttpServletResponse response;
+  private int next;
+  private int chained;
+  private final FilterChain chain = (req, res) -> chained++;
+
+  @Setup
+  public void setup() {
+    DynamicItem<WebSession> webSession =
+        DynamicItem.itemOf(
+            WebSession.class, StubWebSession.create(signedIn, mock(CurrentUser.class)));
+    loginRedirectFilter =
+        new AccountLoginRedirectFilter(
+            () -> RequestMix.CANONICAL_URL,
+            new AccountRoutes(() -> RequestMix.PLUGIN_URL),
+            webSession);
+    xAuthFilter = new XAuthFilter(webSession);
+    requests = RequestMix.of(mix);
+    response = new StubHttpServletResponse();
+  }
+
+  @Benchmark
+  public int chainOnly() throws IOException, ServletException {
+    chain.doFilter(nextRequest(), response);
+    return chained;
+  }
+
+  @Benchmark
+  public int loginRedirectFilter() throws IOException, ServletException {
+    loginRedirectFilter.doFilter(nextRequest(), response, chain);
+    return chained + response.writes;
+  }
+
+  @Benchmark
+  public int xAuthFilter() throws IOException, ServletException {
+    xAuthFilter.doFilter(nextRequest(), response, chain);
+    return chained + response.writes;
+  }
+
+  private StubHttpServletRequest nextRequest() {
+    StubHttpServletRequest request = requests[next];
+    next = (next + 1) % requests.length;
+    return request;
+  }
+}
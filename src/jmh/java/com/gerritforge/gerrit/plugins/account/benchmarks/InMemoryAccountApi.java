@@ -0,0 +1,119 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import com.google.gerrit.extensions.api.accounts.AccountApi;
+import com.google.gerrit.extensions.common.AccountExternalIdInfo;
+import com.google.gerrit.extensions.common.EmailInfo;
+import com.google.gerrit.extensions.common.SshKeyInfo;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Account API over an in-memory account with the given number of emails, SSH keys and external IDs,
+ * restored to its initial state by {@link #reset()}.
+ */
+class InMemoryAccountApi extends AccountApi.NotImplemented {
+  private final List<EmailInfo> initialEmails = new ArrayList<>();
+  private final List<SshKeyInfo> initialSshKeys = new ArrayList<>();
+  private final List<AccountExternalIdInfo> initialExternalIds = new ArrayList<>();
+  private List<EmailInfo> emails;
+  private List<SshKeyInfo> sshKeys;
+  private List<AccountExternalIdInfo> externalIds;
+  private boolean active;
+
+  InMemoryAccountApi(int emailCount, int sshKeyCount, int externalIdCount) {
+    for (int i = 0; i < emailCount; i++) {
+      EmailInfo email = new EmailInfo();
+      email.email = "user" + i + "@example.com";
+      initialEmails.add(email);
+    }
+    for (int i = 0; i < sshKeyCount; i++) {
+      SshKeyInfo key = new SshKeyInfo();
+      key.seq = i + 1;
+      key.sshPublicKey = "ssh-rsa AAAAB3NzaC1yc2EAAAADAQABAAABAQ" + i + " user@example.com";
+      key.valid = i % 5 != 4;
+      initialSshKeys.add(key);
+    }
+    initialExternalIds.add(externalId(ExternalId.SCHEME_USERNAME + ":user"));
+    initialExternalIds.add(externalId(ExternalId.SCHEME_GERRIT + ":user"));
+    for (int i = 2; i < externalIdCount; i++) {
+      initialExternalIds.add(
+          externalId(
+              i % 2 == 0
+                  ? ExternalId.SCHEME_MAILTO + ":user" + i + "@example.com"
+                  : "https://openid.example.com/user" + i));
+    }
+    reset();
+  }
+
+  void reset() {
+    emails = new ArrayList<>(initialEmails);
+    sshKeys = new ArrayList<>(initialSshKeys);
+    externalIds = new ArrayList<>(initialExternalIds);
+    active = true;
+  }
+
+  List<AccountExternalIdInfo> externalIds() {
+    return initialExternalIds;
+  }
+
+  @Override
+  public List<EmailInfo> getEmails() {
+    return new ArrayList<>(emails);
+  }
+
+  @Override
+  public void deleteEmail(String email) {
+    emails.removeIf(e -> e.email.equals(email));
+  }
+
+  @Override
+  public List<SshKeyInfo> listSshKeys() {
+    return new ArrayList<>(sshKeys);
+  }
+
+  @Override
+  public void deleteSshKey(int seq) {
+    sshKeys.removeIf(k -> k.seq == seq);
+  }
+
+  @Override
+  public List<AccountExternalIdInfo> getExternalIds() {
+    return new ArrayList<>(externalIds);
+  }
+
+  @Override
+  public void deleteExternalIds(List<String> identities) {
+    externalIds.removeIf(e -> identities.contains(e.identity));
+  }
+
+  @Override
+  public boolean getActive() {
+    return active;
+  }
+
+  @Override
+  public void setActive(boolean active) {
+    this.active = active;
+  }
+
+  private static AccountExternalIdInfo externalId(String identity) {
+    AccountExternalIdInfo info = new AccountExternalIdInfo();
+    info.identity = identity;
+    return info;
+  }
+}
@@ -0,0 +1,102 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import com.gerritforge.gerrit.plugins.account.AccountLoginRedirectFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javax.servlet.http.Cookie;
+
+/**
+ * A realistic mix of the requests received by Gerrit, dominated by git-over-HTTP and REST API
+ * traffic, with only a few of them targeting the plugin.
+ */
+final class RequestMix {
+  static final String CANONICAL_URL = "https://gerrit.example.com/";
+  static final String PLUGIN_URL = CANONICAL_URL + "plugins/account/";
+
+  private static final int SIZE = 1000;
+
+  static StubHttpServletRequest[] of(String mix) {
+    switch (mix) {
+      case "realistic":
+        return realistic();
+      case "account":
+        return account();
+      default:
+        throw new IllegalArgumentException("Unknown request mix " + mix);
+    }
+  }
+
+  /** Traffic of a busy server, where only 5% of the requests are for the plugin. */
+  static StubHttpServletRequest[] realistic() {
+    Cookie session = sessionCookie();
+    Cookie redirect = redirectCookie();
+
+    List<StubHttpServletRequest> requests = new ArrayList<>(SIZE);
+    add(requests, 400, "GET", "/a/project.git/info/refs", session);
+    add(requests, 150, "POST", "/a/project.git/git-upload-pack", session);
+    add(requests, 250, "GET", "/changes/?q=status:open+owner:self&O=81", session);
+    add(requests, 100, "GET", "/polygerrit_ui/elements/gr-app.js", session);
+    add(requests, 50, "GET", "/changes/project~1234/revisions/current/files", session);
+    add(requests, 20, "GET", "/plugins/account/static/account.html", session);
+    add(requests, 10, "GET", "/plugins/account/static/js/account.js", session, redirect);
+    add(requests, 15, "GET", "/a/accounts/self", session);
+    add(requests, 5, "DELETE", "/a/accounts/self/account~", session);
+    return shuffle(requests);
+  }
+
+  /** Traffic of the account self-service page only. */
+  static StubHttpServletRequest[] account() {
+    Cookie session = sessionCookie();
+    Cookie redirect = redirectCookie();
+
+    List<StubHttpServletRequest> requests = new ArrayList<>(SIZE);
+    add(requests, 300, "GET", "/plugins/account/static/account.html", session);
+    add(requests, 300, "GET", "/plugins/account/static/js/account.js", session, redirect);
+    add(requests, 300, "GET", "/a/accounts/self", session);
+    add(requests, 100, "DELETE", "/a/accounts/self/account~", session);
+    return shuffle(requests);
+  }
+
+  private static Cookie sessionCookie() {
+    return new Cookie("GerritAccount", "aSceprtBc5DXVxuKnR5Zuu7Fz7i3_kl3xS");
+  }
+
+  private static Cookie redirectCookie() {
+    return new Cookie(
+        AccountLoginRedirectFilter.REDIRECT_COOKIE, "/plugins/account/static/account.html");
+  }
+
+  private static StubHttpServletRequest[] shuffle(List<StubHttpServletRequest> requests) {
+    Collections.shuffle(requests, new Random(42));
+    return requests.toArray(new StubHttpServletRequest[0]);
+  }
+
+  private static void add(
+      List<StubHttpServletRequest> requests,
+      int count,
+      String method,
+      String uri,
+      Cookie... cookies) {
+    for (int i = 0; i < count; i++) {
+      requests.add(new StubHttpServletRequest(method, uri, cookies));
+    }
+  }
+
+  private RequestMix() {}
+}
@@ -0,0 +1,49 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+class StubHttpServletRequest extends HttpServletRequestWrapper {
+  private static final HttpServletRequest UNSUPPORTED = Stubs.unsupported(HttpServletRequest.class);
+
+  private final String method;
+  private final String requestUri;
+  private final Cookie[] cookies;
+
+  StubHttpServletRequest(String method, String requestUri, Cookie... cookies) {
+    super(UNSUPPORTED);
+    this.method = method;
+    this.requestUri = requestUri;
+    this.cookies = cookies.length > 0 ? cookies : null;
+  }
+
+  @Override
+  public String getMethod() {
+    return method;
+  }
+
+  @Override
+  public String getRequestURI() {
+    return requestUri;
+  }
+
+  @Override
+  public Cookie[] getCookies() {
+    return cookies;
+  }
+}
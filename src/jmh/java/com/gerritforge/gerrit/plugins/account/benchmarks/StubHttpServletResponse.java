@@ -0,0 +1,46 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/** Response discarding everything the filters write, only counting the calls. */
+class StubHttpServletResponse extends HttpServletResponseWrapper {
+  private static final HttpServletResponse UNSUPPORTED =
+      Stubs.unsupported(HttpServletResponse.class);
+
+  int writes;
+
+  StubHttpServletResponse() {
+    super(UNSUPPORTED);
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+    writes++;
+  }
+
+  @Override
+  public void sendRedirect(String location) {
+    writes++;
+  }
+
+  @Override
+  public void sendError(int sc) {
+    writes++;
+  }
+}
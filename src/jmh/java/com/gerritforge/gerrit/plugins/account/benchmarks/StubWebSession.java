@@ -0,0 +1,46 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import com.google.gerrit.httpd.WebSession;
+import com.google.gerrit.server.CurrentUser;
+import java.lang.reflect.Proxy;
+
+/** Web session of a user that is either signed in with an XSRF token or anonymous. */
+final class StubWebSession {
+
+  static WebSession create(boolean signedIn, CurrentUser user) {
+    return (WebSession)
+        Proxy.newProxyInstance(
+            WebSession.class.getClassLoader(),
+            new Class<?>[] {WebSession.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "isSignedIn":
+                  return signedIn;
+                case "getXGerritAuth":
+                  return signedIn ? "xsrf-token" : null;
+                case "getUser":
+                  return user;
+                case "setAccessPathOk":
+                  return null;
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  private StubWebSession() {}
+}
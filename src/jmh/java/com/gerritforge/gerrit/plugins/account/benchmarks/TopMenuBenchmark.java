@@ -0,0 +1,49 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountTopMenu;
+import com.google.gerrit.extensions.webui.TopMenu.MenuEntry;
+import com.google.gerrit.server.CurrentUser;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Top menu entries, computed on every page load of the Gerrit UI. */
+@State(Scope.Thread)
+public class TopMenuBenchmark extends BenchmarkDefaults {
+  @Param({"true", "false"})
+  public boolean identifiedUser;
+
+  private AccountTopMenu topMenu;
+
+  @Setup
+  public void setup() {
+    CurrentUser user = mock(CurrentUser.class);
+    when(user.isIdentifiedUser()).thenReturn(identifiedUser);
+    topMenu = new AccountTopMenu(() -> RequestMix.PLUGIN_URL, () -> user);
+  }
+
+  @Benchmark
+  public List<MenuEntry> getEntries() {
+    return topMenu.getEntries();
+  }
+}
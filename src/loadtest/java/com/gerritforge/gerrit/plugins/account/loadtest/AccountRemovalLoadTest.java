@@ -0,0 +1,200 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.loadtest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.gerritforge.gerrit.plugins.account.GerritAccountRemover;
+import com.google.common.base.Throwables;
+import com.google.gerrit.acceptance.LightweightPluginDaemonTest;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.acceptance.testsuite.account.AccountOperations;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.api.accounts.EmailInput;
+import com.google.gerrit.git.LockFailureException;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes accounts from concurrent threads against the All-Users repository of a test server, and
+ * reports the throughput, the latency percentiles and the lock failures.
+ *
+ * <p>The removals failing with a lock failure are resumed up to {@value #MAX_ATTEMPTS} times, after
+ * the retries of Gerrit itself, and the latency of a removal includes its resumptions. The number
+ * of accounts and threads are set with the {@code ACCOUNT_LOAD_ACCOUNTS} and {@code
+ * ACCOUNT_LOAD_THREADS} environment variables. The results are logged at the end of each run.
+ */
+@TestPlugin(
+    name = "account",
+    sysModule = "com.gerritforge.gerrit.plugins.account.Module",
+    sshModule = "com.gerritforge.gerrit.plugins.account.SshModule")
+public class AccountRemovalLoadTest extends LightweightPluginDaemonTest {
+  private static final Logger log = LoggerFactory.getLogger(AccountRemovalLoadTest.class);
+
+  private static final int ACCOUNTS = intEnv("ACCOUNT_LOAD_ACCOUNTS", 200);
+  private static final int THREADS = intEnv("ACCOUNT_LOAD_THREADS", 8);
+  private static final int EMAILS = 3;
+  private static final int SSH_KEYS = 2;
+  private static final int MAX_ATTEMPTS = 3;
+
+  @Inject private AccountOperations accountOperations;
+  @Inject private OneOffRequestContext oneOffRequestContext;
+
+  @Test
+  public void transactionalRemoval() throws Exception {
+    run("transactional");
+  }
+
+  @Test
+  @GerritConfig(name = "plugin.account.transactionalRemoval", value = "false")
+  public void legacyRemoval() throws Exception {
+    run("legacy");
+  }
+
+  private void run(String mode) throws Exception {
+    List<Account.Id> accounts = createAccounts();
+    GerritAccountRemover remover = plugin.getSysInjector().getInstance(GerritAccountRemover.class);
+
+    ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+    ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+    AtomicInteger lockFailureRetries = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    long start = System.nanoTime();
+    for (Account.Id accountId : accounts) {
+      executor.execute(
+          () -> {
+            try (ManualRequestContext ctx = oneOffRequestContext.openAs(admin.id())) {
+              long removalStart = System.nanoTime();
+              for (int attempt = 1; ; attempt++) {
+                try {
+                  if (attempt == 1) {
+                    remover.removeAccount(accountId.get());
+                  } else {
+                    remover.resumeRemoval(accountId.get());
+                  }
+                  latencies.add(System.nanoTime() - removalStart);
+                  return;
+                } catch (Exception e) {
+                  if (!isLockFailure(e) || attempt == MAX_ATTEMPTS) {
+                    failures.add(accountId + ": " + e);
+                    return;
+                  }
+                  lockFailureRetries.incrementAndGet();
+                }
+              }
+            }
+          });
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.HOURS)).isTrue();
+    long elapsed = System.nanoTime() - start;
+
+    List<Long> sorted = new ArrayList<>(latencies);
+    Collections.sort(sorted);
+    log.info(
+        "{} removal of {} accounts from {} threads: {} accounts/s, "
+            + "p50 {} ms, p95 {} ms, p99 {} ms, {} lock failure retries, {} failures",
+        mode,
+        accounts.size(),
+        THREADS,
+        String.format("%.1f", sorted.size() / (elapsed / 1e9)),
+        percentileMs(sorted, 50),
+        percentileMs(sorted, 95),
+        percentileMs(sorted, 99),
+        lockFailureRetries.get(),
+        failures.size());
+    assertThat(failures).isEmpty();
+  }
+
+  private List<Account.Id> createAccounts() throws Exception {
+    KeyPairGenerator keys = KeyPairGenerator.getInstance("RSA");
+    keys.initialize(2048);
+    List<Account.Id> accounts = new ArrayList<>(ACCOUNTS);
+    for (int i = 0; i < ACCOUNTS; i++) {
+      String name = "load" + i;
+      Account.Id accountId =
+          accountOperations
+              .newAccount()
+              .username(name)
+              .fullname("Load Test User " + i)
+              .preferredEmail(name + "@example.com")
+              .create();
+      for (int e = 1; e < EMAILS; e++) {
+        EmailInput email = new EmailInput();
+        email.email = name + "+" + e + "@example.com";
+        email.noConfirmation = true;
+        gApi.accounts().id(accountId.get()).addEmail(email);
+      }
+      for (int k = 0; k < SSH_KEYS; k++) {
+        RSAPublicKey key = (RSAPublicKey) keys.generateKeyPair().getPublic();
+        gApi.accounts().id(accountId.get()).addSshKey(sshPublicKey(key, name + "@example.com"));
+      }
+      accounts.add(accountId);
+    }
+    return accounts;
+  }
+
+  private static int intEnv(String name, int defaultValue) {
+    String value = System.getenv(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  private static boolean isLockFailure(Throwable e) {
+    return Throwables.getCausalChain(e).stream().anyMatch(LockFailureException.class::isInstance);
+  }
+
+  private static long percentileMs(List<Long> sorted, int percentile) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+    return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+  }
+
+  /** Encodes an RSA public key in the OpenSSH authorized_keys format. */
+  private static String sshPublicKey(RSAPublicKey key, String comment) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buf);
+    writeBytes(out, "ssh-rsa".getBytes(UTF_8));
+    writeBytes(out, key.getPublicExponent().toByteArray());
+    writeBytes(out, key.getModulus().toByteArray());
+    return "ssh-rsa " + Base64.getEncoder().encodeToString(buf.toByteArray()) + " " + comment;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
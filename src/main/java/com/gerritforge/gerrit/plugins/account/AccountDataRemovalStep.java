@@ -0,0 +1,162 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics.Phase;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.accounts.AccountApi;
+import com.google.gerrit.extensions.api.accounts.Accounts;
+import com.google.gerrit.extensions.common.EmailInfo;
+import com.google.gerrit.extensions.common.NameInput;
+import com.google.gerrit.extensions.common.SshKeyInfo;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.AccountResource;
+import com.google.gerrit.server.account.SetInactiveFlag;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.gerrit.server.restapi.account.PutName;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Removes the emails, SSH keys, external IDs and full name of the account and deactivates it.
+ *
+ * <p>These all update the account and external IDs refs, hence are applied one after the other:
+ * with a single update through {@link AccountScrubber} when the removal is transactional, or one
+ * phase at a time through the accounts API otherwise.
+ */
+@Singleton
+public class AccountDataRemovalStep implements AccountRemovalStep {
+  static final String NAME = "account";
+
+  private final Accounts accounts;
+  private final PutName putName;
+  private final AccountResourceFactory accountFactory;
+  private final Provider<CurrentUser> userProvider;
+  private final SetInactiveFlag setInactive;
+  private final Configuration config;
+  private final AccountScrubber scrubber;
+  private final ExternalIdBatcher externalIdBatcher;
+
+  @Inject
+  public AccountDataRemovalStep(
+      GerritApi api,
+      PutName putName,
+      AccountResourceFactory accountFactory,
+      Provider<CurrentUser> userProvider,
+      SetInactiveFlag setInactive,
+      Configuration config,
+      AccountScrubber scrubber,
+      ExternalIdBatcher externalIdBatcher) {
+    this.accounts = api.accounts();
+    this.putName = putName;
+    this.accountFactory = accountFactory;
+    this.userProvider = userProvider;
+    this.setInactive = setInactive;
+    this.config = config;
+    this.scrubber = scrubber;
+    this.externalIdBatcher = externalIdBatcher;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isBlocking() {
+    return true;
+  }
+
+  @Override
+  public void remove(RemovalContext removal) throws Exception {
+    if (config.isTransactionalRemoval()) {
+      scrubber.scrub(removal.getAccountId(), removal.checkpoint(), removal.getRecord());
+      return;
+    }
+
+    int accountId = removal.getAccountId().get();
+    DeletionRecord record = removal.getRecord();
+    AccountApi account = isMyAccount(accountId) ? accounts.self() : accounts.id(accountId);
+    removal.runPhase(Phase.EMAILS, () -> record.emails = removeAccountEmails(account));
+    removal.runPhase(Phase.SSH_KEYS, () -> record.sshKeys = removeAccountSshKeys(account));
+    removal.runPhase(
+        Phase.EXTERNAL_IDS, () -> record.externalIds = removeExternalIds(account, accountId));
+    removal.runPhase(Phase.FULL_NAME, () -> removeFullName(getAccountResource(accountId)));
+    removal.runPhase(
+        Phase.INACTIVE_FLAG,
+        () -> {
+          if (account.getActive()) {
+            setInactive.deactivate(Account.id(accountId));
+          }
+        });
+  }
+
+  private boolean isMyAccount(int accountId) {
+    CurrentUser user = userProvider.get();
+    return user.isIdentifiedUser() && user.getAccountId().get() == accountId;
+  }
+
+  private AccountResource getAccountResource(int accountId) {
+    return isMyAccount(accountId)
+        ? new AccountResource(userProvider.get().asIdentifiedUser())
+        : accountFactory.create(accountId);
+  }
+
+  private void removeFullName(AccountResource userRsc) throws Exception {
+    putName.apply(userRsc, new NameInput());
+  }
+
+  private int removeExternalIds(AccountApi account, int accountId) throws Exception {
+    List<String> externalIds = ScrubRules.removableExternalIds(account.getExternalIds());
+    if (externalIds.isEmpty()) {
+      return 0;
+    }
+    if (externalIdBatcher.isEnabled()) {
+      externalIdBatcher.update(
+          Account.id(accountId),
+          externalIds.stream().map(ExternalId.Key::parse).collect(Collectors.toList()),
+          ImmutableList.of());
+    } else {
+      account.deleteExternalIds(externalIds);
+    }
+    return externalIds.size();
+  }
+
+  private int removeAccountSshKeys(AccountApi account) throws RestApiException {
+    int removed = 0;
+    List<SshKeyInfo> accountKeys = account.listSshKeys();
+    for (SshKeyInfo sshKeyInfo : accountKeys) {
+      if (sshKeyInfo != null && sshKeyInfo.valid) {
+        account.deleteSshKey(sshKeyInfo.seq);
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  private int removeAccountEmails(AccountApi account) throws RestApiException {
+    List<EmailInfo> emails = account.getEmails();
+    for (EmailInfo email : emails) {
+      account.deleteEmail(email.email);
+    }
+    return emails.size();
+  }
+}
@@ -0,0 +1,114 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.gerritforge.gerrit.plugins.account.AccountDeletedEvent.DeletedAccount;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicItem;
+import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.events.EventDispatcher;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the removed accounts as {@link AccountDeletedEvent}s.
+ *
+ * <p>The removed accounts are queued and published by a background thread every second, at most
+ * {@value #MAX_BATCH} accounts per event, so that bulk removals do not flood the stream-events
+ * consumers with one event per account.
+ */
+@Singleton
+public class AccountDeletedEvents implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(AccountDeletedEvents.class);
+
+  private static final long PUBLISH_DELAY_MS = 1000;
+  private static final int MAX_BATCH = 100;
+
+  private final Queue<DeletedAccount> pending = new ConcurrentLinkedQueue<>();
+  private final WorkQueue workQueue;
+  private final DynamicItem<EventDispatcher> dispatcher;
+  private final AccountCache accountCache;
+  private ScheduledExecutorService publisher;
+
+  @Inject
+  AccountDeletedEvents(
+      WorkQueue workQueue, DynamicItem<EventDispatcher> dispatcher, AccountCache accountCache) {
+    this.workQueue = workQueue;
+    this.dispatcher = dispatcher;
+    this.accountCache = accountCache;
+  }
+
+  @Override
+  public void start() {
+    publisher = workQueue.createQueue(1, "AccountDeletedEvents");
+    publisher.scheduleWithFixedDelay(
+        this::publish, PUBLISH_DELAY_MS, PUBLISH_DELAY_MS, MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (publisher != null) {
+      publisher.shutdown();
+      try {
+        publisher.awaitTermination(PUBLISH_DELAY_MS, MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      publisher = null;
+    }
+    publish();
+  }
+
+  /**
+   * Captures the identifiers of an account before its removal, for publishing them once it is
+   * removed.
+   */
+  Optional<DeletedAccount> describe(Account.Id accountId) {
+    return accountCache.get(accountId).map(account -> DeletionPlan.of(account).toDeletedAccount());
+  }
+
+  /** Queues the account for the next event. */
+  void accountDeleted(DeletedAccount account) {
+    pending.add(account);
+  }
+
+  synchronized void publish() {
+    while (!pending.isEmpty()) {
+      List<DeletedAccount> batch = new ArrayList<>();
+      DeletedAccount account;
+      while (batch.size() < MAX_BATCH && (account = pending.poll()) != null) {
+        batch.add(account);
+      }
+      try {
+        dispatcher.get().postEvent(new AccountDeletedEvent(batch));
+      } catch (PermissionBackendException | RuntimeException e) {
+        log.error("Unable to publish the removal of {} accounts", batch.size(), e);
+      }
+    }
+  }
+}
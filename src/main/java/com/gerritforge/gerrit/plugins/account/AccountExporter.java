@@ -0,0 +1,187 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.client.DiffPreferencesInfo;
+import com.google.gerrit.extensions.client.EditPreferencesInfo;
+import com.google.gerrit.extensions.client.GeneralPreferencesInfo;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.server.account.AccountSshKey;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.server.account.ProjectWatches.NotifyType;
+import com.google.gerrit.server.account.ProjectWatches.ProjectWatchKey;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Exports the personal data held in All-Users for an account.
+ *
+ * <p>The account state and SSH keys are loaded once, before anything is written, so that a missing
+ * account is reported before the export starts. The sections of the export are then written one
+ * record at a time to a {@link Sink}, which streams them to the client.
+ */
+@Singleton
+public class AccountExporter {
+
+  /** Receives the sections of an export, in order. */
+  interface Sink {
+    void object(String section, Object value) throws IOException;
+
+    void list(String section, Iterable<?> values) throws IOException;
+  }
+
+  public static class AccountData {
+    public Integer accountId;
+    public String username;
+    public String fullName;
+    public String displayName;
+    public String preferredEmail;
+    public String status;
+    public Timestamp registeredOn;
+    public Boolean active;
+  }
+
+  public static class ExternalIdData {
+    public String identity;
+    public String email;
+  }
+
+  public static class PreferencesData {
+    public GeneralPreferencesInfo general;
+    public DiffPreferencesInfo diff;
+    public EditPreferencesInfo edit;
+  }
+
+  public static class WatchData {
+    public String project;
+    public String filter;
+    public List<String> notify;
+  }
+
+  /** The loaded data of an account, ready to be written. */
+  public class Export {
+    private final AccountState account;
+    private final List<AccountSshKey> sshKeys;
+
+    private Export(AccountState account, List<AccountSshKey> sshKeys) {
+      this.account = account;
+      this.sshKeys = sshKeys;
+    }
+
+    void writeTo(Sink sink) throws IOException {
+      sink.object("account", accountData());
+      sink.list("emails", emails());
+      sink.list(
+          "external_ids",
+          () -> account.externalIds().stream().map(AccountExporter::externalIdData).iterator());
+      sink.list("ssh_keys", () -> sshKeys.stream().map(DeletionPlan::toSshKeyInfo).iterator());
+      sink.object("preferences", preferences());
+      sink.list(
+          "watches",
+          () ->
+              account.projectWatches().entrySet().stream()
+                  .map(AccountExporter::watchData)
+                  .iterator());
+    }
+
+    private AccountData accountData() {
+      Account a = account.account();
+      AccountData data = new AccountData();
+      data.accountId = a.id().get();
+      data.username = account.userName().orElse(null);
+      data.fullName = a.fullName();
+      data.displayName = a.displayName();
+      data.preferredEmail = a.preferredEmail();
+      data.status = a.status();
+      data.registeredOn = a.registeredOn();
+      data.active = a.isActive();
+      return data;
+    }
+
+    private Set<String> emails() {
+      Set<String> emails = new LinkedHashSet<>();
+      if (account.account().preferredEmail() != null) {
+        emails.add(account.account().preferredEmail());
+      }
+      for (ExternalId extId : account.externalIds()) {
+        if (extId.email() != null) {
+          emails.add(extId.email());
+        }
+      }
+      return emails;
+    }
+
+    private PreferencesData preferences() {
+      PreferencesData data = new PreferencesData();
+      data.general = account.generalPreferences();
+      data.diff = account.diffPreferences();
+      data.edit = account.editPreferences();
+      return data;
+    }
+  }
+
+  private final Accounts accounts;
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsersName;
+
+  @Inject
+  public AccountExporter(
+      Accounts accounts, GitRepositoryManager repoManager, AllUsersName allUsersName) {
+    this.accounts = accounts;
+    this.repoManager = repoManager;
+    this.allUsersName = allUsersName;
+  }
+
+  public Export load(Account.Id accountId) throws Exception {
+    AccountState account =
+        accounts
+            .get(accountId)
+            .orElseThrow(() -> new ResourceNotFoundException("account " + accountId.get()));
+    ScrubbedAuthorizedKeys keys = new ScrubbedAuthorizedKeys(accountId);
+    try (Repository repo = repoManager.openRepository(allUsersName)) {
+      keys.load(allUsersName, repo);
+    }
+    return new Export(account, keys.getKeys());
+  }
+
+  /** Exports an external ID without its password. */
+  private static ExternalIdData externalIdData(ExternalId extId) {
+    ExternalIdData data = new ExternalIdData();
+    data.identity = extId.key().get();
+    data.email = extId.email();
+    return data;
+  }
+
+  private static WatchData watchData(Map.Entry<ProjectWatchKey, ? extends Set<NotifyType>> watch) {
+    WatchData data = new WatchData();
+    data.project = watch.getKey().project().get();
+    data.filter = watch.getKey().filter();
+    data.notify = watch.getValue().stream().map(NotifyType::name).collect(Collectors.toList());
+    return data;
+  }
+}
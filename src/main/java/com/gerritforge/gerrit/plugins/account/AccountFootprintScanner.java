@@ -0,0 +1,280 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Comment;
+import com.google.gerrit.entities.PatchSetApproval;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.index.query.QueryResult;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.GroupIncludeCache;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.gerrit.server.query.change.ChangeQueryProcessor;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the changes owned, reviewed, voted and commented by accounts, and their group memberships.
+ *
+ * <p>The accounts are scanned in chunks of at most {@link #ACCOUNTS_PER_QUERY}, each with a single
+ * change query matching the changes owned, reviewed or commented by any account of the chunk, and
+ * the chunks are scanned in parallel on a fork-join pool. Each chunk only counts its own accounts,
+ * hence a change matched by several chunks is never counted twice for the same account.
+ *
+ * <p>The change index returns the most recently updated changes first, so the query is paged by
+ * continuing from the last update time of the previous page, rather than by an offset that the
+ * index would have to skip again for every page. The changes updated at that same time are returned
+ * again by the next page and skipped.
+ */
+@Singleton
+public class AccountFootprintScanner implements LifecycleListener {
+  private static final int PAGE_SIZE = 500;
+  /** Accounts per change query, bounded to stay below the maximum number of index terms. */
+  private static final int ACCOUNTS_PER_QUERY = 100;
+
+  private static final DateTimeFormatter TIMESTAMP_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+
+  private final GroupIncludeCache groupIncludeCache;
+  private final Provider<ChangeQueryBuilder> queryBuilder;
+  private final Provider<ChangeQueryProcessor> queryProcessor;
+  private final ThreadLocalRequestContext requestContext;
+  private final Provider<CurrentUser> userProvider;
+  private final int parallelism;
+  private ForkJoinPool pool;
+
+  @Inject
+  public AccountFootprintScanner(
+      GroupIncludeCache groupIncludeCache,
+      Provider<ChangeQueryBuilder> queryBuilder,
+      Provider<ChangeQueryProcessor> queryProcessor,
+      ThreadLocalRequestContext requestContext,
+      Provider<CurrentUser> userProvider,
+      Configuration config) {
+    this.groupIncludeCache = groupIncludeCache;
+    this.queryBuilder = queryBuilder;
+    this.queryProcessor = queryProcessor;
+    this.requestContext = requestContext;
+    this.userProvider = userProvider;
+    this.parallelism = config.getFootprintThreads();
+  }
+
+  @Override
+  public synchronized void start() {
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (pool != null) {
+      pool.shutdownNow();
+      pool = null;
+    }
+  }
+
+  /** Returns the footprints of the accounts, in the same order, counting all the changes. */
+  public List<FootprintInfo> scan(Collection<Account.Id> accounts) throws QueryParseException {
+    return scan(accounts, false);
+  }
+
+  /**
+   * Returns the footprints of the accounts, in the same order.
+   *
+   * @param enforceVisibility whether only the changes visible to the caller are counted.
+   */
+  public List<FootprintInfo> scan(Collection<Account.Id> accounts, boolean enforceVisibility)
+      throws QueryParseException {
+    List<List<Account.Id>> chunks = new ArrayList<>();
+    Iterables.partition(ImmutableSet.copyOf(accounts), ACCOUNTS_PER_QUERY).forEach(chunks::add);
+    Map<Integer, FootprintInfo> footprints =
+        pool().invoke(new ChunksScan(userProvider.get(), chunks, enforceVisibility));
+    List<FootprintInfo> result = new ArrayList<>();
+    for (Account.Id accountId : accounts) {
+      FootprintInfo footprint =
+          footprints.getOrDefault(accountId.get(), new FootprintInfo(accountId.get()));
+      footprint.groups = groupIncludeCache.getGroupsWithMember(accountId).size();
+      result.add(footprint);
+    }
+    return result;
+  }
+
+  private synchronized ForkJoinPool pool() {
+    if (pool == null) {
+      throw new IllegalStateException("footprint scanner is stopped");
+    }
+    return pool;
+  }
+
+  /** Splits the chunks of accounts in halves down to a single chunk per task. */
+  private class ChunksScan extends RecursiveTask<Map<Integer, FootprintInfo>> {
+    private final CurrentUser caller;
+    private final List<List<Account.Id>> chunks;
+    private final boolean enforceVisibility;
+
+    ChunksScan(CurrentUser caller, List<List<Account.Id>> chunks, boolean enforceVisibility) {
+      this.caller = caller;
+      this.chunks = chunks;
+      this.enforceVisibility = enforceVisibility;
+    }
+
+    @Override
+    protected Map<Integer, FootprintInfo> compute() {
+      if (chunks.size() > 1) {
+        int middle = chunks.size() / 2;
+        ChunksScan left = new ChunksScan(caller, chunks.subList(0, middle), enforceVisibility);
+        ChunksScan right =
+            new ChunksScan(caller, chunks.subList(middle, chunks.size()), enforceVisibility);
+        left.fork();
+        Map<Integer, FootprintInfo> footprints = right.compute();
+        footprints.putAll(left.join());
+        return footprints;
+      }
+
+      Map<Integer, FootprintInfo> footprints = new LinkedHashMap<>();
+      if (chunks.isEmpty()) {
+        return footprints;
+      }
+      RequestContext old = requestContext.setContext(() -> caller);
+      try {
+        scanChunk(chunks.get(0), enforceVisibility, new FootprintScan(chunks.get(0), footprints));
+        return footprints;
+      } catch (QueryParseException e) {
+        throw new StorageException("Unable to scan the changes of " + chunks.get(0), e);
+      } finally {
+        requestContext.setContext(old);
+      }
+    }
+  }
+
+  private void scanChunk(List<Account.Id> chunk, boolean enforceVisibility, FootprintScan scan)
+      throws QueryParseException {
+    Predicate<ChangeData> query =
+        queryBuilder
+            .get()
+            .parse(
+                chunk.stream()
+                    .map(
+                        id ->
+                            String.format(
+                                "owner:%1$d OR reviewer:%1$d OR commentby:%1$d", id.get()))
+                    .collect(joining(" OR ")));
+    Predicate<ChangeData> predicate = query;
+    int limit = PAGE_SIZE;
+    while (true) {
+      QueryResult<ChangeData> page =
+          queryProcessor
+              .get()
+              .enforceVisibility(enforceVisibility)
+              .setUserProvidedLimit(limit)
+              .query(predicate);
+      int added = 0;
+      Timestamp lastUpdatedOn = null;
+      for (ChangeData change : page.entities()) {
+        if (scan.add(change)) {
+          added++;
+        }
+        lastUpdatedOn = change.change().getLastUpdatedOn();
+      }
+      if (!page.more()) {
+        return;
+      }
+      if (added == 0) {
+        // The page only holds changes updated at the same time as the last one of the previous
+        // page: it is widened until it gets past them, as far as the index allows
+        if (page.entities().size() < limit) {
+          throw new StorageException(
+              "More than " + page.entities().size() + " changes updated at " + lastUpdatedOn);
+        }
+        limit *= 2;
+      } else {
+        limit = PAGE_SIZE;
+      }
+      predicate =
+          Predicate.and(
+              query,
+              queryBuilder
+                  .get()
+                  .parse("until:\"" + TIMESTAMP_FORMAT.format(lastUpdatedOn.toInstant()) + "\""));
+    }
+  }
+
+  /** Accumulates the footprints of a chunk of accounts in the changes matching them. */
+  private static class FootprintScan {
+    private final Set<Account.Id> accounts;
+    private final Map<Integer, FootprintInfo> footprints;
+    private final Set<Change.Id> scanned = new HashSet<>();
+
+    FootprintScan(Collection<Account.Id> accounts, Map<Integer, FootprintInfo> footprints) {
+      this.accounts = ImmutableSet.copyOf(accounts);
+      this.footprints = footprints;
+    }
+
+    /** Counts the change, unless already counted, and returns whether it was. */
+    boolean add(ChangeData change) {
+      if (!scanned.add(change.getId())) {
+        return false;
+      }
+      Account.Id owner = change.change().getOwner();
+      if (accounts.contains(owner)) {
+        footprint(owner).changesOwned++;
+      }
+      for (Account.Id reviewer : change.reviewers().all()) {
+        if (accounts.contains(reviewer)) {
+          footprint(reviewer).reviews++;
+        }
+      }
+      for (PatchSetApproval approval : change.approvals().values()) {
+        if (approval.value() != 0 && accounts.contains(approval.accountId())) {
+          footprint(approval.accountId()).votes++;
+        }
+      }
+      for (Comment comment : change.publishedComments()) {
+        if (accounts.contains(comment.author.getId())) {
+          footprint(comment.author.getId()).comments++;
+        }
+      }
+      return true;
+    }
+
+    private FootprintInfo footprint(Account.Id accountId) {
+      return footprints.computeIfAbsent(accountId.get(), FootprintInfo::new);
+    }
+  }
+}
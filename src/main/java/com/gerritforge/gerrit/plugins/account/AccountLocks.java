@@ -0,0 +1,37 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.inject.Singleton;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Per-account locks serializing the changes of the plugin to the same account.
+ *
+ * <p>The locks are striped and created on demand, so that accounts are only serialized with the few
+ * others sharing their stripe, without keeping a lock per account ever removed.
+ */
+@Singleton
+public class AccountLocks {
+  private static final int STRIPES = 1024;
+
+  private final Striped<Lock> locks = Striped.lazyWeakLock(STRIPES);
+
+  /** Lock of the account, reentrant for the thread holding it. */
+  public Lock get(int accountId) {
+    return locks.get(accountId);
+  }
+}
@@ -15,7 +15,6 @@
 package com.gerritforge.gerrit.plugins.account;
 
 import com.google.gerrit.common.Nullable;
-import com.google.gerrit.extensions.annotations.PluginCanonicalWebUrl;
 import com.google.gerrit.extensions.registration.DynamicItem;
 import com.google.gerrit.httpd.AllRequestFilter;
 import com.google.gerrit.httpd.WebSession;
@@ -24,10 +23,6 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Arrays;
-import java.util.Optional;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
@@ -43,17 +38,17 @@ public class AccountLoginRedirectFilter extends AllRequestFilter {
   public static final int REDIRECT_COOKIE_TTL = 300;
 
   private final Provider<String> urlProvider;
-  private final Provider<String> pluginUrlProvider;
+  private final AccountRoutes routes;
   private final DynamicItem<WebSession> webSession;
 
   @Inject
   public AccountLoginRedirectFilter(
       @CanonicalWebUrl @Nullable Provider<String> urlProvider,
-      @PluginCanonicalWebUrl Provider<String> pluginUrlProvider,
+      AccountRoutes routes,
       DynamicItem<WebSession> webSession) {
     this.urlProvider = urlProvider;
     this.webSession = webSession;
-    this.pluginUrlProvider = pluginUrlProvider;
+    this.routes = routes;
   }
 
   @Override
@@ -62,58 +57,62 @@ public class AccountLoginRedirectFilter extends AllRequestFilter {
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
-    Optional<String> redirectUrl =
-        getRedirectUrlFromCookie((HttpServletRequest) request)
-            .filter(r -> webSession.get().isSignedIn());
-    String requestUri = ((HttpServletRequest) request).getRequestURI();
-    String pluginUri = getPluginUri();
-    HttpServletResponse httpResponse = (HttpServletResponse) response;
-
-    if (redirectUrl.isPresent() && webSession.get().isSignedIn()) {
-      redirectAndResetCookie(httpResponse, redirectUrl.get());
-    } else if (requestUri.startsWith(pluginUri) && !webSession.get().isSignedIn()) {
-      Cookie redirectCookie = new Cookie(REDIRECT_COOKIE, requestUri);
-      redirectCookie.setPath("/");
-      redirectCookie.setMaxAge(REDIRECT_COOKIE_TTL);
-      redirectCookie.setSecure(false);
-      httpResponse.addCookie(redirectCookie);
-      httpResponse.sendRedirect(urlProvider.get() + "login");
-    } else {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    String requestUri = httpRequest.getRequestURI();
+    boolean pluginRequest = routes.isPluginRequest(requestUri);
+    Cookie redirectCookie = getRedirectCookie(httpRequest);
+    if (!pluginRequest && redirectCookie == null) {
       chain.doFilter(request, response);
+      return;
     }
-  }
 
-  private String getPluginUri() throws ServletException {
-    String pluginUrl = pluginUrlProvider.get();
-    try {
-      return new URI(pluginUrl).getPath();
-    } catch (URISyntaxException e) {
-      throw new ServletException("Plugin has an invalid canonical URL " + pluginUrl, e);
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    if (webSession.get().isSignedIn()) {
+      String redirectUrl =
+          redirectCookie != null ? resolveUrl(urlProvider.get(), redirectCookie.getValue()) : null;
+      if (redirectUrl != null) {
+        redirectAndResetCookie(httpResponse, redirectUrl);
+        return;
+      }
+    } else if (pluginRequest) {
+      Cookie newRedirectCookie = new Cookie(REDIRECT_COOKIE, requestUri);
+      newRedirectCookie.setPath("/");
+      newRedirectCookie.setMaxAge(REDIRECT_COOKIE_TTL);
+      newRedirectCookie.setSecure(false);
+      httpResponse.addCookie(newRedirectCookie);
+      httpResponse.sendRedirect(urlProvider.get() + "login");
+      return;
     }
+
+    chain.doFilter(request, response);
   }
 
-  private Optional<String> getRedirectUrlFromCookie(HttpServletRequest httpRequest) {
+  @Nullable
+  private static Cookie getRedirectCookie(HttpServletRequest httpRequest) {
     Cookie[] cookies = httpRequest.getCookies();
     if (cookies == null) {
-      return Optional.empty();
+      return null;
     }
 
-    return Arrays.stream(cookies)
-        .filter(c -> c.getName().equals(REDIRECT_COOKIE))
-        .findFirst()
-        .flatMap(c -> resolveUrl(urlProvider.get(), c.getValue()));
+    for (Cookie cookie : cookies) {
+      if (cookie.getName().equals(REDIRECT_COOKIE)) {
+        return cookie;
+      }
+    }
+    return null;
   }
 
-  private Optional<String> resolveUrl(String canonicalUrl, String path) {
+  @Nullable
+  private static String resolveUrl(String canonicalUrl, String path) {
     if (path.startsWith(canonicalUrl)) {
-      return Optional.of(path);
+      return path;
     }
 
     if (!path.startsWith("http")) {
-      return Optional.of(canonicalUrl + (path.startsWith("/") ? path.substring(1) : path));
+      return canonicalUrl + (path.startsWith("/") ? path.substring(1) : path);
     }
 
-    return Optional.empty();
+    return null;
   }
 
   private void redirectAndResetCookie(HttpServletResponse response, String redirectUrl)
@@ -0,0 +1,131 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.ScheduleConfig.Schedule;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically removes the accounts matching the configured account index query.
+ *
+ * <p>The matching accounts are spooled by {@link AccountQuerySpooler} before any of them is
+ * removed. Accounts that have already been scrubbed are not collected again. The removals run one
+ * at a time, as the server, at a rate adapted to their latency by {@link PurgeThrottle}, on a
+ * dedicated queue so that a long purge never holds a thread of the default queue.
+ */
+@Singleton
+public class AccountPurger implements LifecycleListener, Runnable {
+  private static final Logger log = LoggerFactory.getLogger(AccountPurger.class);
+
+  private final WorkQueue workQueue;
+  private final Configuration config;
+  private final AccountRemover remover;
+  private final AccountQuerySpooler spooler;
+  private final PersonalRefsRemover personalRefsRemover;
+  private final OneOffRequestContext oneOffRequestContext;
+  private ScheduledExecutorService purgeQueue;
+
+  @Inject
+  AccountPurger(
+      WorkQueue workQueue,
+      Configuration config,
+      AccountRemover remover,
+      AccountQuerySpooler spooler,
+      PersonalRefsRemover personalRefsRemover,
+      OneOffRequestContext oneOffRequestContext) {
+    this.workQueue = workQueue;
+    this.config = config;
+    this.remover = remover;
+    this.spooler = spooler;
+    this.personalRefsRemover = personalRefsRemover;
+    this.oneOffRequestContext = oneOffRequestContext;
+  }
+
+  @Override
+  public void start() {
+    Optional<Schedule> schedule = config.getPurgeSchedule();
+    if (!config.getPurgeQuery().isPresent() || !schedule.isPresent()) {
+      return;
+    }
+    purgeQueue = workQueue.createQueue(1, "AccountPurge");
+    purgeQueue.scheduleAtFixedRate(
+        this, schedule.get().initialDelay(), schedule.get().interval(), MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (purgeQueue != null) {
+      purgeQueue.shutdownNow();
+      purgeQueue = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    String query = config.getPurgeQuery().get();
+    try (ManualRequestContext ctx = oneOffRequestContext.open();
+        AccountQuerySpooler.Spool accounts =
+            spooler.spool(query, account -> !DeletionPlan.of(account).isEmpty())) {
+      log.info("Purging {} accounts matching '{}'", accounts.size(), query);
+      purge(accounts);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Purge of the accounts matching '{}' interrupted", query);
+    } catch (Exception e) {
+      log.error("Unable to purge the accounts matching '{}'", query, e);
+    }
+  }
+
+  private void purge(AccountQuerySpooler.Spool accounts) throws InterruptedException {
+    PurgeThrottle throttle =
+        new PurgeThrottle(config.getPurgeMaxRate() / 60.0, config.getPurgeTargetLatencyMs());
+    int purged = 0;
+    try (PersonalRefsRemover.Batch batch = personalRefsRemover.newBatch()) {
+      while (accounts.hasNext()) {
+        int accountId = Integer.parseInt(accounts.next());
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        throttle.acquire();
+        long start = System.nanoTime();
+        try {
+          batch.remove(Account.id(accountId), () -> remover.removeAccount(accountId));
+          purged++;
+        } catch (Exception e) {
+          log.error("Unable to purge account {}", accountId, e);
+        }
+        throttle.removed(System.nanoTime() - start);
+      }
+    }
+    log.info("Purged {} of {} accounts", purged, accounts.size());
+  }
+
+  @Override
+  public String toString() {
+    return "Purge accounts matching '" + config.getPurgeQuery().orElse("") + "'";
+  }
+}
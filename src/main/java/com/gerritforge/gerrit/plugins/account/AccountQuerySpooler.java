@@ -0,0 +1,169 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.Iterables;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.index.query.QueryResult;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.server.query.account.AccountPredicates;
+import com.google.gerrit.server.query.account.AccountQueryBuilder;
+import com.google.gerrit.server.query.account.AccountQueryProcessor;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the ids of the accounts matching an account index query into a temporary file.
+ *
+ * <p>The accounts are paged through in ascending id ranges of the All-Users accounts, each page
+ * being the query restricted to the ids of one range. Every page is therefore a single bounded
+ * index query starting at the first result, so that the cost is linear in the number of accounts
+ * and the query is never rejected for going beyond the {@code index.maxPages} pages, whatever the
+ * number of matches. The matching accounts are all collected before any of them is removed, so that
+ * removals changing the query results cannot make the paging skip accounts. The ids are then read
+ * back one at a time by {@link Spool}, so that a query matching any number of accounts is processed
+ * with only one page in memory.
+ */
+@Singleton
+public class AccountQuerySpooler {
+  /** Account ids per page, bounded to stay below the maximum number of index query terms. */
+  private static final int PAGE_SIZE = 500;
+
+  private final Accounts accounts;
+  private final Provider<AccountQueryBuilder> queryBuilder;
+  private final Provider<AccountQueryProcessor> queryProcessor;
+
+  @Inject
+  public AccountQuerySpooler(
+      Accounts accounts,
+      Provider<AccountQueryBuilder> queryBuilder,
+      Provider<AccountQueryProcessor> queryProcessor) {
+    this.accounts = accounts;
+    this.queryBuilder = queryBuilder;
+    this.queryProcessor = queryProcessor;
+  }
+
+  /** Checks that the query is valid, without running it. */
+  public void validate(String query) throws QueryParseException {
+    queryBuilder.get().parse(query);
+  }
+
+  /** Spools the ids of all the accounts matching the query. */
+  public Spool spool(String query) throws QueryParseException, IOException {
+    return spool(query, account -> true);
+  }
+
+  /** Spools the ids of the accounts matching the query and the filter. */
+  public Spool spool(String query, java.util.function.Predicate<AccountState> filter)
+      throws QueryParseException, IOException {
+    Predicate<AccountState> predicate = queryBuilder.get().parse(query);
+    Path file = Files.createTempFile("account-query", ".ids");
+    int size = 0;
+    try (BufferedWriter out = Files.newBufferedWriter(file, UTF_8)) {
+      for (List<Account.Id> range : Iterables.partition(accounts.allIds(), PAGE_SIZE)) {
+        QueryResult<AccountState> page =
+            queryProcessor
+                .get()
+                .enforceVisibility(false)
+                .setUserProvidedLimit(PAGE_SIZE)
+                .query(
+                    Predicate.and(
+                        predicate,
+                        Predicate.or(
+                            range.stream()
+                                .map(AccountPredicates::id)
+                                .collect(Collectors.toList()))));
+        for (AccountState account : page.entities()) {
+          if (filter.test(account)) {
+            out.write(Integer.toString(account.account().id().get()));
+            out.newLine();
+            size++;
+          }
+        }
+      }
+    } catch (QueryParseException | IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return new Spool(file, size);
+  }
+
+  /** The spooled account ids, read lazily; closing it deletes the temporary file. */
+  public static class Spool implements Iterator<String>, Closeable {
+    private final Path file;
+    private final int size;
+    private final BufferedReader reader;
+    private String next;
+
+    private Spool(Path file, int size) throws IOException {
+      this.file = file;
+      this.size = size;
+      this.reader = Files.newBufferedReader(file, UTF_8);
+    }
+
+    /** Returns the number of spooled accounts. */
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        try {
+          next = reader.readLine();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String id = next;
+      next = null;
+      return id;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        reader.close();
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
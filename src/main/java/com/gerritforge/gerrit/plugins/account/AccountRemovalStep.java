@@ -0,0 +1,58 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.extensions.annotations.ExtensionPoint;
+import java.util.Set;
+
+/**
+ * A step of the removal of an account.
+ *
+ * <p>The steps are run by {@link RemovalSteps}, concurrently unless ordered by their dependencies.
+ * Besides the built-in removal of the account data, other plugins can bind their own steps, e.g.
+ * for removing the account from an LDAP directory or notifying a webhook:
+ *
+ * <pre>
+ * DynamicSet.bind(binder(), AccountRemovalStep.class).to(MyRemovalStep.class);
+ * </pre>
+ *
+ * <p>A step runs on behalf of the caller of the removal. A removal is completed only once all its
+ * steps, blocking or not, have succeeded: until then, resuming it runs all the steps again, hence
+ * they should be idempotent.
+ */
+@ExtensionPoint
+public interface AccountRemovalStep {
+
+  /** Returns the name of the step, unique among all the steps. */
+  String getName();
+
+  /** Returns the names of the steps that need to complete successfully before this one starts. */
+  default Set<String> getDependencies() {
+    return ImmutableSet.of();
+  }
+
+  /**
+   * Whether the removal of the account waits for this step to complete and fails with it.
+   *
+   * <p>The other steps complete in the background, after the removal has been returned to the
+   * caller, and their failures are only logged.
+   */
+  default boolean isBlocking() {
+    return false;
+  }
+
+  void remove(RemovalContext removal) throws Exception;
+}
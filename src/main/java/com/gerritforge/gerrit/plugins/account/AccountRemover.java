@@ -16,10 +16,17 @@ package com.gerritforge.gerrit.plugins.account;
 
 import com.google.inject.ImplementedBy;
 
-@ImplementedBy(GerritAccountRemover.class)
+@ImplementedBy(CoalescingAccountRemover.class)
 public interface AccountRemover {
 
   void removeAccount(int accountId) throws Exception;
 
+  /** Removes the account, skipping the steps already completed by a previous removal. */
+  void resumeRemoval(int accountId) throws Exception;
+
+  DeletionPlanInfo planRemoval(int accountId) throws Exception;
+
   boolean canDelete(int accountId);
+
+  boolean canDeleteAnyAccount();
 }
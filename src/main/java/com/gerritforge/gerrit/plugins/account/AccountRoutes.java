@@ -0,0 +1,69 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.annotations.PluginCanonicalWebUrl;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.net.URI;
+import java.net.URISyntaxException;
+import javax.servlet.ServletException;
+
+/**
+ * Matches the requests handled by the plugin filters.
+ *
+ * <p>The filters run on every Gerrit HTTP request, hence the matching is done with a few string
+ * comparisons and the plugin path is parsed only once from its canonical URL.
+ */
+@Singleton
+public class AccountRoutes {
+  public static final String SELF_URI_SUFFIX = "/a/accounts/self";
+  public static final String SELF_DELETE_URI_SUFFIX = "/a/accounts/self/account~";
+
+  private final Provider<String> pluginUrlProvider;
+  private volatile String pluginPath;
+
+  @Inject
+  public AccountRoutes(@PluginCanonicalWebUrl Provider<String> pluginUrlProvider) {
+    this.pluginUrlProvider = pluginUrlProvider;
+  }
+
+  public boolean isPluginRequest(String requestUri) throws ServletException {
+    return requestUri.startsWith(getPluginPath());
+  }
+
+  /** Returns true for the REST API requests that the self-service page sends with XSRF token. */
+  public static boolean isSelfRequest(String method, String requestUri) {
+    if (requestUri.endsWith(SELF_URI_SUFFIX)) {
+      return method.equals("GET");
+    }
+    return requestUri.endsWith(SELF_DELETE_URI_SUFFIX) && method.equals("DELETE");
+  }
+
+  private String getPluginPath() throws ServletException {
+    String path = pluginPath;
+    if (path == null) {
+      String pluginUrl = pluginUrlProvider.get();
+      try {
+        path = new URI(pluginUrl).getPath();
+      } catch (URISyntaxException e) {
+        throw new ServletException("Plugin has an invalid canonical URL " + pluginUrl, e);
+      }
+      pluginPath = path;
+    }
+    return path;
+  }
+}
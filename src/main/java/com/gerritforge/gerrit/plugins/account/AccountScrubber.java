@@ -0,0 +1,219 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints.Checkpoint;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics.Phase;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.git.RefUpdateUtil;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.ServerInitiated;
+import com.google.gerrit.server.UserInitiated;
+import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.server.account.AccountsUpdate;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.ssh.SshKeyCache;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Removes the personal information of an account with a single update of its All-Users state.
+ *
+ * <p>External IDs, emails, full name and the inactive flag are written through one {@link
+ * AccountsUpdate}, which reads the account state once and updates the account and external IDs refs
+ * atomically. The SSH keys, which {@link AccountsUpdate} does not manage, are all removed in one
+ * extra commit only when the account has any, made before the account update so that the account is
+ * reindexed and the caches evicted only once, see {@link DeletionScope}.
+ *
+ * <p>When {@link ExternalIdBatcher} is enabled, the external IDs are instead removed before the
+ * account update, together with the ones of the concurrent deletions, without reindexing the
+ * account: the account update that follows reindexes it and evicts it from the caches once for
+ * both.
+ *
+ * <p>The same {@link DeletionPlan} is also computed without writing anything by {@link
+ * #plan(Account.Id)}, for dry runs.
+ */
+@Singleton
+public class AccountScrubber {
+  private final Provider<AccountsUpdate> accountsUpdateProvider;
+  private final Provider<AccountsUpdate> serverAccountsUpdateProvider;
+  private final Provider<CurrentUser> userProvider;
+  private final Provider<MetaDataUpdate.User> metaDataUpdateFactory;
+  private final Provider<MetaDataUpdate.Server> serverMetaDataUpdateFactory;
+  private final Accounts accounts;
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsersName;
+  private final SshKeyCache sshKeyCache;
+  private final AccountCache accountCache;
+  private final GitReferenceUpdated gitRefUpdated;
+  private final RemovalMetrics metrics;
+  private final ExternalIdBatcher externalIdBatcher;
+
+  @Inject
+  public AccountScrubber(
+      @UserInitiated Provider<AccountsUpdate> accountsUpdateProvider,
+      @ServerInitiated Provider<AccountsUpdate> serverAccountsUpdateProvider,
+      Provider<CurrentUser> userProvider,
+      Provider<MetaDataUpdate.User> metaDataUpdateFactory,
+      Provider<MetaDataUpdate.Server> serverMetaDataUpdateFactory,
+      Accounts accounts,
+      GitRepositoryManager repoManager,
+      AllUsersName allUsersName,
+      SshKeyCache sshKeyCache,
+      AccountCache accountCache,
+      GitReferenceUpdated gitRefUpdated,
+      RemovalMetrics metrics,
+      ExternalIdBatcher externalIdBatcher) {
+    this.accountsUpdateProvider = accountsUpdateProvider;
+    this.serverAccountsUpdateProvider = serverAccountsUpdateProvider;
+    this.userProvider = userProvider;
+    this.metaDataUpdateFactory = metaDataUpdateFactory;
+    this.serverMetaDataUpdateFactory = serverMetaDataUpdateFactory;
+    this.accounts = accounts;
+    this.repoManager = repoManager;
+    this.allUsersName = allUsersName;
+    this.sshKeyCache = sshKeyCache;
+    this.accountCache = accountCache;
+    this.gitRefUpdated = gitRefUpdated;
+    this.metrics = metrics;
+    this.externalIdBatcher = externalIdBatcher;
+  }
+
+  public void scrub(Account.Id accountId, Checkpoint checkpoint, DeletionRecord record)
+      throws Exception {
+    try (DeletionScope scope = openScope(accountId)) {
+      if (!checkpoint.isDone(Phase.SSH_KEYS)) {
+        try (Timer0.Context ctx = metrics.startPhase(Phase.SSH_KEYS)) {
+          record.sshKeys = removeSshKeys(accountId, scope);
+        }
+        checkpoint.done(Phase.SSH_KEYS);
+      }
+
+      boolean batchExternalIds = externalIdBatcher.isEnabled();
+      AtomicReference<DeletionPlan> plan = new AtomicReference<>();
+      if (batchExternalIds && !checkpoint.isDone(Phase.EXTERNAL_IDS)) {
+        plan.set(DeletionPlan.of(accounts.get(accountId).orElseThrow(() -> notFound(accountId))));
+        try (Timer0.Context ctx = metrics.startPhase(Phase.EXTERNAL_IDS)) {
+          externalIdBatcher.update(
+              accountId, plan.get().externalIdKeysToDelete(), plan.get().externalIdsToUpdate());
+        }
+        record.externalIds = plan.get().externalIds();
+        checkpoint.done(Phase.EXTERNAL_IDS);
+      }
+
+      if (!checkpoint.isDone(Phase.ACCOUNT_UPDATE)) {
+        try (Timer0.Context ctx = metrics.startPhase(Phase.ACCOUNT_UPDATE)) {
+          scope.accountUpdated(
+              accountsUpdate()
+                  .update(
+                      "Delete account via account plugin",
+                      accountId,
+                      (state, update) -> {
+                        if (batchExternalIds) {
+                          // Keeps the plan read before the external IDs removal, counting their
+                          // emails
+                          DeletionPlan current = DeletionPlan.of(state);
+                          plan.compareAndSet(null, current);
+                          current.applyAccountTo(update);
+                        } else {
+                          plan.set(DeletionPlan.of(state));
+                          plan.get().applyTo(update);
+                        }
+                      })
+                  .orElseThrow(() -> notFound(accountId)));
+        }
+        record.emails = plan.get().emails();
+        if (!batchExternalIds) {
+          record.externalIds = plan.get().externalIds();
+        }
+        checkpoint.done(Phase.ACCOUNT_UPDATE);
+      }
+    }
+  }
+
+  /**
+   * Returns what {@link #scrub(Account.Id, Checkpoint, DeletionRecord)} would remove, without
+   * writing anything.
+   */
+  public DeletionPlanInfo plan(Account.Id accountId) throws Exception {
+    AccountState account = accounts.get(accountId).orElseThrow(() -> notFound(accountId));
+    ScrubbedAuthorizedKeys keys = new ScrubbedAuthorizedKeys(accountId);
+    try (Repository repo = repoManager.openRepository(allUsersName)) {
+      keys.load(allUsersName, repo);
+    }
+    return DeletionPlan.of(account).toInfo(keys.getValidKeys());
+  }
+
+  /** Attributes the updates to the caller, or to the server when run by the scheduled purge. */
+  private AccountsUpdate accountsUpdate() {
+    return userProvider.get().isIdentifiedUser()
+        ? accountsUpdateProvider.get()
+        : serverAccountsUpdateProvider.get();
+  }
+
+  private MetaDataUpdate openMetaDataUpdate(Repository repo, BatchRefUpdate bru)
+      throws IOException {
+    CurrentUser user = userProvider.get();
+    return user.isIdentifiedUser()
+        ? metaDataUpdateFactory.get().create(allUsersName, repo, user.asIdentifiedUser(), bru)
+        : serverMetaDataUpdateFactory.get().create(allUsersName, repo, bru);
+  }
+
+  private DeletionScope openScope(Account.Id accountId) {
+    CurrentUser user = userProvider.get();
+    return new DeletionScope(
+        accountId,
+        allUsersName,
+        gitRefUpdated,
+        sshKeyCache,
+        accountCache,
+        user.isIdentifiedUser() ? user.asIdentifiedUser().state() : null);
+  }
+
+  private static ResourceNotFoundException notFound(Account.Id accountId) {
+    return new ResourceNotFoundException("account " + accountId.get());
+  }
+
+  private int removeSshKeys(Account.Id accountId, DeletionScope scope)
+      throws IOException, ConfigInvalidException {
+    try (Repository repo = repoManager.openRepository(allUsersName)) {
+      BatchRefUpdate bru = repo.getRefDatabase().newBatchUpdate();
+      try (MetaDataUpdate md = openMetaDataUpdate(repo, bru)) {
+        ScrubbedAuthorizedKeys keys = new ScrubbedAuthorizedKeys(accountId);
+        keys.load(md);
+        int removed = keys.scrub();
+        if (removed > 0) {
+          keys.commit(md);
+          RefUpdateUtil.executeChecked(bru, repo);
+          scope.sshKeysRemoved(bru);
+        }
+        return removed;
+      }
+    }
+  }
+}
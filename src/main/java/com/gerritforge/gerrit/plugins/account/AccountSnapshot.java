@@ -0,0 +1,153 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static com.google.common.base.Strings.nullToEmpty;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.InternalAccountUpdate;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the scrub of a soft deleted account removes, for restoring the account until it is scrubbed.
+ *
+ * <p>The external IDs kept are the ones the scrub removes or strips of their email, so that
+ * restoring them undoes any part of a failed scrub.
+ *
+ * <p>The SSH keys are not kept: a soft deletion leaves them in place, and the ones removed by a
+ * failed scrub are not restored.
+ *
+ * <p>The snapshot is stored in a compact binary form: a version, the time of the deletion and its
+ * caller, followed by the active flag, full name, preferred email and external IDs of the account,
+ * the external IDs prefixed by their number.
+ */
+public class AccountSnapshot {
+  private static final int VERSION = 1;
+
+  final Account.Id accountId;
+  final long deletedOn;
+  final int callerId;
+  final boolean active;
+  final String fullName;
+  final String preferredEmail;
+  final List<ExternalId> externalIds;
+
+  private AccountSnapshot(
+      Account.Id accountId,
+      long deletedOn,
+      int callerId,
+      boolean active,
+      String fullName,
+      String preferredEmail,
+      List<ExternalId> externalIds) {
+    this.accountId = accountId;
+    this.deletedOn = deletedOn;
+    this.callerId = callerId;
+    this.active = active;
+    this.fullName = fullName;
+    this.preferredEmail = preferredEmail;
+    this.externalIds = externalIds;
+  }
+
+  public static AccountSnapshot of(AccountState state, long deletedOn, int callerId) {
+    Account account = state.account();
+    List<ExternalId> externalIds = new ArrayList<>();
+    for (ExternalId extId : state.externalIds()) {
+      if (extId.email() != null || ScrubRules.isRemovableExternalId(extId.key().get())) {
+        externalIds.add(extId);
+      }
+    }
+    return new AccountSnapshot(
+        account.id(),
+        deletedOn,
+        callerId,
+        account.isActive(),
+        account.fullName(),
+        account.preferredEmail(),
+        externalIds);
+  }
+
+  /** Restores the account as it was when soft deleted. */
+  public void restoreTo(InternalAccountUpdate.Builder update) {
+    update
+        .setActive(active)
+        .setFullName(nullToEmpty(fullName))
+        .setPreferredEmail(nullToEmpty(preferredEmail))
+        .updateExternalIds(externalIds);
+  }
+
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeByte(VERSION);
+    out.writeLong(deletedOn);
+    out.writeInt(callerId);
+    out.writeBoolean(active);
+    writeNullable(out, fullName);
+    writeNullable(out, preferredEmail);
+    out.writeInt(externalIds.size());
+    for (ExternalId extId : externalIds) {
+      out.writeUTF(extId.key().get());
+      writeNullable(out, extId.email());
+      writeNullable(out, extId.password());
+    }
+  }
+
+  public static AccountSnapshot readFrom(Account.Id accountId, DataInput in) throws IOException {
+    readVersion(in);
+    long deletedOn = in.readLong();
+    int callerId = in.readInt();
+    boolean active = in.readBoolean();
+    String fullName = readNullable(in);
+    String preferredEmail = readNullable(in);
+    int count = in.readInt();
+    List<ExternalId> externalIds = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      externalIds.add(
+          ExternalId.create(
+              ExternalId.Key.parse(in.readUTF()), accountId, readNullable(in), readNullable(in)));
+    }
+    return new AccountSnapshot(
+        accountId, deletedOn, callerId, active, fullName, preferredEmail, externalIds);
+  }
+
+  /** Reads only the time of the deletion, at the start of the snapshot. */
+  static long readDeletedOn(DataInput in) throws IOException {
+    readVersion(in);
+    return in.readLong();
+  }
+
+  private static void readVersion(DataInput in) throws IOException {
+    int version = in.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("unsupported account snapshot version " + version);
+    }
+  }
+
+  private static void writeNullable(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
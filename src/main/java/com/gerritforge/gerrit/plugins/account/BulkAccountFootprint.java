@@ -0,0 +1,67 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.server.account.AccountResolver;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BulkAccountFootprint
+    implements RestModifyView<ConfigResource, BulkAccountFootprint.Input> {
+  public static class Input {
+    public List<String> accounts;
+  }
+
+  private final AccountRemover remover;
+  private final AccountResolver accountResolver;
+  private final AccountFootprintScanner scanner;
+
+  @Inject
+  public BulkAccountFootprint(
+      AccountRemover remover, AccountResolver accountResolver, AccountFootprintScanner scanner) {
+    this.remover = remover;
+    this.accountResolver = accountResolver;
+    this.scanner = scanner;
+  }
+
+  @Override
+  public Response<List<FootprintInfo>> apply(ConfigResource resource, Input input)
+      throws Exception {
+    if (!remover.canDeleteAnyAccount()) {
+      throw new AuthException("not allowed to read the footprint of accounts");
+    }
+    if (input == null || input.accounts == null || input.accounts.isEmpty()) {
+      throw new BadRequestException("accounts are required");
+    }
+
+    Set<Account.Id> accounts = new LinkedHashSet<>();
+    for (String account : input.accounts) {
+      try {
+        accounts.add(accountResolver.resolve(account.trim()).asUnique().account().id());
+      } catch (AccountResolver.UnresolvableAccountException e) {
+        throw new BadRequestException(e.getMessage(), e);
+      }
+    }
+    return Response.ok(scanner.scan(accounts));
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.AccountResolver;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes a stream of accounts on the plugin deletion executor.
+ *
+ * <p>The accounts are consumed lazily and at most twice the number of deletion threads are queued
+ * at any time, so that arbitrarily long streams are removed with bounded memory. The results are
+ * notified as soon as each removal completes, hence not necessarily in the input order. The
+ * personal refs of the removed accounts are removed in batches, see {@link
+ * PersonalRefsRemover.Batch}.
+ */
+@Singleton
+public class BulkAccountRemover {
+  private static final Logger log = LoggerFactory.getLogger(BulkAccountRemover.class);
+
+  private final AccountRemover remover;
+  private final AccountResolver accountResolver;
+  private final PersonalRefsRemover personalRefsRemover;
+  private final ThreadLocalRequestContext requestContext;
+  private final Provider<CurrentUser> userProvider;
+  private final ExecutorService executor;
+  private final int maxInFlight;
+
+  @Inject
+  public BulkAccountRemover(
+      AccountRemover remover,
+      AccountResolver accountResolver,
+      PersonalRefsRemover personalRefsRemover,
+      ThreadLocalRequestContext requestContext,
+      Provider<CurrentUser> userProvider,
+      @DeletionExecutor ScheduledExecutorService executor,
+      Configuration config) {
+    this.remover = remover;
+    this.accountResolver = accountResolver;
+    this.personalRefsRemover = personalRefsRemover;
+    this.requestContext = requestContext;
+    this.userProvider = userProvider;
+    this.executor = executor;
+    this.maxInFlight = 2 * config.getDeletionThreads();
+  }
+
+  /** Checks, once for the whole batch, that the caller is allowed to delete any account. */
+  public void checkCanDeleteAccounts() throws AuthException {
+    if (!remover.canDeleteAnyAccount()) {
+      throw new AuthException("not allowed to delete accounts");
+    }
+  }
+
+  /**
+   * Removes all the accounts, identified by id or username, and waits for their completion.
+   *
+   * <p>The listener is invoked from the deletion threads and therefore needs to be thread-safe.
+   */
+  public void removeAccounts(Iterator<String> accounts, Consumer<BulkDeleteResult> listener)
+      throws InterruptedException {
+    try (PersonalRefsRemover.Batch batch = personalRefsRemover.newBatch()) {
+      forEachAccount(
+          accounts,
+          listener,
+          (account, accountId) -> {
+            batch.remove(Account.id(accountId), () -> remover.removeAccount(accountId));
+            return BulkDeleteResult.deleted(account, accountId);
+          });
+    }
+  }
+
+  /**
+   * Removes all the accounts, identified by id or username, skipping the steps completed by
+   * previous removals and the accounts already removed, and waits for their completion.
+   *
+   * <p>The listener is invoked from the deletion threads and therefore needs to be thread-safe.
+   */
+  public void resumeAccounts(Iterator<String> accounts, Consumer<BulkDeleteResult> listener)
+      throws InterruptedException {
+    try (PersonalRefsRemover.Batch batch = personalRefsRemover.newBatch()) {
+      forEachAccount(
+          accounts,
+          listener,
+          (account, accountId) -> {
+            batch.remove(Account.id(accountId), () -> remover.resumeRemoval(accountId));
+            return BulkDeleteResult.deleted(account, accountId);
+          });
+    }
+  }
+
+  /**
+   * Computes the deletion plans of all the accounts, identified by id or username, without removing
+   * them and waits for their completion.
+   *
+   * <p>The listener is invoked from the deletion threads and therefore needs to be thread-safe.
+   */
+  public void planAccounts(Iterator<String> accounts, Consumer<BulkDeleteResult> listener)
+      throws InterruptedException {
+    forEachAccount(
+        accounts,
+        listener,
+        (account, accountId) ->
+            BulkDeleteResult.planned(account, accountId, remover.planRemoval(accountId)));
+  }
+
+  private void forEachAccount(
+      Iterator<String> accounts, Consumer<BulkDeleteResult> listener, AccountTask task)
+      throws InterruptedException {
+    CurrentUser caller = userProvider.get();
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    try {
+      while (accounts.hasNext()) {
+        String account = accounts.next().trim();
+        if (account.isEmpty()) {
+          continue;
+        }
+
+        inFlight.acquire();
+        try {
+          executor.execute(
+              () -> {
+                try {
+                  listener.accept(run(caller, account, task));
+                } finally {
+                  inFlight.release();
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          inFlight.release();
+          listener.accept(BulkDeleteResult.failed(account, null, "deletion queue is shut down"));
+        }
+      }
+    } finally {
+      inFlight.acquire(maxInFlight);
+    }
+  }
+
+  private BulkDeleteResult run(CurrentUser caller, String account, AccountTask task) {
+    RequestContext old = requestContext.setContext(() -> caller);
+    Integer accountId = null;
+    try {
+      accountId = accountResolver.resolve(account).asUnique().account().id().get();
+      return task.run(account, accountId);
+    } catch (Exception e) {
+      log.error("Unable to process account {}", account, e);
+      return BulkDeleteResult.failed(account, accountId, e.getMessage());
+    } finally {
+      requestContext.setContext(old);
+    }
+  }
+
+  @FunctionalInterface
+  private interface AccountTask {
+    BulkDeleteResult run(String account, int accountId) throws Exception;
+  }
+}
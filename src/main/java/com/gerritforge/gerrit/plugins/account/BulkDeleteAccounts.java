@@ -0,0 +1,114 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.BinaryResult;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+public class BulkDeleteAccounts
+    implements RestModifyView<ConfigResource, BulkDeleteAccounts.Input> {
+  public static class Input {
+    public List<String> accounts;
+    public String query;
+    public boolean dryRun;
+    public boolean resume;
+  }
+
+  private final BulkAccountRemover bulkRemover;
+  private final AccountQuerySpooler spooler;
+
+  @Inject
+  public BulkDeleteAccounts(BulkAccountRemover bulkRemover, AccountQuerySpooler spooler) {
+    this.bulkRemover = bulkRemover;
+    this.spooler = spooler;
+  }
+
+  @Override
+  public Response<BinaryResult> apply(ConfigResource resource, Input input)
+      throws AuthException, BadRequestException {
+    bulkRemover.checkCanDeleteAccounts();
+    if (input == null
+        || (input.query == null && (input.accounts == null || input.accounts.isEmpty()))) {
+      throw new BadRequestException("accounts or query are required");
+    }
+    if (input.query != null && input.accounts != null && !input.accounts.isEmpty()) {
+      throw new BadRequestException("accounts and query are mutually exclusive");
+    }
+
+    if (input.query != null) {
+      validate(input.query);
+    }
+    BinaryResult results =
+        new BinaryResult() {
+          @Override
+          public void writeTo(OutputStream os) throws IOException {
+            if (input.query == null) {
+              write(input.accounts.iterator(), os);
+              return;
+            }
+            // Spooled while the response is written, so that no temporary file is left behind
+            // when it never is
+            try (AccountQuerySpooler.Spool spool = spooler.spool(input.query)) {
+              write(spool, os);
+            } catch (QueryParseException e) {
+              throw new IOException("invalid account query " + input.query, e);
+            }
+          }
+
+          private void write(Iterator<String> accounts, OutputStream os) throws IOException {
+            NdjsonWriter out = new NdjsonWriter(os);
+            try {
+              if (input.dryRun) {
+                bulkRemover.planAccounts(accounts, out::write);
+              } else if (input.resume) {
+                bulkRemover.resumeAccounts(accounts, out::write);
+              } else {
+                bulkRemover.removeAccounts(accounts, out::write);
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new InterruptedIOException("bulk account deletion interrupted");
+            }
+            out.finish();
+          }
+        };
+    return Response.ok(
+        results
+            .setContentType(NdjsonWriter.CONTENT_TYPE)
+            .setCharacterEncoding(UTF_8)
+            .disableGzip());
+  }
+
+  private void validate(String query) throws BadRequestException {
+    try {
+      spooler.validate(query);
+    } catch (QueryParseException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+public class BulkDeleteResult {
+  public final String account;
+  public final Integer accountId;
+  public final boolean deleted;
+  public final String error;
+  public final DeletionPlanInfo plan;
+
+  private BulkDeleteResult(
+      String account, Integer accountId, boolean deleted, String error, DeletionPlanInfo plan) {
+    this.account = account;
+    this.accountId = accountId;
+    this.deleted = deleted;
+    this.error = error;
+    this.plan = plan;
+  }
+
+  public static BulkDeleteResult deleted(String account, int accountId) {
+    return new BulkDeleteResult(account, accountId, true, null, null);
+  }
+
+  public static BulkDeleteResult planned(String account, int accountId, DeletionPlanInfo plan) {
+    return new BulkDeleteResult(account, accountId, false, null, plan);
+  }
+
+  public static BulkDeleteResult failed(String account, Integer accountId, String error) {
+    return new BulkDeleteResult(account, accountId, false, error, null);
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Removes each account at most once at a time.
+ *
+ * <p>A removal requested while another one of the same account is in progress, e.g. by a double
+ * click or a script retry, joins the one in progress and shares its outcome instead of racing it on
+ * All-Users. Removals and deletion plans also hold the {@link AccountLocks lock} of the account,
+ * which {@link SoftDeletions} takes as well, so that neither a plan nor a soft deletion or its undo
+ * ever sees a partially removed account, whichever entry point started the removal. Different
+ * accounts are still processed in parallel.
+ */
+@Singleton
+public class CoalescingAccountRemover implements AccountRemover {
+  private final AccountRemover delegate;
+  private final RemovalMetrics metrics;
+  private final AccountLocks locks;
+  private final ConcurrentMap<Integer, CompletableFuture<Void>> inFlight =
+      new ConcurrentHashMap<>();
+
+  @Inject
+  public CoalescingAccountRemover(
+      GerritAccountRemover delegate, RemovalMetrics metrics, AccountLocks locks) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+    this.locks = locks;
+  }
+
+  @Override
+  public void removeAccount(int accountId) throws Exception {
+    coalesce(accountId, () -> delegate.removeAccount(accountId));
+  }
+
+  @Override
+  public void resumeRemoval(int accountId) throws Exception {
+    coalesce(accountId, () -> delegate.resumeRemoval(accountId));
+  }
+
+  private void coalesce(int accountId, Removal task) throws Exception {
+    CompletableFuture<Void> removal = new CompletableFuture<>();
+    CompletableFuture<Void> current = inFlight.putIfAbsent(accountId, removal);
+    if (current != null) {
+      metrics.removalCoalesced();
+      join(current);
+      return;
+    }
+
+    Lock lock = locks.get(accountId);
+    lock.lock();
+    try {
+      task.run();
+      removal.complete(null);
+    } catch (Throwable e) {
+      removal.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(accountId, removal);
+      lock.unlock();
+    }
+  }
+
+  private static void join(CompletableFuture<Void> removal) throws Exception {
+    try {
+      removal.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public DeletionPlanInfo planRemoval(int accountId) throws Exception {
+    Lock lock = locks.get(accountId);
+    lock.lock();
+    try {
+      return delegate.planRemoval(accountId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean canDelete(int accountId) {
+    return delegate.canDelete(accountId);
+  }
+
+  @Override
+  public boolean canDeleteAnyAccount() {
+    return delegate.canDeleteAnyAccount();
+  }
+
+  @FunctionalInterface
+  private interface Removal {
+    void run() throws Exception;
+  }
+}
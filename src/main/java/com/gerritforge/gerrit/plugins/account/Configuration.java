@@ -0,0 +1,203 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.config.ScheduleConfig;
+import com.google.gerrit.server.config.ScheduleConfig.Schedule;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Optional;
+import org.eclipse.jgit.lib.Config;
+
+@Singleton
+public class Configuration {
+  static final String TRANSACTIONAL_REMOVAL = "transactionalRemoval";
+  static final String DELETION_THREADS = "deletionThreads";
+  static final String PURGE_QUERY = "purgeQuery";
+  static final String PURGE_INTERVAL = "purgeInterval";
+  static final String PURGE_START_TIME = "purgeStartTime";
+  static final String PURGE_MAX_RATE = "purgeMaxRate";
+  static final String PURGE_TARGET_LATENCY = "purgeTargetLatency";
+  static final String AUDIT_MAX_FILE_SIZE = "auditMaxFileSize";
+  static final String AUDIT_MAX_FILES = "auditMaxFiles";
+  static final String FOOTPRINT_THREADS = "footprintThreads";
+  static final String MAX_CONCURRENT_DELETIONS = "maxConcurrentDeletions";
+  static final String MAX_QUEUED_DELETIONS = "maxQueuedDeletions";
+  static final String DELETION_QUEUE_TIMEOUT = "deletionQueueTimeout";
+  static final String EXTERNAL_ID_BATCH_SIZE = "externalIdBatchSize";
+  static final String EXTERNAL_ID_BATCH_WINDOW = "externalIdBatchWindow";
+  static final String REMOVAL_STEP_THREADS = "removalStepThreads";
+  static final String SOFT_DELETE_GRACE_PERIOD = "softDeleteGracePeriod";
+
+  private static final int DEFAULT_DELETION_THREADS = 4;
+  private static final int DEFAULT_PURGE_MAX_RATE = 60;
+  private static final long DEFAULT_PURGE_TARGET_LATENCY_MS = 1000;
+  private static final long DEFAULT_AUDIT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+  private static final int DEFAULT_AUDIT_MAX_FILES = 10;
+  private static final int DEFAULT_MAX_CONCURRENT_DELETIONS = 4;
+  private static final int DEFAULT_MAX_QUEUED_DELETIONS = 16;
+  private static final long DEFAULT_DELETION_QUEUE_TIMEOUT_MS = 10000;
+  private static final int DEFAULT_EXTERNAL_ID_BATCH_SIZE = 100;
+  private static final int DEFAULT_REMOVAL_STEP_THREADS = 8;
+
+  private final boolean transactionalRemoval;
+  private final int deletionThreads;
+  private final String purgeQuery;
+  private final Optional<Schedule> purgeSchedule;
+  private final int purgeMaxRate;
+  private final long purgeTargetLatencyMs;
+  private final long auditMaxFileSize;
+  private final int auditMaxFiles;
+  private final int footprintThreads;
+  private final int maxConcurrentDeletions;
+  private final int maxQueuedDeletions;
+  private final long deletionQueueTimeoutMs;
+  private final int externalIdBatchSize;
+  private final long externalIdBatchWindowMs;
+  private final int removalStepThreads;
+  private final long softDeleteGracePeriodMs;
+
+  @Inject
+  public Configuration(
+      PluginConfigFactory cfgFactory,
+      @GerritServerConfig Config gerritConfig,
+      @PluginName String pluginName) {
+    PluginConfig cfg = cfgFactory.getFromGerritConfig(pluginName);
+    this.transactionalRemoval = cfg.getBoolean(TRANSACTIONAL_REMOVAL, true);
+    this.deletionThreads = Math.max(1, cfg.getInt(DELETION_THREADS, DEFAULT_DELETION_THREADS));
+    this.purgeQuery = Strings.emptyToNull(cfg.getString(PURGE_QUERY));
+    this.purgeSchedule =
+        ScheduleConfig.builder(gerritConfig, "plugin")
+            .setSubsection(pluginName)
+            .setKeyInterval(PURGE_INTERVAL)
+            .setKeyStartTime(PURGE_START_TIME)
+            .buildSchedule();
+    this.purgeMaxRate = Math.max(1, cfg.getInt(PURGE_MAX_RATE, DEFAULT_PURGE_MAX_RATE));
+    this.purgeTargetLatencyMs =
+        ConfigUtil.getTimeUnit(
+            cfg.getString(PURGE_TARGET_LATENCY), DEFAULT_PURGE_TARGET_LATENCY_MS, MILLISECONDS);
+    this.auditMaxFileSize =
+        Math.max(1, cfg.getLong(AUDIT_MAX_FILE_SIZE, DEFAULT_AUDIT_MAX_FILE_SIZE));
+    this.auditMaxFiles = Math.max(0, cfg.getInt(AUDIT_MAX_FILES, DEFAULT_AUDIT_MAX_FILES));
+    this.footprintThreads =
+        Math.max(1, cfg.getInt(FOOTPRINT_THREADS, Runtime.getRuntime().availableProcessors()));
+    this.maxConcurrentDeletions =
+        Math.max(1, cfg.getInt(MAX_CONCURRENT_DELETIONS, DEFAULT_MAX_CONCURRENT_DELETIONS));
+    this.maxQueuedDeletions =
+        Math.max(0, cfg.getInt(MAX_QUEUED_DELETIONS, DEFAULT_MAX_QUEUED_DELETIONS));
+    this.deletionQueueTimeoutMs =
+        ConfigUtil.getTimeUnit(
+            cfg.getString(DELETION_QUEUE_TIMEOUT), DEFAULT_DELETION_QUEUE_TIMEOUT_MS, MILLISECONDS);
+    this.externalIdBatchSize =
+        Math.max(1, cfg.getInt(EXTERNAL_ID_BATCH_SIZE, DEFAULT_EXTERNAL_ID_BATCH_SIZE));
+    this.externalIdBatchWindowMs =
+        Math.max(
+            0, ConfigUtil.getTimeUnit(cfg.getString(EXTERNAL_ID_BATCH_WINDOW), 0, MILLISECONDS));
+    this.removalStepThreads =
+        Math.max(1, cfg.getInt(REMOVAL_STEP_THREADS, DEFAULT_REMOVAL_STEP_THREADS));
+    this.softDeleteGracePeriodMs =
+        Math.max(
+            0, ConfigUtil.getTimeUnit(cfg.getString(SOFT_DELETE_GRACE_PERIOD), 0, MILLISECONDS));
+  }
+
+  public boolean isTransactionalRemoval() {
+    return transactionalRemoval;
+  }
+
+  public int getDeletionThreads() {
+    return deletionThreads;
+  }
+
+  /** Returns the account query selecting the accounts to purge, if the purge is enabled. */
+  public Optional<String> getPurgeQuery() {
+    return Optional.ofNullable(purgeQuery);
+  }
+
+  public Optional<Schedule> getPurgeSchedule() {
+    return purgeSchedule;
+  }
+
+  /** Returns the maximum number of accounts purged per minute. */
+  public int getPurgeMaxRate() {
+    return purgeMaxRate;
+  }
+
+  public long getPurgeTargetLatencyMs() {
+    return purgeTargetLatencyMs;
+  }
+
+  /** Returns the size, in bytes, above which the audit log is rotated. */
+  public long getAuditMaxFileSize() {
+    return auditMaxFileSize;
+  }
+
+  /** Returns the number of rotated audit logs kept. */
+  public int getAuditMaxFiles() {
+    return auditMaxFiles;
+  }
+
+  /** Returns the parallelism of the account footprint scans. */
+  public int getFootprintThreads() {
+    return footprintThreads;
+  }
+
+  /** Returns the maximum number of synchronous deletions running at the same time. */
+  public int getMaxConcurrentDeletions() {
+    return maxConcurrentDeletions;
+  }
+
+  /** Returns the maximum number of synchronous deletions waiting for a running one to complete. */
+  public int getMaxQueuedDeletions() {
+    return maxQueuedDeletions;
+  }
+
+  public long getDeletionQueueTimeoutMs() {
+    return deletionQueueTimeoutMs;
+  }
+
+  /** Returns the maximum number of accounts whose external IDs are removed in one commit. */
+  public int getExternalIdBatchSize() {
+    return externalIdBatchSize;
+  }
+
+  /**
+   * Returns how long the external IDs removals wait for others to share their commit, or 0 if they
+   * are not batched.
+   */
+  public long getExternalIdBatchWindowMs() {
+    return externalIdBatchWindowMs;
+  }
+
+  /** Returns the number of threads running the steps of the account removals. */
+  public int getRemovalStepThreads() {
+    return removalStepThreads;
+  }
+
+  /**
+   * Returns how long the soft deleted accounts are kept before being scrubbed, or 0 if the
+   * deletions are not soft deletions.
+   */
+  public long getSoftDeleteGracePeriodMs() {
+    return softDeleteGracePeriodMs;
+  }
+}
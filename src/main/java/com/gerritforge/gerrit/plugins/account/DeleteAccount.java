@@ -14,6 +14,7 @@
 
 package com.gerritforge.gerrit.plugins.account;
 
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
@@ -26,12 +27,18 @@ import com.google.inject.Inject;
 public class DeleteAccount implements RestModifyView<AccountResource, DeleteAccount.Input> {
   public static class Input {
     public String accountName;
+    public boolean async;
+    public boolean dryRun;
+    public boolean resume;
 
     @Override
     public int hashCode() {
       final int prime = 31;
       int result = 1;
       result = prime * result + ((accountName == null) ? 0 : accountName.hashCode());
+      result = prime * result + (async ? 1231 : 1237);
+      result = prime * result + (dryRun ? 1231 : 1237);
+      result = prime * result + (resume ? 1231 : 1237);
       return result;
     }
 
@@ -44,15 +51,31 @@ public class DeleteAccount implements RestModifyView<AccountResource, DeleteAcco
       if (accountName == null) {
         if (other.accountName != null) return false;
       } else if (!accountName.equals(other.accountName)) return false;
+      if (async != other.async) return false;
+      if (dryRun != other.dryRun) return false;
+      if (resume != other.resume) return false;
       return true;
     }
   }
 
   private final AccountRemover remover;
+  private final DeletionJobs jobs;
+  private final RemovalAdmission admission;
+  private final SoftDeletions softDeletions;
+  private final String pluginName;
 
   @Inject
-  public DeleteAccount(AccountRemover remover) {
+  public DeleteAccount(
+      AccountRemover remover,
+      DeletionJobs jobs,
+      RemovalAdmission admission,
+      SoftDeletions softDeletions,
+      @PluginName String pluginName) {
     this.remover = remover;
+    this.jobs = jobs;
+    this.admission = admission;
+    this.softDeletions = softDeletions;
+    this.pluginName = pluginName;
   }
 
   @Override
@@ -64,14 +87,38 @@ public class DeleteAccount implements RestModifyView<AccountResource, DeleteAcco
     int accountId = user.getAccountId().get();
     assertDeletePermission(accountId);
 
+    if (input != null && input.dryRun) {
+      return Response.ok(remover.planRemoval(accountId));
+    }
+
     if (input != null && input.accountName != null && user.getName().equals(input.accountName)) {
-      remover.removeAccount(accountId);
+      if (softDeletions.isEnabled() && !input.resume) {
+        return Response.ok(new DeleteAccountResponse(true, softDeletions.softDelete(accountId)));
+      }
+
+      if (input.async) {
+        DeletionJob job = jobs.submit(accountId, input.resume);
+        return accepted("/config/server/" + pluginName + "~jobs/" + job.id);
+      }
+
+      try (RemovalAdmission.Permit permit = admission.admit()) {
+        if (input.resume) {
+          remover.resumeRemoval(accountId);
+        } else {
+          remover.removeAccount(accountId);
+        }
+      }
       removed = true;
     }
 
     return Response.ok(new DeleteAccountResponse(removed));
   }
 
+  @SuppressWarnings("unchecked")
+  private static Response<Object> accepted(String location) {
+    return (Response<Object>) Response.accepted(location);
+  }
+
   private void assertDeletePermission(int accountId) throws AuthException {
     if (!remover.canDelete(accountId)) {
       throw new AuthException("not allowed to delete account " + accountId);
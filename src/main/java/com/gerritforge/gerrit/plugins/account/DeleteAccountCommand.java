@@ -14,12 +14,22 @@
 
 package com.gerritforge.gerrit.plugins.account;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.json.OutputFormat;
 import com.google.gerrit.server.account.AccountResource;
 import com.google.gerrit.sshd.CommandMetaData;
 import com.google.gerrit.sshd.SshCommand;
+import com.google.gson.Gson;
 import com.google.inject.Inject;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.util.Iterator;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
@@ -28,9 +38,11 @@ import org.slf4j.LoggerFactory;
 @CommandMetaData(name = "delete", description = "Delete a specific account")
 public class DeleteAccountCommand extends SshCommand {
   private static final Logger log = LoggerFactory.getLogger(DeleteAccountCommand.class);
+  private static final Gson PLAN_JSON = OutputFormat.JSON.newGson();
+  private static final Gson PLAN_JSON_LINE = OutputFormat.JSON_COMPACT.newGson();
 
-  @Argument(index = 0, required = true, metaVar = "ACCOUNT-ID", usage = "id of the account")
-  private int accountId;
+  @Argument(index = 0, metaVar = "ACCOUNT-ID", usage = "id of the account")
+  private Integer accountId;
 
   @Option(
       name = "--yes-really-delete",
@@ -38,25 +50,84 @@ public class DeleteAccountCommand extends SshCommand {
       usage = "confirmation to delete the account")
   private String accountName;
 
+  @Option(
+      name = "--stdin",
+      usage = "delete the accounts whose ids or usernames are read from stdin, one per line")
+  private boolean stdin;
+
+  @Option(
+      name = "--query",
+      metaVar = "QUERY",
+      usage = "delete the accounts matching the account query, e.g. 'email:*@example.com'")
+  private String query;
+
+  @Option(
+      name = "--dry-run",
+      usage = "print what would be removed from the accounts, as JSON, without deleting them")
+  private boolean dryRun;
+
+  @Option(
+      name = "--resume",
+      usage = "skip the steps, and accounts, already completed by a previous removal")
+  private boolean resume;
+
   private final AccountResourceFactory accountFactory;
   private final DeleteAccount deleteAccount;
+  private final BulkAccountRemover bulkRemover;
+  private final AccountQuerySpooler spooler;
 
   @Inject
-  public DeleteAccountCommand(AccountResourceFactory accountFactory, DeleteAccount deleteAccount) {
+  public DeleteAccountCommand(
+      AccountResourceFactory accountFactory,
+      DeleteAccount deleteAccount,
+      BulkAccountRemover bulkRemover,
+      AccountQuerySpooler spooler) {
     this.accountFactory = accountFactory;
     this.deleteAccount = deleteAccount;
+    this.bulkRemover = bulkRemover;
+    this.spooler = spooler;
   }
 
   @Override
   protected void run() throws UnloggedFailure, Failure, Exception {
+    if (stdin && query != null) {
+      throw die("--stdin and --query are mutually exclusive");
+    }
+    if (stdin) {
+      checkCanDeleteAccounts();
+      BufferedReader accounts = new BufferedReader(new InputStreamReader(in, UTF_8));
+      removeAccounts(accounts.lines().iterator());
+      return;
+    }
+    if (query != null) {
+      removeAccountsMatchingQuery();
+      return;
+    }
+
+    if (accountId == null) {
+      throw die("ACCOUNT-ID is required unless --stdin or --query is specified");
+    }
+
     try {
       AccountResource account = accountFactory.create(accountId);
 
       DeleteAccount.Input input = new DeleteAccount.Input();
       input.accountName = accountName;
+      input.dryRun = dryRun;
+      input.resume = resume;
 
-      DeleteAccountResponse resp =
-          (DeleteAccountResponse) deleteAccount.apply(account, input).value();
+      Object value = deleteAccount.apply(account, input).value();
+      if (value instanceof DeletionPlanInfo) {
+        stdout.println(PLAN_JSON.toJson(value));
+        return;
+      }
+
+      DeleteAccountResponse resp = (DeleteAccountResponse) value;
+
+      if (resp.scrubOn != null) {
+        stdout.println("Account deactivated, to be scrubbed after " + resp.scrubOn);
+        return;
+      }
 
       @SuppressWarnings("resource")
       PrintWriter out = resp.deleted ? stdout : stderr;
@@ -69,6 +140,46 @@ public class DeleteAccountCommand extends SshCommand {
     }
   }
 
+  private void removeAccountsMatchingQuery() throws Exception {
+    checkCanDeleteAccounts();
+    try (AccountQuerySpooler.Spool accounts = spooler.spool(query)) {
+      removeAccounts(accounts);
+    } catch (QueryParseException e) {
+      throw die(e.getMessage());
+    }
+  }
+
+  private void removeAccounts(Iterator<String> accounts) throws Exception {
+    if (dryRun) {
+      bulkRemover.planAccounts(accounts, this::printResult);
+    } else if (resume) {
+      bulkRemover.resumeAccounts(accounts, this::printResult);
+    } else {
+      bulkRemover.removeAccounts(accounts, this::printResult);
+    }
+  }
+
+  private void checkCanDeleteAccounts() throws UnloggedFailure {
+    try {
+      bulkRemover.checkCanDeleteAccounts();
+    } catch (AuthException e) {
+      throw die(e.getMessage());
+    }
+  }
+
+  private synchronized void printResult(BulkDeleteResult result) {
+    if (result.plan != null) {
+      stdout.println(PLAN_JSON_LINE.toJson(result.plan));
+      stdout.flush();
+    } else if (result.deleted) {
+      stdout.println("Account " + result.account + " deleted");
+      stdout.flush();
+    } else {
+      stderr.println("Account " + result.account + " NOT deleted: " + result.error);
+      stderr.flush();
+    }
+  }
+
   @VisibleForTesting
   public void testRun(int accountId, String accountName) throws Exception {
     this.accountId = accountId;
@@ -76,6 +187,19 @@ public class DeleteAccountCommand extends SshCommand {
     run();
   }
 
+  @VisibleForTesting
+  public void testRunFromStdin(InputStream accounts) throws Exception {
+    this.stdin = true;
+    this.in = accounts;
+    run();
+  }
+
+  @VisibleForTesting
+  public void testRunQuery(String query) throws Exception {
+    this.query = query;
+    run();
+  }
+
   @VisibleForTesting
   public void setPrintWriters(PrintWriter out, PrintWriter err) {
     this.stdout = out;
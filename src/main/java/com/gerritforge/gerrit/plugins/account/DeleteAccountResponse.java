@@ -14,10 +14,18 @@
 
 package com.gerritforge.gerrit.plugins.account;
 
+import java.sql.Timestamp;
+
 public class DeleteAccountResponse {
   public final boolean deleted;
+  public final Timestamp scrubOn;
 
   public DeleteAccountResponse(boolean deleted) {
+    this(deleted, null);
+  }
+
+  public DeleteAccountResponse(boolean deleted, Timestamp scrubOn) {
     this.deleted = deleted;
+    this.scrubOn = scrubOn;
   }
 }
@@ -0,0 +1,136 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.gerritforge.gerrit.plugins.account.permissions.DeleteAccountCapability;
+import com.gerritforge.gerrit.plugins.account.permissions.DeleteOwnAccountCapability;
+import com.google.common.cache.Cache;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.api.access.PluginPermission;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.GroupIndexedListener;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the account deletion capabilities of the callers.
+ *
+ * <p>Decisions are keyed by caller and by a version of the group memberships, bumped whenever a
+ * group is reindexed or the capabilities of All-Projects are updated, so that a decision taken
+ * before a group or an access change is never returned after it. Group changes that Gerrit does not
+ * index, like the ones of external groups, are picked up when the decisions expire.
+ */
+@Singleton
+public class DeletePermissionCache implements GroupIndexedListener, GitReferenceUpdatedListener {
+  static final String CACHE_NAME = "delete_permission";
+
+  public enum Permission {
+    DELETE_ANY_ACCOUNT,
+    DELETE_OWN_ACCOUNT,
+    NONE
+  }
+
+  public static class Key {
+    private final int accountId;
+    private final long groupsVersion;
+
+    public Key(int accountId, long groupsVersion) {
+      this.accountId = accountId;
+      this.groupsVersion = groupsVersion;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * accountId + Long.hashCode(groupsVersion);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Key)) return false;
+      Key other = (Key) obj;
+      return accountId == other.accountId && groupsVersion == other.groupsVersion;
+    }
+  }
+
+  private final Cache<Key, Permission> cache;
+  private final PermissionBackend permissionBackend;
+  private final String pluginName;
+  private final AllProjectsName allProjects;
+  private final AtomicLong groupsVersion = new AtomicLong();
+
+  @Inject
+  public DeletePermissionCache(
+      @Named(CACHE_NAME) Cache<Key, Permission> cache,
+      PermissionBackend permissionBackend,
+      @PluginName String pluginName,
+      AllProjectsName allProjects) {
+    this.cache = cache;
+    this.permissionBackend = permissionBackend;
+    this.pluginName = pluginName;
+    this.allProjects = allProjects;
+  }
+
+  public Permission get(CurrentUser user) {
+    if (!user.isIdentifiedUser()) {
+      return evaluate(user);
+    }
+
+    try {
+      return cache.get(
+          new Key(user.getAccountId().get(), groupsVersion.get()), () -> evaluate(user));
+    } catch (ExecutionException e) {
+      return evaluate(user);
+    }
+  }
+
+  @Override
+  public void onGroupIndexed(String uuid) {
+    invalidateAll();
+  }
+
+  @Override
+  public void onGitReferenceUpdated(Event event) {
+    if (allProjects.get().equals(event.getProjectName())
+        && RefNames.REFS_CONFIG.equals(event.getRefName())) {
+      invalidateAll();
+    }
+  }
+
+  private void invalidateAll() {
+    groupsVersion.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  private Permission evaluate(CurrentUser user) {
+    PermissionBackend.WithUser userPermission = permissionBackend.user(user);
+    if (userPermission.testOrFalse(
+        new PluginPermission(pluginName, DeleteAccountCapability.DELETE_ACCOUNT))) {
+      return Permission.DELETE_ANY_ACCOUNT;
+    }
+    if (userPermission.testOrFalse(
+        new PluginPermission(pluginName, DeleteOwnAccountCapability.DELETE_OWN_ACCOUNT))) {
+      return Permission.DELETE_OWN_ACCOUNT;
+    }
+    return Permission.NONE;
+  }
+}
@@ -0,0 +1,230 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only audit log of the account removals, one JSON {@link DeletionRecord} per line.
+ *
+ * <p>Removals only enqueue their record, without blocking on I/O. A single writer thread appends
+ * the queued records in batches and syncs the file once per batch. The log is rotated when it grows
+ * above {@link Configuration#getAuditMaxFileSize()}, keeping {@link
+ * Configuration#getAuditMaxFiles()} rotated files named {@code <log>.1} (the most recent) to {@code
+ * <log>.N}. A batch that fails to be written is kept and written again by the next flush.
+ */
+@Singleton
+public class DeletionAuditLog implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(DeletionAuditLog.class);
+
+  static final String LOG_FILE = "deletions-audit.log";
+
+  private static final Gson GSON = OutputFormat.JSON_COMPACT.newGson();
+  private static final long FLUSH_DELAY_MS = 200;
+  private static final int MAX_BATCH = 1000;
+
+  private final Queue<DeletionRecord> pending = new ConcurrentLinkedQueue<>();
+  /** Batch being written, kept until it is synced to the log. Guarded by this. */
+  private final List<DeletionRecord> batch = new ArrayList<>();
+
+  private final WorkQueue workQueue;
+  private final Path logFile;
+  private final long maxFileSize;
+  private final int maxFiles;
+
+  private ScheduledExecutorService writer;
+  private FileChannel channel;
+
+  @Inject
+  public DeletionAuditLog(WorkQueue workQueue, Configuration config, @PluginData Path pluginData) {
+    this.workQueue = workQueue;
+    this.logFile = pluginData.resolve(LOG_FILE);
+    this.maxFileSize = config.getAuditMaxFileSize();
+    this.maxFiles = config.getAuditMaxFiles();
+  }
+
+  @Override
+  public void start() {
+    writer = workQueue.createQueue(1, "AccountDeletionAudit");
+    writer.scheduleWithFixedDelay(this::flush, FLUSH_DELAY_MS, FLUSH_DELAY_MS, MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (writer != null) {
+      writer.shutdown();
+      try {
+        writer.awaitTermination(FLUSH_DELAY_MS * 10, MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writer = null;
+    }
+    flush();
+    closeChannel();
+  }
+
+  /** Queues the record of a removal, to be written by the next flush. */
+  public void append(DeletionRecord record) {
+    pending.add(record);
+  }
+
+  /** Writes all the queued records, syncing the log once per batch. */
+  public synchronized void flush() {
+    try {
+      while (!batch.isEmpty() || !pending.isEmpty()) {
+        DeletionRecord record;
+        while (batch.size() < MAX_BATCH && (record = pending.poll()) != null) {
+          batch.add(record);
+        }
+        StringBuilder lines = new StringBuilder();
+        for (DeletionRecord r : batch) {
+          lines.append(GSON.toJson(r)).append('\n');
+        }
+        write(ByteBuffer.wrap(lines.toString().getBytes(UTF_8)));
+        batch.clear();
+        if (channel.size() >= maxFileSize) {
+          rotate();
+        }
+      }
+    } catch (IOException e) {
+      log.error("Unable to write the account deletions audit log {}", logFile, e);
+      closeChannel();
+    }
+  }
+
+  /**
+   * Returns the most recent records first.
+   *
+   * @param accountId only return the records of this account, if not null
+   * @param since only return the records of the removals started at or after this time, if not null
+   * @param limit maximum number of records returned
+   */
+  public List<DeletionRecord> query(Integer accountId, Timestamp since, int limit)
+      throws IOException {
+    flush();
+    List<DeletionRecord> records = new ArrayList<>();
+    String accountField = accountId != null ? "\"account_id\":" + accountId + "," : null;
+    for (int i = 0; i <= maxFiles && records.size() < limit; i++) {
+      Path file = i == 0 ? logFile : rotated(i);
+      if (!Files.exists(file)) {
+        continue;
+      }
+      if (since != null && Files.getLastModifiedTime(file).toMillis() < since.getTime()) {
+        break;
+      }
+
+      Deque<DeletionRecord> matches = new ArrayDeque<>();
+      try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (accountField != null && !line.contains(accountField)) {
+            continue;
+          }
+          DeletionRecord record = parse(file, line);
+          if (record == null || (since != null && record.deletedOn.before(since))) {
+            continue;
+          }
+          if (matches.size() == limit - records.size()) {
+            matches.removeFirst();
+          }
+          matches.addLast(record);
+        }
+      }
+      matches.descendingIterator().forEachRemaining(records::add);
+    }
+    return records;
+  }
+
+  private void write(ByteBuffer batch) throws IOException {
+    if (channel == null) {
+      channel = FileChannel.open(logFile, CREATE, WRITE, APPEND);
+    }
+    while (batch.hasRemaining()) {
+      channel.write(batch);
+    }
+    channel.force(false);
+  }
+
+  private void rotate() throws IOException {
+    closeChannel();
+    if (maxFiles == 0) {
+      Files.delete(logFile);
+      return;
+    }
+    Files.deleteIfExists(rotated(maxFiles));
+    for (int i = maxFiles - 1; i > 0; i--) {
+      if (Files.exists(rotated(i))) {
+        Files.move(rotated(i), rotated(i + 1), ATOMIC_MOVE, REPLACE_EXISTING);
+      }
+    }
+    Files.move(logFile, rotated(1), ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private Path rotated(int index) {
+    return logFile.resolveSibling(LOG_FILE + "." + index);
+  }
+
+  private synchronized void closeChannel() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Unable to close {}", logFile, e);
+      }
+      channel = null;
+    }
+  }
+
+  private static DeletionRecord parse(Path file, String line) {
+    try {
+      return GSON.fromJson(line, DeletionRecord.class);
+    } catch (JsonParseException e) {
+      log.warn("Skipping malformed entry of {}: {}", file, line);
+      return null;
+    }
+  }
+}
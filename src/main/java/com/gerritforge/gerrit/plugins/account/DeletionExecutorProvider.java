@@ -0,0 +1,46 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.concurrent.ScheduledExecutorService;
+
+@Singleton
+class DeletionExecutorProvider implements Provider<ScheduledExecutorService>, LifecycleListener {
+  private ScheduledExecutorService executor;
+
+  @Inject
+  DeletionExecutorProvider(WorkQueue workQueue, Configuration config) {
+    executor = workQueue.createQueue(config.getDeletionThreads(), "AccountDeletion");
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    // The interrupted deletions are resumed from the journal of their jobs on restart
+    executor.shutdownNow();
+  }
+
+  @Override
+  public ScheduledExecutorService get() {
+    return executor;
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import java.sql.Timestamp;
+
+/** An account removal queued for asynchronous execution. */
+public class DeletionJob {
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+  }
+
+  public final String id;
+  public final int accountId;
+  public final int callerId;
+  public final boolean resume;
+  private final Timestamp queuedOn;
+  private volatile Status status = Status.QUEUED;
+  private volatile Timestamp startedOn;
+  private volatile Timestamp finishedOn;
+  private volatile String error;
+
+  public DeletionJob(String id, int accountId, int callerId, boolean resume) {
+    this.id = id;
+    this.accountId = accountId;
+    this.callerId = callerId;
+    this.resume = resume;
+    this.queuedOn = now();
+  }
+
+  void started() {
+    startedOn = now();
+    status = Status.RUNNING;
+  }
+
+  void finished(String failure) {
+    error = failure;
+    finishedOn = now();
+    status = failure == null ? Status.DONE : Status.FAILED;
+  }
+
+  public boolean isFinished() {
+    return status == Status.DONE || status == Status.FAILED;
+  }
+
+  public DeletionJobInfo toInfo() {
+    DeletionJobInfo info = new DeletionJobInfo();
+    info.id = id;
+    info.accountId = accountId;
+    info.status = status.name();
+    info.queuedOn = queuedOn;
+    info.startedOn = startedOn;
+    info.finishedOn = finishedOn;
+    info.error = error;
+    return info;
+  }
+
+  private static Timestamp now() {
+    return new Timestamp(System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,34 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.restapi.RestResource;
+import com.google.gerrit.extensions.restapi.RestView;
+import com.google.inject.TypeLiteral;
+
+public class DeletionJobResource implements RestResource {
+  public static final TypeLiteral<RestView<DeletionJobResource>> DELETION_JOB_KIND =
+      new TypeLiteral<RestView<DeletionJobResource>>() {};
+
+  private final DeletionJob job;
+
+  DeletionJobResource(DeletionJob job) {
+    this.job = job;
+  }
+
+  DeletionJob getJob() {
+    return job;
+  }
+}
@@ -0,0 +1,242 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Account removals executed asynchronously on the plugin deletion executor.
+ *
+ * <p>Every queued job is recorded in a journal under the plugin data directory and marked as
+ * completed when it finishes, so that the jobs still pending when the plugin is stopped are queued
+ * again when it is restarted, resuming the removals from their last completed step. The journal is
+ * truncated whenever there are no pending jobs. When the plugin is stopped, the journal is closed
+ * and the pending jobs are cancelled, the running ones being interrupted, so that they are only
+ * resumed by the restarted plugin and never run concurrently with it.
+ */
+@Singleton
+public class DeletionJobs implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(DeletionJobs.class);
+
+  static final String JOURNAL_FILE = "deletion-jobs.journal";
+
+  private static final String QUEUED = "Q";
+  private static final String COMPLETED = "C";
+  private static final int MAX_FINISHED_JOBS = 10000;
+
+  private final AccountRemover remover;
+  private final ScheduledExecutorService executor;
+  private final ThreadLocalRequestContext requestContext;
+  private final IdentifiedUser.GenericFactory userFactory;
+  private final Provider<CurrentUser> userProvider;
+  private final Path journalFile;
+  private final Map<String, DeletionJob> pendingJobs = new ConcurrentHashMap<>();
+  private final Map<String, Future<?>> pendingExecutions = new ConcurrentHashMap<>();
+  private final Cache<String, DeletionJob> finishedJobs =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_FINISHED_JOBS)
+          .expireAfterWrite(1, TimeUnit.DAYS)
+          .build();
+  private Writer journal;
+
+  @Inject
+  public DeletionJobs(
+      AccountRemover remover,
+      @DeletionExecutor ScheduledExecutorService executor,
+      ThreadLocalRequestContext requestContext,
+      IdentifiedUser.GenericFactory userFactory,
+      Provider<CurrentUser> userProvider,
+      @PluginData Path pluginData) {
+    this.remover = remover;
+    this.executor = executor;
+    this.requestContext = requestContext;
+    this.userFactory = userFactory;
+    this.userProvider = userProvider;
+    this.journalFile = pluginData.resolve(JOURNAL_FILE);
+  }
+
+  @Override
+  public synchronized void start() {
+    try {
+      Collection<DeletionJob> jobs = readJournal();
+      journal = Files.newBufferedWriter(journalFile, UTF_8);
+      for (DeletionJob job : jobs) {
+        log.info("Resuming deletion job {} of account {}", job.id, job.accountId);
+        queue(job);
+      }
+    } catch (IOException e) {
+      log.error("Unable to resume the deletion jobs from {}", journalFile, e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    synchronized (this) {
+      if (journal != null) {
+        try {
+          journal.close();
+        } catch (IOException e) {
+          log.warn("Unable to close {}", journalFile, e);
+        }
+        journal = null;
+      }
+    }
+    // Left in the closed journal, hence resumed on restart
+    pendingExecutions.values().forEach(execution -> execution.cancel(true));
+  }
+
+  /**
+   * Queues the removal of the account on behalf of the current user.
+   *
+   * @param resume whether the steps completed by a previous removal of the account are skipped
+   */
+  public synchronized DeletionJob submit(int accountId, boolean resume) throws IOException {
+    if (journal == null) {
+      throw new IOException("Deletion jobs journal is not available");
+    }
+
+    DeletionJob job =
+        new DeletionJob(
+            UUID.randomUUID().toString(),
+            accountId,
+            userProvider.get().getAccountId().get(),
+            resume);
+    queue(job);
+    return job;
+  }
+
+  public Optional<DeletionJob> get(String id) {
+    DeletionJob job = pendingJobs.get(id);
+    return job != null ? Optional.of(job) : Optional.ofNullable(finishedJobs.getIfPresent(id));
+  }
+
+  private void queue(DeletionJob job) throws IOException {
+    appendToJournal(
+        QUEUED, job.id, Integer.toString(job.accountId), Integer.toString(job.callerId));
+    pendingJobs.put(job.id, job);
+    try {
+      pendingExecutions.put(job.id, executor.submit(() -> run(job)));
+    } catch (RejectedExecutionException e) {
+      log.warn("Deletion job {} left in the journal: executor is shut down", job.id);
+    }
+  }
+
+  private void run(DeletionJob job) {
+    job.started();
+    IdentifiedUser caller = userFactory.create(Account.id(job.callerId));
+    RequestContext old = requestContext.setContext(() -> caller);
+    try {
+      if (job.resume) {
+        remover.resumeRemoval(job.accountId);
+      } else {
+        remover.removeAccount(job.accountId);
+      }
+      job.finished(null);
+    } catch (Exception e) {
+      log.error("Deletion job {} of account {} failed", job.id, job.accountId, e);
+      job.finished(e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+    } finally {
+      requestContext.setContext(old);
+    }
+
+    finishedJobs.put(job.id, job);
+    completed(job);
+  }
+
+  private synchronized void completed(DeletionJob job) {
+    pendingJobs.remove(job.id);
+    pendingExecutions.remove(job.id);
+    if (journal == null) {
+      return;
+    }
+
+    try {
+      if (pendingJobs.isEmpty()) {
+        journal.close();
+        journal = Files.newBufferedWriter(journalFile, UTF_8);
+      } else {
+        appendToJournal(COMPLETED, job.id);
+      }
+    } catch (IOException e) {
+      log.error("Unable to record the completion of deletion job {}", job.id, e);
+    }
+  }
+
+  private void appendToJournal(String... fields) throws IOException {
+    journal.write(String.join(" ", fields));
+    journal.write('\n');
+    journal.flush();
+  }
+
+  private Collection<DeletionJob> readJournal() throws IOException {
+    Map<String, DeletionJob> jobs = new LinkedHashMap<>();
+    if (!Files.exists(journalFile)) {
+      return jobs.values();
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(journalFile, UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(" ");
+        try {
+          if (fields.length == 4 && fields[0].equals(QUEUED)) {
+            jobs.put(
+                fields[1],
+                new DeletionJob(
+                    fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), true));
+            continue;
+          } else if (fields.length == 2 && fields[0].equals(COMPLETED)) {
+            jobs.remove(fields[1]);
+            continue;
+          }
+        } catch (NumberFormatException e) {
+          // Reported below as any other invalid entry
+        }
+        log.warn("Ignoring invalid entry '{}' in {}", line, journalFile);
+      }
+    }
+    return jobs.values();
+  }
+}
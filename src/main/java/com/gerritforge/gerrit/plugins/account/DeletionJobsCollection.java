@@ -0,0 +1,72 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.extensions.restapi.ChildCollection;
+import com.google.gerrit.extensions.restapi.IdString;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.extensions.restapi.RestView;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+@Singleton
+public class DeletionJobsCollection
+    implements ChildCollection<ConfigResource, DeletionJobResource> {
+  private final DynamicMap<RestView<DeletionJobResource>> views;
+  private final DeletionJobs jobs;
+  private final AccountRemover remover;
+  private final Provider<CurrentUser> userProvider;
+
+  @Inject
+  public DeletionJobsCollection(
+      DynamicMap<RestView<DeletionJobResource>> views,
+      DeletionJobs jobs,
+      AccountRemover remover,
+      Provider<CurrentUser> userProvider) {
+    this.views = views;
+    this.jobs = jobs;
+    this.remover = remover;
+    this.userProvider = userProvider;
+  }
+
+  @Override
+  public RestView<ConfigResource> list() throws ResourceNotFoundException {
+    throw new ResourceNotFoundException();
+  }
+
+  @Override
+  public DeletionJobResource parse(ConfigResource parent, IdString id)
+      throws ResourceNotFoundException {
+    DeletionJob job = jobs.get(id.get()).orElseThrow(() -> new ResourceNotFoundException(id));
+    if (!isCaller(job) && !remover.canDeleteAnyAccount()) {
+      throw new ResourceNotFoundException(id);
+    }
+    return new DeletionJobResource(job);
+  }
+
+  private boolean isCaller(DeletionJob job) {
+    CurrentUser user = userProvider.get();
+    return user.isIdentifiedUser() && user.getAccountId().get() == job.callerId;
+  }
+
+  @Override
+  public DynamicMap<RestView<DeletionJobResource>> views() {
+    return views;
+  }
+}
@@ -0,0 +1,140 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.extensions.common.SshKeyInfo;
+import com.google.gerrit.server.account.AccountSshKey;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.InternalAccountUpdate;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * What the removal of an account deletes, computed from its All-Users state.
+ *
+ * <p>The same plan is applied by {@link AccountScrubber} and returned by the dry runs, so that a
+ * dry run reports exactly what the removal would do.
+ */
+class DeletionPlan {
+  private final AccountState account;
+  private final Set<String> emails = new LinkedHashSet<>();
+  private final List<ExternalId> externalIdsToDelete = new ArrayList<>();
+  private final List<ExternalId> externalIdsToUpdate = new ArrayList<>();
+
+  private DeletionPlan(AccountState account) {
+    this.account = account;
+  }
+
+  static DeletionPlan of(AccountState account) {
+    DeletionPlan plan = new DeletionPlan(account);
+    String preferredEmail = account.account().preferredEmail();
+    if (preferredEmail != null) {
+      plan.emails.add(preferredEmail);
+    }
+    for (ExternalId extId : account.externalIds()) {
+      if (extId.email() != null) {
+        plan.emails.add(extId.email());
+      }
+      if (ScrubRules.isRemovableExternalId(extId.key().get())) {
+        plan.externalIdsToDelete.add(extId);
+      } else if (extId.email() != null) {
+        plan.externalIdsToUpdate.add(
+            ExternalId.create(extId.key(), extId.accountId(), null, extId.password()));
+      }
+    }
+    return plan;
+  }
+
+  int emails() {
+    return emails.size();
+  }
+
+  int externalIds() {
+    return externalIdsToDelete.size();
+  }
+
+  /** Whether the account has no personal information left to remove and is already inactive. */
+  boolean isEmpty() {
+    return emails.isEmpty()
+        && externalIdsToDelete.isEmpty()
+        && account.account().fullName() == null
+        && !account.account().isActive();
+  }
+
+  /** Adds the removal of all the planned information to the account update. */
+  void applyTo(InternalAccountUpdate.Builder update) {
+    update.deleteExternalIds(externalIdsToDelete).updateExternalIds(externalIdsToUpdate);
+    applyAccountTo(update);
+  }
+
+  /**
+   * Adds the removal of the planned information, except the external IDs, to the account update.
+   */
+  void applyAccountTo(InternalAccountUpdate.Builder update) {
+    update.setPreferredEmail("").setFullName("");
+    if (account.account().isActive()) {
+      update.setActive(false);
+    }
+  }
+
+  List<ExternalId.Key> externalIdKeysToDelete() {
+    return externalIdsToDelete.stream().map(ExternalId::key).collect(Collectors.toList());
+  }
+
+  /** Returns the retained external IDs, with their email removed. */
+  List<ExternalId> externalIdsToUpdate() {
+    return externalIdsToUpdate;
+  }
+
+  DeletionPlanInfo toInfo(Collection<AccountSshKey> sshKeys) {
+    DeletionPlanInfo info = new DeletionPlanInfo();
+    info.accountId = account.account().id().get();
+    info.username = account.userName().orElse(null);
+    info.fullName = account.account().fullName();
+    info.emails = new ArrayList<>(emails);
+    info.sshKeys = sshKeys.stream().map(DeletionPlan::toSshKeyInfo).collect(Collectors.toList());
+    info.externalIds =
+        externalIdsToDelete.stream().map(e -> e.key().get()).collect(Collectors.toList());
+    info.deactivate = account.account().isActive();
+    return info;
+  }
+
+  AccountDeletedEvent.DeletedAccount toDeletedAccount() {
+    AccountDeletedEvent.DeletedAccount deleted = new AccountDeletedEvent.DeletedAccount();
+    deleted.accountId = account.account().id().get();
+    deleted.username = account.userName().orElse(null);
+    deleted.emails = new ArrayList<>(emails);
+    deleted.externalIds =
+        externalIdsToDelete.stream().map(e -> e.key().get()).collect(Collectors.toList());
+    return deleted;
+  }
+
+  static SshKeyInfo toSshKeyInfo(AccountSshKey key) {
+    SshKeyInfo info = new SshKeyInfo();
+    info.seq = key.seq();
+    info.sshPublicKey = key.sshPublicKey();
+    info.encodedKey = key.encodedKey();
+    info.algorithm = key.algorithm();
+    info.comment = Strings.emptyToNull(key.comment());
+    info.valid = key.valid();
+    return info;
+  }
+}
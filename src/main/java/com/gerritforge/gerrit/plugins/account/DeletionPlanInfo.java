@@ -0,0 +1,28 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.common.SshKeyInfo;
+import java.util.List;
+
+public class DeletionPlanInfo {
+  public Integer accountId;
+  public String username;
+  public String fullName;
+  public List<String> emails;
+  public List<SshKeyInfo> sshKeys;
+  public List<String> externalIds;
+  public Boolean deactivate;
+}
@@ -0,0 +1,45 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import java.sql.Timestamp;
+
+/**
+ * What an account removal did: who removed which account, when, what was removed, with which
+ * outcome and how long it took.
+ *
+ * <p>The counts are filled in by the removal steps as they complete and are left unset for the
+ * steps that did not run.
+ */
+public class DeletionRecord {
+  public Timestamp deletedOn;
+  public Integer callerId;
+  public int accountId;
+  public boolean resumed;
+  public boolean deleted;
+  public String error;
+  public long durationMs;
+  public Integer emails;
+  public Integer sshKeys;
+  public Integer externalIds;
+  public Integer personalRefs;
+
+  public DeletionRecord(int accountId, Integer callerId, boolean resumed) {
+    this.deletedOn = new Timestamp(System.currentTimeMillis());
+    this.accountId = accountId;
+    this.callerId = callerId;
+    this.resumed = resumed;
+  }
+}
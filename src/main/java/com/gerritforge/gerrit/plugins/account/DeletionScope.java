@@ -0,0 +1,89 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.ssh.SshKeyCache;
+import java.util.Optional;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+
+/**
+ * Defers the side effects of the writes of an account removal until it completes.
+ *
+ * <p>Every notified update of an account ref reindexes the account. The SSH keys are therefore
+ * committed without notification, and the account update that follows on the same ref notifies and
+ * reindexes the account once for both. Only if the account update does not happen, the SSH keys
+ * update is notified when the scope is closed. The SSH keys cache is evicted once, on close.
+ */
+class DeletionScope implements AutoCloseable {
+  private final Account.Id accountId;
+  private final AllUsersName allUsersName;
+  private final GitReferenceUpdated gitRefUpdated;
+  private final SshKeyCache sshKeyCache;
+  private final AccountCache accountCache;
+  @Nullable private final AccountState caller;
+  private BatchRefUpdate pendingRefUpdate;
+  private boolean sshKeysRemoved;
+  private AccountState account;
+
+  DeletionScope(
+      Account.Id accountId,
+      AllUsersName allUsersName,
+      GitReferenceUpdated gitRefUpdated,
+      SshKeyCache sshKeyCache,
+      AccountCache accountCache,
+      @Nullable AccountState caller) {
+    this.accountId = accountId;
+    this.allUsersName = allUsersName;
+    this.gitRefUpdated = gitRefUpdated;
+    this.sshKeyCache = sshKeyCache;
+    this.accountCache = accountCache;
+    this.caller = caller;
+  }
+
+  /** Records the SSH keys removal, committed without notifying the ref update. */
+  void sshKeysRemoved(BatchRefUpdate refUpdate) {
+    pendingRefUpdate = refUpdate;
+    sshKeysRemoved = true;
+  }
+
+  /** Records the account update, which notified the account ref update and reindexed it. */
+  void accountUpdated(AccountState account) {
+    this.account = account;
+    pendingRefUpdate = null;
+  }
+
+  @Override
+  public void close() {
+    if (pendingRefUpdate != null) {
+      gitRefUpdated.fire(allUsersName, pendingRefUpdate, caller);
+    }
+    if (sshKeysRemoved) {
+      userName().ifPresent(sshKeyCache::evict);
+    }
+  }
+
+  private Optional<String> userName() {
+    if (account != null) {
+      return account.userName();
+    }
+    return accountCache.get(accountId).flatMap(AccountState::userName);
+  }
+}
@@ -0,0 +1,161 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BinaryResult;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.server.account.AccountResource;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.inject.Inject;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.kohsuke.args4j.Option;
+
+public class ExportAccount implements RestReadView<AccountResource> {
+  public enum Format {
+    NDJSON,
+    ZIP
+  }
+
+  /** A record of the NDJSON export. */
+  public static class ExportRecord {
+    public final String section;
+    public final Object data;
+
+    ExportRecord(String section, Object data) {
+      this.section = section;
+      this.data = data;
+    }
+  }
+
+  private static final Gson ZIP_JSON = OutputFormat.JSON.newGson();
+
+  @Option(name = "--format", metaVar = "FORMAT", usage = "NDJSON (default) or ZIP")
+  private Format format = Format.NDJSON;
+
+  private final AccountRemover remover;
+  private final AccountExporter exporter;
+
+  @Inject
+  public ExportAccount(AccountRemover remover, AccountExporter exporter) {
+    this.remover = remover;
+    this.exporter = exporter;
+  }
+
+  @Override
+  public Response<BinaryResult> apply(AccountResource resource) throws Exception {
+    int accountId = resource.getUser().getAccountId().get();
+    if (!remover.canDelete(accountId)) {
+      throw new AuthException("not allowed to export account " + accountId);
+    }
+
+    AccountExporter.Export export = exporter.load(resource.getUser().getAccountId());
+    if (format == Format.ZIP) {
+      BinaryResult zip =
+          new BinaryResult() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+              ZipOutputStream out = new ZipOutputStream(os);
+              export.writeTo(new ZipSink(out));
+              out.finish();
+            }
+          };
+      return Response.ok(
+          zip.setContentType("application/zip")
+              .setAttachmentName("account-" + accountId + ".zip")
+              .disableGzip());
+    }
+
+    BinaryResult ndjson =
+        new BinaryResult() {
+          @Override
+          public void writeTo(OutputStream os) throws IOException {
+            NdjsonWriter out = new NdjsonWriter(os);
+            export.writeTo(new NdjsonSink(out));
+            out.finish();
+          }
+        };
+    return Response.ok(
+        ndjson.setContentType(NdjsonWriter.CONTENT_TYPE).setCharacterEncoding(UTF_8).disableGzip());
+  }
+
+  /** Writes one line per record, tagged with its section. */
+  private static class NdjsonSink implements AccountExporter.Sink {
+    private final NdjsonWriter out;
+
+    NdjsonSink(NdjsonWriter out) {
+      this.out = out;
+    }
+
+    @Override
+    public void object(String section, Object value) {
+      out.write(new ExportRecord(section, value));
+    }
+
+    @Override
+    public void list(String section, Iterable<?> values) {
+      for (Object value : values) {
+        out.write(new ExportRecord(section, value));
+      }
+    }
+  }
+
+  /** Writes one JSON file per section, streaming the lists one element at a time. */
+  private static class ZipSink implements AccountExporter.Sink {
+    private final ZipOutputStream zip;
+
+    ZipSink(ZipOutputStream zip) {
+      this.zip = zip;
+    }
+
+    @Override
+    public void object(String section, Object value) throws IOException {
+      JsonWriter json = startEntry(section);
+      ZIP_JSON.toJson(value, value.getClass(), json);
+      endEntry(json);
+    }
+
+    @Override
+    public void list(String section, Iterable<?> values) throws IOException {
+      JsonWriter json = startEntry(section);
+      json.beginArray();
+      for (Object value : values) {
+        ZIP_JSON.toJson(value, value.getClass(), json);
+      }
+      json.endArray();
+      endEntry(json);
+    }
+
+    private JsonWriter startEntry(String section) throws IOException {
+      zip.putNextEntry(new ZipEntry(section + ".json"));
+      return ZIP_JSON.newJsonWriter(new OutputStreamWriter(zip, UTF_8));
+    }
+
+    /** Flushes the entry without closing the writer, which would close the whole archive. */
+    private void endEntry(JsonWriter json) throws IOException {
+      json.flush();
+      zip.closeEntry();
+    }
+  }
+}
@@ -0,0 +1,255 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.git.LockFailureException;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.gerrit.server.account.externalids.ExternalIdNotes;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the external IDs of many concurrent account deletions with one commit of {@code
+ * refs/meta/external-ids}.
+ *
+ * <p>The external IDs ref is shared by all the accounts, hence concurrent deletions updating it one
+ * account at a time fail with lock failures and are retried. Instead, the updates are queued and a
+ * single thread commits them together, once {@link Configuration#getExternalIdBatchSize()} accounts
+ * are queued or {@link Configuration#getExternalIdBatchWindowMs()} after the first one, whichever
+ * comes first. The callers wait for the commit of their batch. When a batch fails for another
+ * reason than lock contention, its updates are committed again one account at a time, so that only
+ * the callers whose update is at fault fail.
+ *
+ * <p>Only the external ID cache is updated by the commit. The accounts are neither reindexed nor
+ * evicted from the account cache, which is left to the account update following the removal of
+ * their external IDs, so that each account is reindexed and evicted once.
+ */
+@Singleton
+public class ExternalIdBatcher implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(ExternalIdBatcher.class);
+  private static final int MAX_ATTEMPTS = 3;
+
+  private static class Update {
+    final Account.Id accountId;
+    final Collection<ExternalId.Key> toDelete;
+    final Collection<ExternalId> toUpdate;
+    final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+    Update(
+        Account.Id accountId,
+        Collection<ExternalId.Key> toDelete,
+        Collection<ExternalId> toUpdate) {
+      this.accountId = accountId;
+      this.toDelete = toDelete;
+      this.toUpdate = toUpdate;
+    }
+  }
+
+  private final WorkQueue workQueue;
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsersName;
+  private final ExternalIdNotes.Factory externalIdNotesFactory;
+  private final Provider<MetaDataUpdate.Server> metaDataUpdateFactory;
+  private final RemovalMetrics metrics;
+  private final int batchSize;
+  private final long windowMs;
+
+  private final List<Update> pending = new ArrayList<>();
+  private boolean commitScheduled;
+  private ScheduledExecutorService committer;
+
+  @Inject
+  public ExternalIdBatcher(
+      WorkQueue workQueue,
+      GitRepositoryManager repoManager,
+      AllUsersName allUsersName,
+      ExternalIdNotes.Factory externalIdNotesFactory,
+      Provider<MetaDataUpdate.Server> metaDataUpdateFactory,
+      RemovalMetrics metrics,
+      Configuration config) {
+    this.workQueue = workQueue;
+    this.repoManager = repoManager;
+    this.allUsersName = allUsersName;
+    this.externalIdNotesFactory = externalIdNotesFactory;
+    this.metaDataUpdateFactory = metaDataUpdateFactory;
+    this.metrics = metrics;
+    this.batchSize = config.getExternalIdBatchSize();
+    this.windowMs = config.getExternalIdBatchWindowMs();
+  }
+
+  @Override
+  public synchronized void start() {
+    if (isEnabled()) {
+      committer = workQueue.createQueue(1, "ExternalIdGroupCommit");
+    }
+  }
+
+  @Override
+  public void stop() {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = committer;
+      committer = null;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(windowMs + 10000, MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Whether the external IDs removals are batched, rather than part of each account update. */
+  public boolean isEnabled() {
+    return windowMs > 0;
+  }
+
+  /**
+   * Deletes and updates external IDs of an account with the next batch, and waits for its commit.
+   *
+   * <p>The account is not reindexed: it is up to the caller to update it afterwards.
+   */
+  public void update(
+      Account.Id accountId, Collection<ExternalId.Key> toDelete, Collection<ExternalId> toUpdate)
+      throws Exception {
+    if (toDelete.isEmpty() && toUpdate.isEmpty()) {
+      return;
+    }
+
+    Update update = new Update(accountId, toDelete, toUpdate);
+    synchronized (this) {
+      if (committer == null) {
+        throw new IllegalStateException("external IDs batcher is stopped");
+      }
+      pending.add(update);
+      if (pending.size() >= batchSize) {
+        committer.execute(this::commitPending);
+      } else if (!commitScheduled) {
+        committer.schedule(this::commitPending, windowMs, MILLISECONDS);
+      }
+      commitScheduled = true;
+    }
+
+    try {
+      update.committed.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new StorageException(e.getCause());
+    }
+  }
+
+  private void commitPending() {
+    boolean more;
+    do {
+      List<Update> batch;
+      synchronized (this) {
+        List<Update> head = pending.subList(0, Math.min(batchSize, pending.size()));
+        batch = new ArrayList<>(head);
+        head.clear();
+        more = !pending.isEmpty();
+        commitScheduled = more;
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      try {
+        commit(batch);
+        batch.forEach(u -> u.committed.complete(null));
+      } catch (LockFailureException e) {
+        log.error("Unable to remove the external IDs of {} accounts", batch.size(), e);
+        batch.forEach(u -> u.committed.completeExceptionally(e));
+      } catch (Exception e) {
+        if (batch.size() == 1) {
+          fail(batch.get(0), e);
+        } else {
+          log.warn(
+              "Unable to remove the external IDs of {} accounts at once,"
+                  + " removing them one account at a time",
+              batch.size(),
+              e);
+          commitEach(batch);
+        }
+      }
+    } while (more);
+  }
+
+  private void commitEach(List<Update> batch) {
+    for (Update update : batch) {
+      try {
+        commit(ImmutableList.of(update));
+        update.committed.complete(null);
+      } catch (Exception e) {
+        fail(update, e);
+      }
+    }
+  }
+
+  private static List<Account.Id> accountIds(List<Update> batch) {
+    return batch.stream().map(u -> u.accountId).collect(Collectors.toList());
+  }
+
+  private static void fail(Update update, Exception e) {
+    log.error("Unable to remove the external IDs of account {}", update.accountId, e);
+    update.committed.completeExceptionally(e);
+  }
+
+  private void commit(List<Update> batch) throws Exception {
+    for (int attempt = 1; ; attempt++) {
+      try (Repository repo = repoManager.openRepository(allUsersName);
+          MetaDataUpdate md = metaDataUpdateFactory.get().create(allUsersName, repo, null)) {
+        ExternalIdNotes notes = externalIdNotesFactory.load(repo);
+        for (Update update : batch) {
+          notes.delete(update.accountId, update.toDelete);
+          notes.upsert(update.toUpdate);
+        }
+        md.setMessage("Delete external IDs of " + batch.size() + " accounts via account plugin");
+        notes.commit(md);
+        notes.updateCaches(accountIds(batch));
+        metrics.recordExternalIdBatch(batch.size());
+        return;
+      } catch (LockFailureException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+}
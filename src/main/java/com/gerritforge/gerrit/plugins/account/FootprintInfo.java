@@ -0,0 +1,29 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+/** How much of the review history of the server references an account. */
+public class FootprintInfo {
+  public int accountId;
+  public int changesOwned;
+  public int reviews;
+  public int votes;
+  public int comments;
+  public int groups;
+
+  FootprintInfo(int accountId) {
+    this.accountId = accountId;
+  }
+}
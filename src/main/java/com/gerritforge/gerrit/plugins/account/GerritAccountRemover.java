@@ -14,123 +14,128 @@
 
 package com.gerritforge.gerrit.plugins.account;
 
-import com.gerritforge.gerrit.plugins.account.permissions.DeleteAccountCapability;
-import com.gerritforge.gerrit.plugins.account.permissions.DeleteOwnAccountCapability;
+import com.gerritforge.gerrit.plugins.account.AccountDeletedEvent.DeletedAccount;
+import com.gerritforge.gerrit.plugins.account.DeletePermissionCache.Permission;
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints.Checkpoint;
 import com.google.gerrit.entities.Account;
-import com.google.gerrit.extensions.annotations.PluginName;
-import com.google.gerrit.extensions.api.GerritApi;
-import com.google.gerrit.extensions.api.access.PluginPermission;
-import com.google.gerrit.extensions.api.accounts.AccountApi;
-import com.google.gerrit.extensions.api.accounts.Accounts;
-import com.google.gerrit.extensions.common.EmailInfo;
-import com.google.gerrit.extensions.common.NameInput;
-import com.google.gerrit.extensions.common.SshKeyInfo;
-import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.server.CurrentUser;
-import com.google.gerrit.server.account.AccountResource;
-import com.google.gerrit.server.account.SetInactiveFlag;
-import com.google.gerrit.server.account.externalids.ExternalId;
-import com.google.gerrit.server.permissions.PermissionBackend;
-import com.google.gerrit.server.restapi.account.PutName;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Removes accounts by running the {@link AccountRemovalStep}s through {@link RemovalSteps}, and
+ * records the outcome of each removal.
+ */
 public class GerritAccountRemover implements AccountRemover {
-  private final Accounts accounts;
-  private final PutName putName;
-  private final AccountResourceFactory accountFactory;
-  private final PermissionBackend permissionBackend;
+  private final DeletePermissionCache permissionCache;
   private final Provider<CurrentUser> userProvider;
-  private final SetInactiveFlag setInactive;
-  private final String pluginName;
+  private final AccountScrubber scrubber;
+  private final RemovalMetrics metrics;
+  private final RemovalCheckpoints checkpoints;
+  private final DeletionAuditLog auditLog;
+  private final AccountDeletedEvents deletedEvents;
+  private final RemovalSteps removalSteps;
+  private final PersonalRefsRemover personalRefsRemover;
 
   @Inject
   public GerritAccountRemover(
-      GerritApi api,
-      PutName putName,
-      AccountResourceFactory accountFactory,
-      PermissionBackend permissionBackend,
+      DeletePermissionCache permissionCache,
       Provider<CurrentUser> userProvider,
-      SetInactiveFlag setInactive,
-      @PluginName String pluginName) {
-    this.accounts = api.accounts();
-    this.putName = putName;
-    this.accountFactory = accountFactory;
-    this.permissionBackend = permissionBackend;
+      AccountScrubber scrubber,
+      RemovalMetrics metrics,
+      RemovalCheckpoints checkpoints,
+      DeletionAuditLog auditLog,
+      AccountDeletedEvents deletedEvents,
+      RemovalSteps removalSteps,
+      PersonalRefsRemover personalRefsRemover) {
+    this.permissionCache = permissionCache;
     this.userProvider = userProvider;
-    this.setInactive = setInactive;
-    this.pluginName = pluginName;
+    this.scrubber = scrubber;
+    this.metrics = metrics;
+    this.checkpoints = checkpoints;
+    this.auditLog = auditLog;
+    this.deletedEvents = deletedEvents;
+    this.removalSteps = removalSteps;
+    this.personalRefsRemover = personalRefsRemover;
   }
 
   @Override
   public void removeAccount(int accountId) throws Exception {
-    AccountApi account = isMyAccount(accountId) ? accounts.self() : accounts.id(accountId);
-    removeAccount(account, accountId);
+    removeAccount(accountId, false);
   }
 
-  private boolean isMyAccount(int accountId) {
-    return userProvider.get().getAccountId().get() == accountId;
-  }
-
-  private AccountResource getAccountResource(int accountId) {
-    return isMyAccount(accountId)
-        ? new AccountResource(userProvider.get().asIdentifiedUser())
-        : accountFactory.create(accountId);
+  @Override
+  public void resumeRemoval(int accountId) throws Exception {
+    if (!checkpoints.isCompleted(accountId)) {
+      removeAccount(accountId, true);
+    }
   }
 
-  private void removeAccount(AccountApi account, int accountId) throws Exception {
-    removeAccountEmails(account);
-    removeAccountSshKeys(account);
-    removeExternalIds(account);
-    removeFullName(getAccountResource(accountId));
-    if (account.getActive()) {
-      setInactive.deactivate(Account.id(accountId));
+  private void removeAccount(int accountId, boolean resume) throws Exception {
+    Checkpoint checkpoint = checkpoints.open(accountId, resume);
+    CurrentUser caller = userProvider.get();
+    DeletionRecord record =
+        new DeletionRecord(
+            accountId, caller.isIdentifiedUser() ? caller.getAccountId().get() : null, resume);
+    Optional<DeletedAccount> deleted = deletedEvents.describe(Account.id(accountId));
+    long start = System.nanoTime();
+    CompletableFuture<Void> background;
+    try (Timer0.Context ctx = metrics.startRemoval()) {
+      RemovalContext removal =
+          new RemovalContext(Account.id(accountId), record, checkpoint, metrics);
+      personalRefsRemover
+          .deferral(Account.id(accountId))
+          .ifPresent(refsRemoval -> removal.defer(PersonalRefsRemovalStep.NAME, refsRemoval));
+      background = removalSteps.run(removal);
+      record.deleted = true;
+      deleted.ifPresent(deletedEvents::accountDeleted);
+      // Failed non-blocking or deferred steps leave the removal to be resumed, running them again
+      background.thenCompose(v -> removal.deferredSteps()).thenRun(checkpoint::completed);
+    } catch (Exception e) {
+      record.error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+      completed(record, start);
+      auditLog.append(record);
+      throw e;
     }
+    completed(record, start);
+    // Audited only once the non-blocking steps are done filling in the record
+    background.whenComplete((v, e) -> auditLog.append(record));
   }
 
-  @Override
-  public boolean canDelete(int accountId) {
-    PermissionBackend.WithUser userPermission = permissionBackend.user(userProvider.get());
-    return userPermission.testOrFalse(
-            new PluginPermission(pluginName, DeleteAccountCapability.DELETE_ACCOUNT))
-        || (userPermission.testOrFalse(
-                new PluginPermission(pluginName, DeleteOwnAccountCapability.DELETE_OWN_ACCOUNT))
-            && isMyAccount(accountId));
+  private void completed(DeletionRecord record, long start) {
+    record.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    metrics.removalCompleted(record);
   }
 
-  private void removeFullName(AccountResource userRsc) throws Exception {
-    putName.apply(userRsc, new NameInput());
+  @Override
+  public DeletionPlanInfo planRemoval(int accountId) throws Exception {
+    return scrubber.plan(Account.id(accountId));
   }
 
-  private void removeExternalIds(AccountApi account) throws RestApiException {
-    List<String> externalIds =
-        account.getExternalIds().stream()
-            .map(eid -> eid.identity)
-            .filter(eid -> !eid.startsWith(ExternalId.SCHEME_USERNAME))
-            .filter(eid -> !eid.startsWith(ExternalId.SCHEME_UUID))
-            .filter(eid -> !eid.startsWith(ExternalId.SCHEME_GERRIT))
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
-    if (externalIds.size() > 0) {
-      account.deleteExternalIds(externalIds);
-    }
+  private boolean isMyAccount(int accountId) {
+    CurrentUser user = userProvider.get();
+    return user.isIdentifiedUser() && user.getAccountId().get() == accountId;
   }
 
-  private void removeAccountSshKeys(AccountApi account) throws RestApiException {
-    List<SshKeyInfo> accountKeys = account.listSshKeys();
-    for (SshKeyInfo sshKeyInfo : accountKeys) {
-      if (sshKeyInfo != null && sshKeyInfo.valid) {
-        account.deleteSshKey(sshKeyInfo.seq);
-      }
+  @Override
+  public boolean canDelete(int accountId) {
+    switch (permissionCache.get(userProvider.get())) {
+      case DELETE_ANY_ACCOUNT:
+        return true;
+      case DELETE_OWN_ACCOUNT:
+        return isMyAccount(accountId);
+      case NONE:
+      default:
+        return false;
     }
   }
 
-  private void removeAccountEmails(AccountApi account) throws RestApiException {
-    for (EmailInfo email : account.getEmails()) {
-      account.deleteEmail(email.email);
-    }
+  @Override
+  public boolean canDeleteAnyAccount() {
+    return permissionCache.get(userProvider.get()) == Permission.DELETE_ANY_ACCOUNT;
   }
 }
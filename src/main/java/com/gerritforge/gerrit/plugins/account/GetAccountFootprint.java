@@ -0,0 +1,47 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.account.AccountResource;
+import com.google.inject.Inject;
+
+public class GetAccountFootprint implements RestReadView<AccountResource> {
+  private final AccountRemover remover;
+  private final AccountFootprintScanner scanner;
+
+  @Inject
+  public GetAccountFootprint(AccountRemover remover, AccountFootprintScanner scanner) {
+    this.remover = remover;
+    this.scanner = scanner;
+  }
+
+  @Override
+  public Response<FootprintInfo> apply(AccountResource resource) throws Exception {
+    int accountId = resource.getUser().getAccountId().get();
+    if (!remover.canDelete(accountId)) {
+      throw new AuthException("not allowed to read the footprint of account " + accountId);
+    }
+    // Callers only allowed to delete their own account only see their visible changes counted.
+    boolean enforceVisibility = !remover.canDeleteAnyAccount();
+    return Response.ok(
+        scanner
+            .scan(ImmutableList.of(resource.getUser().getAccountId()), enforceVisibility)
+            .get(0));
+  }
+}
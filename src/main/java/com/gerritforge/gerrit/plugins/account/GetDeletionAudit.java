@@ -0,0 +1,72 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import java.sql.Timestamp;
+import java.util.List;
+import org.kohsuke.args4j.Option;
+
+public class GetDeletionAudit implements RestReadView<ConfigResource> {
+  private static final int DEFAULT_LIMIT = 100;
+
+  @Option(name = "--account", metaVar = "ID", usage = "only the removals of this account")
+  private Integer accountId;
+
+  @Option(
+      name = "--since",
+      metaVar = "TIMESTAMP",
+      usage = "only the removals started since, as 'yyyy-mm-dd hh:mm:ss'")
+  private String since;
+
+  @Option(name = "--limit", aliases = "-n", metaVar = "CNT", usage = "maximum number of records")
+  private int limit = DEFAULT_LIMIT;
+
+  private final AccountRemover remover;
+  private final DeletionAuditLog auditLog;
+
+  @Inject
+  public GetDeletionAudit(AccountRemover remover, DeletionAuditLog auditLog) {
+    this.remover = remover;
+    this.auditLog = auditLog;
+  }
+
+  @Override
+  public Response<List<DeletionRecord>> apply(ConfigResource resource) throws Exception {
+    if (!remover.canDeleteAnyAccount()) {
+      throw new AuthException("not allowed to read the account deletions audit");
+    }
+    if (limit <= 0) {
+      throw new BadRequestException("limit must be positive");
+    }
+    return Response.ok(auditLog.query(accountId, parseSince(), limit));
+  }
+
+  private Timestamp parseSince() throws BadRequestException {
+    if (since == null) {
+      return null;
+    }
+    try {
+      return Timestamp.valueOf(since);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("invalid since: " + since);
+    }
+  }
+}
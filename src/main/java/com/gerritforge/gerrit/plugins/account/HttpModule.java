@@ -24,5 +24,8 @@ public class HttpModule extends ServletModule {
   protected void configureServlets() {
     DynamicSet.bind(binder(), AllRequestFilter.class).to(AccountLoginRedirectFilter.class);
     DynamicSet.bind(binder(), AllRequestFilter.class).to(XAuthFilter.class);
+    DynamicSet.bind(binder(), AllRequestFilter.class).to(RetryAfterFilter.class);
+
+    serve("/" + StaticAssetServlet.RESOURCE_PREFIX + "/*").with(StaticAssetServlet.class);
   }
 }
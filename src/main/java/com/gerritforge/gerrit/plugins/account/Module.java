@@ -14,16 +14,26 @@
 
 package com.gerritforge.gerrit.plugins.account;
 
+import static com.gerritforge.gerrit.plugins.account.DeletionJobResource.DELETION_JOB_KIND;
 import static com.google.gerrit.server.account.AccountResource.ACCOUNT_KIND;
+import static com.google.gerrit.server.config.ConfigResource.CONFIG_KIND;
 
 import com.gerritforge.gerrit.plugins.account.permissions.DeleteAccountCapability;
 import com.gerritforge.gerrit.plugins.account.permissions.DeleteOwnAccountCapability;
 import com.google.gerrit.extensions.annotations.Exports;
 import com.google.gerrit.extensions.config.CapabilityDefinition;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.GroupIndexedListener;
+import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.restapi.RestApiModule;
 import com.google.gerrit.extensions.webui.TopMenu;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.events.EventTypes;
 import com.google.inject.AbstractModule;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
 
 class Module extends AbstractModule {
 
@@ -34,6 +44,36 @@ class Module extends AbstractModule {
           @Override
           protected void configure() {
             delete(ACCOUNT_KIND).to(DeleteAccount.class);
+            get(ACCOUNT_KIND, "export").to(ExportAccount.class);
+            get(ACCOUNT_KIND, "footprint").to(GetAccountFootprint.class);
+            post(ACCOUNT_KIND, "undelete").to(UndeleteAccount.class);
+            post(CONFIG_KIND, "delete").to(BulkDeleteAccounts.class);
+            post(CONFIG_KIND, "footprint").to(BulkAccountFootprint.class);
+
+            DynamicMap.mapOf(binder(), DELETION_JOB_KIND);
+            child(CONFIG_KIND, "jobs").to(DeletionJobsCollection.class);
+            get(DELETION_JOB_KIND).to(GetDeletionJob.class);
+            get(CONFIG_KIND, "audit").to(GetDeletionAudit.class);
+          }
+        });
+
+    bind(ScheduledExecutorService.class)
+        .annotatedWith(DeletionExecutor.class)
+        .toProvider(DeletionExecutorProvider.class);
+    install(
+        new LifecycleModule() {
+          @Override
+          protected void configure() {
+            listener().to(DeletionAuditLog.class);
+            listener().to(AccountDeletedEvents.class);
+            listener().to(ExternalIdBatcher.class);
+            listener().to(RemovalSteps.class);
+            listener().to(DeletionExecutorProvider.class);
+            listener().to(RemovalCheckpoints.class);
+            listener().to(DeletionJobs.class);
+            listener().to(SoftDeletions.class);
+            listener().to(AccountPurger.class);
+            listener().to(AccountFootprintScanner.class);
           }
         });
 
@@ -45,5 +85,26 @@ class Module extends AbstractModule {
         .to(DeleteOwnAccountCapability.class);
 
     DynamicSet.bind(binder(), TopMenu.class).to(AccountTopMenu.class);
+
+    DynamicSet.setOf(binder(), AccountRemovalStep.class);
+    DynamicSet.bind(binder(), AccountRemovalStep.class).to(AccountDataRemovalStep.class);
+    DynamicSet.bind(binder(), AccountRemovalStep.class).to(PersonalRefsRemovalStep.class);
+
+    install(
+        new CacheModule() {
+          @Override
+          protected void configure() {
+            cache(
+                    DeletePermissionCache.CACHE_NAME,
+                    DeletePermissionCache.Key.class,
+                    DeletePermissionCache.Permission.class)
+                .maximumWeight(1024)
+                .expireAfterWrite(Duration.ofMinutes(1));
+          }
+        });
+    DynamicSet.bind(binder(), GroupIndexedListener.class).to(DeletePermissionCache.class);
+    DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(DeletePermissionCache.class);
+
+    EventTypes.register(AccountDeletedEvent.TYPE, AccountDeletedEvent.class);
   }
 }
@@ -0,0 +1,64 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.json.OutputFormat;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes one JSON entity per line, flushing each of them to the client as soon as it is written.
+ *
+ * <p>Entities can be written concurrently. The first I/O failure stops any further output and is
+ * rethrown by {@link #finish()}.
+ */
+class NdjsonWriter {
+  static final String CONTENT_TYPE = "application/x-ndjson";
+
+  private static final Gson GSON = OutputFormat.JSON_COMPACT.newGson();
+
+  private final Writer out;
+  private IOException error;
+
+  NdjsonWriter(OutputStream os) {
+    this.out = new OutputStreamWriter(os, UTF_8);
+  }
+
+  synchronized void write(Object entity) {
+    if (error != null) {
+      return;
+    }
+
+    try {
+      out.write(GSON.toJson(entity));
+      out.write('\n');
+      out.flush();
+    } catch (IOException e) {
+      error = e;
+    }
+  }
+
+  synchronized void finish() throws IOException {
+    if (error != null) {
+      throw error;
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,240 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.git.RefUpdateUtil;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.gerrit.server.account.externalids.ExternalIdNotes;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import com.google.gerrit.server.git.meta.VersionedMetaData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * Scrubs accounts directly in the All-Users repository, while the server is stopped.
+ *
+ * <p>The same rules as the online removal are applied: the emails, the valid SSH keys, the
+ * removable external IDs, see {@link ScrubRules}, and the full name are removed and the account is
+ * deactivated. The external IDs are loaded once and all updated with a single commit, the commits
+ * of the accounts are built in parallel, and all the refs are then updated with a few large batch
+ * updates. The external IDs are updated first, as they hold the emails and identities of the
+ * accounts: a failure after them leaves some accounts not scrubbed yet, which a new scrub of the
+ * same accounts completes. Neither the caches nor the index are updated: the accounts need to be
+ * reindexed before starting the server.
+ */
+public class OfflineAccountScrubber {
+  private static final String MESSAGE = "Delete account via account plugin (offline)";
+  private static final int REFS_PER_BATCH = 1000;
+
+  /** What the scrub removed. */
+  public static class Result {
+    public int accounts;
+    public int notFound;
+    public int emails;
+    public int sshKeys;
+    public int externalIds;
+  }
+
+  /** The commits of a slice of the accounts, built by one thread. */
+  private static class Slice {
+    final List<Account.Id> scrubbed = new ArrayList<>();
+    List<ReceiveCommand> commands;
+    int notFound;
+    int emails;
+    int sshKeys;
+  }
+
+  private final AllUsersName allUsersName;
+  private final Repository repo;
+  private final PersonIdent serverIdent;
+  private final int threads;
+
+  public OfflineAccountScrubber(
+      AllUsersName allUsersName, Repository repo, PersonIdent serverIdent, int threads) {
+    this.allUsersName = allUsersName;
+    this.repo = repo;
+    this.serverIdent = serverIdent;
+    this.threads = threads;
+  }
+
+  /** Scrubs the accounts, identified by id or username. */
+  public Result scrub(List<String> accounts) throws Exception {
+    Result result = new Result();
+    ExternalIdNotes notes = ExternalIdNotes.loadNoCacheUpdate(allUsersName, repo);
+    ListMultimap<Account.Id, ExternalId> externalIds = ArrayListMultimap.create();
+    Map<String, Account.Id> usernames = new HashMap<>();
+    for (ExternalId extId : notes.all()) {
+      externalIds.put(extId.accountId(), extId);
+      if (extId.isScheme(ExternalId.SCHEME_USERNAME)) {
+        usernames.put(extId.key().id(), extId.accountId());
+      }
+    }
+
+    Set<Account.Id> accountIds = new LinkedHashSet<>();
+    for (String account : accounts) {
+      Account.Id accountId = Account.Id.tryParse(account).orElseGet(() -> usernames.get(account));
+      if (accountId != null) {
+        accountIds.add(accountId);
+      } else {
+        result.notFound++;
+      }
+    }
+
+    List<ReceiveCommand> commands = new ArrayList<>();
+    for (Slice slice : scrubAccounts(new ArrayList<>(accountIds), externalIds)) {
+      commands.addAll(slice.commands);
+      result.accounts += slice.scrubbed.size();
+      result.notFound += slice.notFound;
+      result.emails += slice.emails;
+      result.sshKeys += slice.sshKeys;
+      for (Account.Id accountId : slice.scrubbed) {
+        List<ExternalId.Key> toDelete = new ArrayList<>();
+        List<ExternalId> toUpdate = new ArrayList<>();
+        for (ExternalId extId : externalIds.get(accountId)) {
+          if (ScrubRules.isRemovableExternalId(extId.key().get())) {
+            toDelete.add(extId.key());
+          } else if (extId.email() != null) {
+            toUpdate.add(ExternalId.create(extId.key(), accountId, null, extId.password()));
+          }
+        }
+        notes.delete(accountId, toDelete);
+        notes.upsert(toUpdate);
+        result.externalIds += toDelete.size();
+      }
+    }
+
+    BatchRefUpdate externalIdsUpdate = repo.getRefDatabase().newBatchUpdate();
+    commit(notes, externalIdsUpdate);
+    RefUpdateUtil.executeChecked(externalIdsUpdate, repo);
+
+    int updated = 0;
+    for (List<ReceiveCommand> batch : Lists.partition(commands, REFS_PER_BATCH)) {
+      BatchRefUpdate bru = repo.getRefDatabase().newBatchUpdate();
+      bru.addCommand(batch);
+      try {
+        RefUpdateUtil.executeChecked(bru, repo);
+      } catch (IOException e) {
+        throw new IOException(
+            String.format(
+                "Scrubbed the external IDs of %d accounts but only %d of the %d refs of their"
+                    + " account data: scrub the same accounts again to complete it",
+                result.accounts, updated, commands.size()),
+            e);
+      }
+      updated += batch.size();
+    }
+    return result;
+  }
+
+  /** Builds the commits of the accounts in parallel, without updating their refs. */
+  private List<Slice> scrubAccounts(
+      List<Account.Id> accountIds, ListMultimap<Account.Id, ExternalId> externalIds)
+      throws Exception {
+    if (accountIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    int sliceSize = (accountIds.size() + threads - 1) / threads;
+    List<Callable<Slice>> tasks = new ArrayList<>();
+    for (List<Account.Id> slice : Lists.partition(accountIds, sliceSize)) {
+      tasks.add(() -> scrubAccounts(slice, externalIds, repo.getRefDatabase().newBatchUpdate()));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+    try {
+      List<Slice> slices = new ArrayList<>();
+      for (Future<Slice> slice : executor.invokeAll(tasks)) {
+        try {
+          slices.add(slice.get());
+        } catch (ExecutionException e) {
+          Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+          Throwables.throwIfUnchecked(e.getCause());
+          throw e;
+        }
+      }
+      return slices;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private Slice scrubAccounts(
+      List<Account.Id> accountIds,
+      ListMultimap<Account.Id, ExternalId> externalIds,
+      BatchRefUpdate bru)
+      throws IOException, ConfigInvalidException {
+    Slice slice = new Slice();
+    for (Account.Id accountId : accountIds) {
+      ScrubbedAccount account = new ScrubbedAccount(accountId);
+      account.load(allUsersName, repo);
+      if (account.getRevision() == null) {
+        slice.notFound++;
+        continue;
+      }
+
+      Set<String> emails = new LinkedHashSet<>();
+      if (account.getPreferredEmail() != null) {
+        emails.add(account.getPreferredEmail());
+      }
+      for (ExternalId extId : externalIds.get(accountId)) {
+        if (extId.email() != null) {
+          emails.add(extId.email());
+        }
+      }
+      slice.emails += emails.size();
+      slice.sshKeys += account.scrub();
+      account.scrubAccount();
+      commit(account, bru);
+      slice.scrubbed.add(accountId);
+    }
+    slice.commands = bru.getCommands();
+    return slice;
+  }
+
+  /** Commits the update, adding the update of its ref to the batch instead of executing it. */
+  private void commit(VersionedMetaData update, BatchRefUpdate bru) throws IOException {
+    // Closing the update closes the repository
+    repo.incrementOpen();
+    try (MetaDataUpdate md =
+        new MetaDataUpdate(GitReferenceUpdated.DISABLED, allUsersName, repo, bru)) {
+      md.getCommitBuilder().setAuthor(serverIdent);
+      md.getCommitBuilder().setCommitter(serverIdent);
+      md.setMessage(MESSAGE);
+      update.commit(md);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.pgm.init.api.AllUsersNameOnInitProvider;
+import com.google.gerrit.pgm.init.api.ConsoleUI;
+import com.google.gerrit.pgm.init.api.InitFlags;
+import com.google.gerrit.pgm.init.api.InitStep;
+import com.google.gerrit.server.GerritPersonIdentProvider;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.inject.Inject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Scrubs the accounts listed in the {@value #ACCOUNTS_FILE} file of the plugin data directory when
+ * the site is initialized, with {@link OfflineAccountScrubber}.
+ *
+ * <p>The file lists one account id or username per line and is renamed once the accounts are
+ * scrubbed, so that they are scrubbed only once.
+ */
+public class OfflineScrubInitStep implements InitStep {
+  static final String ACCOUNTS_FILE = "offline-scrub.txt";
+
+  private final ConsoleUI ui;
+  private final InitFlags flags;
+  private final SitePaths site;
+  private final AllUsersNameOnInitProvider allUsers;
+  private final Path accountsFile;
+
+  @Inject
+  OfflineScrubInitStep(
+      ConsoleUI ui,
+      InitFlags flags,
+      SitePaths site,
+      AllUsersNameOnInitProvider allUsers,
+      @PluginName String pluginName) {
+    this.ui = ui;
+    this.flags = flags;
+    this.site = site;
+    this.allUsers = allUsers;
+    this.accountsFile = site.data_dir.resolve(pluginName).resolve(ACCOUNTS_FILE);
+  }
+
+  @Override
+  public void run() throws Exception {
+    if (!Files.exists(accountsFile)) {
+      return;
+    }
+
+    ui.header("Offline account scrub");
+    List<String> accounts =
+        Files.readAllLines(accountsFile, UTF_8).stream()
+            .map(String::trim)
+            .filter(a -> !a.isEmpty() && !a.startsWith("#"))
+            .collect(Collectors.toList());
+    if (!ui.yesno(true, "Scrub the %d accounts listed in %s", accounts.size(), accountsFile)) {
+      return;
+    }
+
+    AllUsersName allUsersName = new AllUsersName(allUsers.get());
+    OfflineAccountScrubber.Result result;
+    try (Repository repo = openRepository(allUsersName)) {
+      result =
+          new OfflineAccountScrubber(
+                  allUsersName,
+                  repo,
+                  new GerritPersonIdentProvider(flags.cfg).get(),
+                  Runtime.getRuntime().availableProcessors())
+              .scrub(accounts);
+    }
+    Files.move(
+        accountsFile, accountsFile.resolveSibling(ACCOUNTS_FILE + ".done"), REPLACE_EXISTING);
+
+    ui.message(
+        "Scrubbed %d accounts: %d emails, %d SSH keys and %d external ids removed\n",
+        result.accounts, result.emails, result.sshKeys, result.externalIds);
+    if (result.notFound > 0) {
+      ui.message("%d accounts not found\n", result.notFound);
+    }
+    ui.message(
+        "Reindex the accounts before starting the server:\n"
+            + "  java -jar bin/gerrit.war reindex -d %s --index accounts\n",
+        site.site_path);
+  }
+
+  private Repository openRepository(AllUsersName allUsersName) throws Exception {
+    Path basePath = site.resolve(flags.cfg.getString("gerrit", null, "basePath"));
+    if (basePath == null) {
+      throw new IllegalStateException("gerrit.basePath is not set");
+    }
+    return FileKey.lenient(basePath.resolve(allUsersName.get()).toFile(), FS.DETECTED).open(true);
+  }
+}
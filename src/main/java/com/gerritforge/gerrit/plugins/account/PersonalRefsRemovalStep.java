@@ -0,0 +1,57 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics.Phase;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Removes the draft comments, starred changes and change edits of the account.
+ *
+ * <p>These refs are disjoint from the account data, hence removed concurrently with it. As finding
+ * the change edits scans every project, the removal of the account does not wait for this step, and
+ * the step is skipped when the refs are removed by a {@link PersonalRefsRemover.Batch}, the removal
+ * being then completed only once the batch has removed them.
+ */
+@Singleton
+class PersonalRefsRemovalStep implements AccountRemovalStep {
+  static final String NAME = "personal_refs";
+
+  private final PersonalRefsRemover personalRefsRemover;
+
+  @Inject
+  PersonalRefsRemovalStep(PersonalRefsRemover personalRefsRemover) {
+    this.personalRefsRemover = personalRefsRemover;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void remove(RemovalContext removal) throws Exception {
+    if (removal.isDeferred(NAME)) {
+      return;
+    }
+    removal.runPhase(
+        Phase.PERSONAL_REFS,
+        () ->
+            removal.getRecord().personalRefs =
+                personalRefsRemover.remove(ImmutableSet.of(removal.getAccountId())));
+  }
+}
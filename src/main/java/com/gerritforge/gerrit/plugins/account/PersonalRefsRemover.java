@@ -0,0 +1,293 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.git.RefUpdateUtil;
+import com.google.gerrit.server.change.ChangeFinder;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.index.change.ChangeIndexer;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the draft comments, starred changes and change edits of accounts.
+ *
+ * <p>These refs are not part of the account state, hence are left behind by the accounts API. The
+ * draft comments and starred changes refs of all the accounts are found with a single prefix scan
+ * of All-Users, and the change edits with a single prefix scan of each project. The refs of each
+ * repository are then deleted with one atomic {@link BatchRefUpdate}, whatever the number of
+ * changes and accounts, and the changes they belonged to are reindexed.
+ *
+ * <p>As every project is scanned, the removals of many accounts, like the bulk removals and the
+ * purge, go through a {@link Batch} removing the personal refs of up to {@link #ACCOUNTS_PER_SCAN}
+ * accounts with one scan, instead of one scan per account. The removal of each account is then
+ * completed only once the batch has removed its refs.
+ */
+@Singleton
+public class PersonalRefsRemover {
+  private static final Logger log = LoggerFactory.getLogger(PersonalRefsRemover.class);
+  private static final String EDIT_PREFIX = "/edit-";
+  private static final int ACCOUNTS_PER_SCAN = 1000;
+
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsersName;
+  private final ProjectCache projectCache;
+  private final ChangeFinder changeFinder;
+  private final ChangeIndexer indexer;
+  private final GitReferenceUpdated gitRefUpdated;
+  /**
+   * Accounts whose personal refs are removed by a batch rather than by their own removal, and the
+   * completion of their removal by the batch.
+   */
+  private final Map<Account.Id, CompletableFuture<Void>> deferred = new ConcurrentHashMap<>();
+
+  @Inject
+  public PersonalRefsRemover(
+      GitRepositoryManager repoManager,
+      AllUsersName allUsersName,
+      ProjectCache projectCache,
+      ChangeFinder changeFinder,
+      ChangeIndexer indexer,
+      GitReferenceUpdated gitRefUpdated) {
+    this.repoManager = repoManager;
+    this.allUsersName = allUsersName;
+    this.projectCache = projectCache;
+    this.changeFinder = changeFinder;
+    this.indexer = indexer;
+    this.gitRefUpdated = gitRefUpdated;
+  }
+
+  /** Starts a batch of account removals sharing the scans of their personal refs. */
+  public Batch newBatch() {
+    return new Batch();
+  }
+
+  /**
+   * Returns the completion of the removal of the personal refs of the account by a batch of
+   * removals, if the account is being removed by one.
+   */
+  public Optional<CompletableFuture<Void>> deferral(Account.Id accountId) {
+    return Optional.ofNullable(deferred.get(accountId));
+  }
+
+  /** Removes the personal refs of all the accounts and returns the number of refs removed. */
+  public int remove(Set<Account.Id> accountIds) throws IOException {
+    if (accountIds.isEmpty()) {
+      return 0;
+    }
+
+    List<String> editPrefixes = new ArrayList<>(accountIds.size());
+    for (Account.Id accountId : accountIds) {
+      editPrefixes.add(RefNames.refsEditPrefix(accountId));
+    }
+    List<String> allUsersPrefixes = new ArrayList<>(editPrefixes);
+    allUsersPrefixes.add(RefNames.REFS_DRAFT_COMMENTS);
+    allUsersPrefixes.add(RefNames.REFS_STARRED_CHANGES);
+
+    Map<Change.Id, Project.NameKey> changes = new HashMap<>();
+    int removed = removeRefs(allUsersName, allUsersPrefixes, accountIds, changes);
+    for (Project.NameKey project : projectCache.all()) {
+      if (!project.equals(allUsersName)) {
+        removed += removeRefs(project, editPrefixes, accountIds, changes);
+      }
+    }
+    changes.forEach(this::reindex);
+    return removed;
+  }
+
+  private int removeRefs(
+      Project.NameKey project,
+      List<String> prefixes,
+      Set<Account.Id> accountIds,
+      Map<Change.Id, Project.NameKey> changes)
+      throws IOException {
+    try (Repository repo = repoManager.openRepository(project)) {
+      BatchRefUpdate bru = repo.getRefDatabase().newBatchUpdate();
+      bru.setAllowNonFastForwards(true);
+      for (Ref ref : repo.getRefDatabase().getRefsByPrefix(prefixes.toArray(new String[0]))) {
+        String name = ref.getName();
+        if (name.startsWith(RefNames.REFS_USERS)) {
+          changeOfEdit(name).ifPresent(id -> changes.put(id, project));
+        } else if (accountIds.contains(Account.Id.fromRefSuffix(name))) {
+          Change.Id id = Change.Id.fromAllUsersRef(name);
+          if (id != null) {
+            changes.putIfAbsent(id, null);
+          }
+        } else {
+          continue;
+        }
+        bru.addCommand(new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), name));
+      }
+
+      if (bru.getCommands().isEmpty()) {
+        return 0;
+      }
+      RefUpdateUtil.executeChecked(bru, repo);
+      gitRefUpdated.fire(project, bru, null);
+      return bru.getCommands().size();
+    } catch (RepositoryNotFoundException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Account removals whose personal refs are removed together, once {@link #ACCOUNTS_PER_SCAN} of
+   * them have completed and when the batch is closed.
+   *
+   * <p>The personal refs of the accounts whose removal failed are left to their next removal, as
+   * are those of all the accounts of a failed scan.
+   */
+  public class Batch implements AutoCloseable {
+    /** Completed removals, and whether they succeeded. Guarded by this. */
+    private final Map<Account.Id, Boolean> completed = new HashMap<>();
+    /** Removals of personal refs deferred to this batch. Guarded by this. */
+    private final Map<Account.Id, CompletableFuture<Void>> pending = new HashMap<>();
+
+    private Batch() {}
+
+    /** Runs the removal of an account, deferring the removal of its personal refs to the batch. */
+    public void remove(Account.Id accountId, AccountRemoval removal) throws Exception {
+      CompletableFuture<Void> refsRemoval = new CompletableFuture<>();
+      synchronized (this) {
+        pending.put(accountId, refsRemoval);
+      }
+      deferred.put(accountId, refsRemoval);
+      boolean removed = false;
+      try {
+        removal.run();
+        removed = true;
+      } finally {
+        Map<Account.Id, Boolean> toScan = null;
+        synchronized (this) {
+          completed.put(accountId, removed);
+          if (completed.size() >= ACCOUNTS_PER_SCAN) {
+            toScan = drain();
+          }
+        }
+        if (toScan != null) {
+          scan(toScan);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      Map<Account.Id, Boolean> toScan;
+      synchronized (this) {
+        toScan = drain();
+      }
+      scan(toScan);
+    }
+
+    private Map<Account.Id, Boolean> drain() {
+      Map<Account.Id, Boolean> drained = new HashMap<>(completed);
+      completed.clear();
+      return drained;
+    }
+
+    private void scan(Map<Account.Id, Boolean> accounts) {
+      Set<Account.Id> removed = new HashSet<>();
+      accounts.forEach(
+          (id, ok) -> {
+            if (ok) {
+              removed.add(id);
+            }
+          });
+      Exception failure = null;
+      try {
+        if (!removed.isEmpty()) {
+          int refs = remove(removed);
+          log.info("Removed {} personal refs of {} accounts", refs, removed.size());
+        }
+      } catch (IOException | RuntimeException e) {
+        log.error("Unable to remove the personal refs of {} accounts", removed.size(), e);
+        failure = e;
+      }
+
+      for (Account.Id accountId : accounts.keySet()) {
+        CompletableFuture<Void> refsRemoval;
+        synchronized (this) {
+          refsRemoval = pending.remove(accountId);
+        }
+        deferred.remove(accountId, refsRemoval);
+        if (failure == null && removed.contains(accountId)) {
+          refsRemoval.complete(null);
+        } else {
+          refsRemoval.completeExceptionally(
+              failure != null
+                  ? failure
+                  : new IOException("personal refs of account " + accountId + " not removed"));
+        }
+      }
+    }
+  }
+
+  @FunctionalInterface
+  public interface AccountRemoval {
+    void run() throws Exception;
+  }
+
+  /** Parses the change of a {@code refs/users/XX/ACCOUNT/edit-CHANGE/PATCHSET} ref. */
+  private static Optional<Change.Id> changeOfEdit(String ref) {
+    int start = ref.indexOf(EDIT_PREFIX) + EDIT_PREFIX.length();
+    int end = ref.indexOf('/', start);
+    return end < 0 ? Optional.empty() : Change.Id.tryParse(ref.substring(start, end));
+  }
+
+  /**
+   * Reindexes a change no longer starred, commented or edited by the accounts, looking up its
+   * project when not known from the removed refs.
+   */
+  private void reindex(Change.Id changeId, Project.NameKey project) {
+    try {
+      if (project == null) {
+        Optional<ChangeNotes> notes = changeFinder.findOne(changeId);
+        if (!notes.isPresent()) {
+          return;
+        }
+        project = notes.get().getProjectName();
+      }
+      indexer.indexAsync(project, changeId);
+    } catch (RuntimeException e) {
+      log.warn("Unable to reindex change {}", changeId, e);
+    }
+  }
+}
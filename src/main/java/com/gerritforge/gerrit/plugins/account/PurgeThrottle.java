@@ -0,0 +1,67 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Limits the rate of the purge removals, adapting it to their latency.
+ *
+ * <p>A removal is dominated by its All-Users commits: when one takes longer than the target latency
+ * the rate is halved, down to a sixteenth of the maximum, otherwise it grows again by a tenth of
+ * the maximum. The purge therefore backs off while All-Users is slow and recovers once it is not.
+ */
+public class PurgeThrottle {
+  private static final int MIN_RATE_DIVISOR = 16;
+  private static final int RATE_INCREMENT_DIVISOR = 10;
+
+  private final double maxRate;
+  private final double minRate;
+  private final long targetLatencyNanos;
+  private final RateLimiter limiter;
+
+  /**
+   * @param maxRate maximum number of removals per second
+   * @param targetLatencyMs removal latency above which the rate is reduced
+   */
+  public PurgeThrottle(double maxRate, long targetLatencyMs) {
+    this.maxRate = maxRate;
+    this.minRate = maxRate / MIN_RATE_DIVISOR;
+    this.targetLatencyNanos = MILLISECONDS.toNanos(targetLatencyMs);
+    this.limiter = RateLimiter.create(maxRate);
+  }
+
+  /** Blocks until the next removal is allowed. */
+  public void acquire() {
+    limiter.acquire();
+  }
+
+  /** Adapts the rate to the latency, in nanoseconds, of the last removal. */
+  public void removed(long latencyNanos) {
+    double rate = limiter.getRate();
+    if (latencyNanos > targetLatencyNanos) {
+      rate = Math.max(minRate, rate / 2);
+    } else {
+      rate = Math.min(maxRate, rate + maxRate / RATE_INCREMENT_DIVISOR);
+    }
+    limiter.setRate(rate);
+  }
+
+  public double getRate() {
+    return limiter.getRate();
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the synchronous account deletions competing for the All-Users repository.
+ *
+ * <p>At most {@link Configuration#getMaxConcurrentDeletions()} deletions run at the same time, and
+ * at most {@link Configuration#getMaxQueuedDeletions()} more wait, up to {@link
+ * Configuration#getDeletionQueueTimeoutMs()}, for one of them to complete. The others are rejected
+ * straight away with a {@link RemovalRejectedException}, so that an overload is reported to the
+ * callers instead of slowing down every All-Users update.
+ */
+@Singleton
+public class RemovalAdmission {
+  /** A running deletion, releasing its slot when closed. */
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private final Semaphore running;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final int maxQueued;
+  private final long queueTimeoutMs;
+  private final long retryAfterSeconds;
+  private final RemovalMetrics metrics;
+
+  @Inject
+  public RemovalAdmission(Configuration config, RemovalMetrics metrics) {
+    this.running = new Semaphore(config.getMaxConcurrentDeletions(), true);
+    this.maxQueued = config.getMaxQueuedDeletions();
+    this.queueTimeoutMs = config.getDeletionQueueTimeoutMs();
+    this.retryAfterSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(queueTimeoutMs));
+    this.metrics = metrics;
+  }
+
+  /** Waits for a deletion slot, or fails if too many deletions are already waiting. */
+  public Permit admit() throws RemovalRejectedException, InterruptedException {
+    if (!running.tryAcquire()) {
+      if (queued.incrementAndGet() > maxQueued) {
+        queued.decrementAndGet();
+        throw reject();
+      }
+      metrics.removalQueued();
+      try {
+        if (!running.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+          throw reject();
+        }
+      } finally {
+        queued.decrementAndGet();
+        metrics.removalDequeued();
+      }
+    }
+    return running::release;
+  }
+
+  /** Returns how long the rejected callers are advised to wait before retrying. */
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  private RemovalRejectedException reject() {
+    metrics.removalRejected();
+    return new RemovalRejectedException(retryAfterSeconds);
+  }
+}
@@ -0,0 +1,222 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics.Phase;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The steps completed so far by the account removals, for resuming the ones that failed or were
+ * interrupted.
+ *
+ * <p>The steps of an account are a bitmask of the completed {@link Phase}s, appended to a journal
+ * under the plugin data directory each time a step completes, the last entry of an account
+ * superseding the previous ones. The journal is compacted when the plugin starts, and again
+ * whenever the entries appended since outnumber the checkpoints, dropping the removals completed
+ * more than one day before, so that neither the journal nor the checkpoints grow without bound.
+ */
+@Singleton
+public class RemovalCheckpoints implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(RemovalCheckpoints.class);
+
+  static final String JOURNAL_FILE = "removal-checkpoints.journal";
+
+  private static final int COMPLETED = 1 << 30;
+  private static final long RETENTION_SECONDS = TimeUnit.DAYS.toSeconds(1);
+  /** Minimum number of entries appended to the journal before it is compacted. */
+  static final int MIN_COMPACTION_ENTRIES = 10000;
+
+  private final Path journalFile;
+  /** Completed steps, in the high 32 bits, and epoch second of their last update per account. */
+  private final Map<Integer, Long> checkpoints = new ConcurrentHashMap<>();
+
+  private Writer journal;
+  private int appended;
+
+  @Inject
+  public RemovalCheckpoints(@PluginData Path pluginData) {
+    this.journalFile = pluginData.resolve(JOURNAL_FILE);
+  }
+
+  @Override
+  public synchronized void start() {
+    try {
+      readJournal();
+      compactJournal();
+      journal = Files.newBufferedWriter(journalFile, UTF_8, CREATE, APPEND);
+    } catch (IOException e) {
+      log.error("Unable to load the removal checkpoints from {}", journalFile, e);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        log.warn("Unable to close {}", journalFile, e);
+      }
+      journal = null;
+    }
+  }
+
+  /**
+   * Starts tracking the removal of an account.
+   *
+   * @param resume whether the steps completed by a previous removal of the account are kept
+   */
+  public Checkpoint open(int accountId, boolean resume) {
+    return new Checkpoint(accountId, resume ? steps(accountId) : 0);
+  }
+
+  /** Whether the account has been completely removed recently. */
+  public boolean isCompleted(int accountId) {
+    return (steps(accountId) & COMPLETED) != 0;
+  }
+
+  private int steps(int accountId) {
+    Long checkpoint = checkpoints.get(accountId);
+    return checkpoint != null ? (int) (checkpoint >>> 32) : 0;
+  }
+
+  private synchronized void record(int accountId, int steps) {
+    long now = Instant.now().getEpochSecond();
+    checkpoints.put(accountId, ((long) steps << 32) | now);
+    if (journal == null) {
+      return;
+    }
+
+    try {
+      journal.write(entry(accountId, steps, now));
+      journal.flush();
+    } catch (IOException e) {
+      log.error("Unable to record the removal checkpoint of account {}", accountId, e);
+    }
+    if (++appended > Math.max(MIN_COMPACTION_ENTRIES, checkpoints.size())) {
+      compact();
+    }
+  }
+
+  private void compact() {
+    appended = 0;
+    try {
+      journal.close();
+      compactJournal();
+    } catch (IOException e) {
+      log.error("Unable to compact {}", journalFile, e);
+    }
+    try {
+      journal = Files.newBufferedWriter(journalFile, UTF_8, CREATE, APPEND);
+    } catch (IOException e) {
+      log.error("Unable to reopen {}, removal checkpoints are no longer recorded", journalFile, e);
+      journal = null;
+    }
+  }
+
+  private static String entry(int accountId, int steps, long updatedOn) {
+    return accountId + " " + steps + " " + updatedOn + "\n";
+  }
+
+  private void readJournal() throws IOException {
+    if (!Files.exists(journalFile)) {
+      return;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(journalFile, UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(" ");
+        try {
+          if (fields.length == 3) {
+            int steps = Integer.parseInt(fields[1]);
+            long updatedOn = Long.parseLong(fields[2]);
+            checkpoints.put(Integer.parseInt(fields[0]), ((long) steps << 32) | updatedOn);
+            continue;
+          }
+        } catch (NumberFormatException e) {
+          // Reported below as any other invalid entry
+        }
+        log.warn("Ignoring invalid entry '{}' in {}", line, journalFile);
+      }
+    }
+  }
+
+  private void compactJournal() throws IOException {
+    long expiredBefore = Instant.now().getEpochSecond() - RETENTION_SECONDS;
+    Path compacted = journalFile.resolveSibling(JOURNAL_FILE + ".tmp");
+    try (Writer out = Files.newBufferedWriter(compacted, UTF_8)) {
+      for (Map.Entry<Integer, Long> e : checkpoints.entrySet()) {
+        int steps = (int) (e.getValue() >>> 32);
+        long updatedOn = e.getValue() & 0xFFFFFFFFL;
+        if ((steps & COMPLETED) != 0 && updatedOn < expiredBefore) {
+          checkpoints.remove(e.getKey());
+        } else {
+          out.write(entry(e.getKey(), steps, updatedOn));
+        }
+      }
+    }
+    Files.move(compacted, journalFile, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  /** The steps completed by the removal of one account, possibly by concurrent steps. */
+  public class Checkpoint {
+    private final int accountId;
+    private int steps;
+
+    private Checkpoint(int accountId, int steps) {
+      this.accountId = accountId;
+      this.steps = steps;
+    }
+
+    public synchronized boolean isDone(Phase phase) {
+      return (steps & bit(phase)) != 0;
+    }
+
+    public synchronized void done(Phase phase) {
+      steps |= bit(phase);
+      record(accountId, steps);
+    }
+
+    public synchronized void completed() {
+      steps |= COMPLETED;
+      record(accountId, steps);
+    }
+
+    private int bit(Phase phase) {
+      return 1 << phase.ordinal();
+    }
+  }
+}
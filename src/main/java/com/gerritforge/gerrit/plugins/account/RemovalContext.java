@@ -0,0 +1,98 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints.Checkpoint;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics.Phase;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.metrics.Timer0;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/** The removal of one account, shared by all its {@link AccountRemovalStep}s. */
+public class RemovalContext {
+  private final Account.Id accountId;
+  private final DeletionRecord record;
+  private final Checkpoint checkpoint;
+  private final RemovalMetrics metrics;
+  /** Steps run by a removal shared with other accounts. Only modified before running the steps. */
+  private final Map<String, CompletableFuture<Void>> deferred = new HashMap<>();
+
+  public RemovalContext(
+      Account.Id accountId, DeletionRecord record, Checkpoint checkpoint, RemovalMetrics metrics) {
+    this.accountId = accountId;
+    this.record = record;
+    this.checkpoint = checkpoint;
+    this.metrics = metrics;
+  }
+
+  public Account.Id getAccountId() {
+    return accountId;
+  }
+
+  /**
+   * Returns what the removal did so far, filled in by the steps. It is audited once all the steps
+   * have completed, hence is never read concurrently with them.
+   */
+  public DeletionRecord getRecord() {
+    return record;
+  }
+
+  /** Whether the removal resumes a previous one that failed or was interrupted. */
+  public boolean isResumed() {
+    return record.resumed;
+  }
+
+  /**
+   * Whether the step is run by a removal shared with other accounts, instead of by this one.
+   *
+   * <p>It is decided once, when the removal is started, so that the step sees the same decision
+   * whenever it runs.
+   */
+  public boolean isDeferred(String step) {
+    return deferred.containsKey(step);
+  }
+
+  /** Defers a step to a removal shared with other accounts, completing with it. */
+  void defer(String step, CompletableFuture<Void> completion) {
+    deferred.put(step, completion);
+  }
+
+  /** Returns the completion of all the deferred steps. */
+  CompletableFuture<Void> deferredSteps() {
+    return CompletableFuture.allOf(deferred.values().toArray(new CompletableFuture<?>[0]));
+  }
+
+  Checkpoint checkpoint() {
+    return checkpoint;
+  }
+
+  /** Runs a phase of the removal, unless completed already by a previous attempt. */
+  void runPhase(Phase phase, PhaseAction action) throws Exception {
+    if (checkpoint.isDone(phase)) {
+      return;
+    }
+    try (Timer0.Context ctx = metrics.startPhase(phase)) {
+      action.run();
+    }
+    checkpoint.done(phase);
+  }
+
+  @FunctionalInterface
+  interface PhaseAction {
+    void run() throws Exception;
+  }
+}
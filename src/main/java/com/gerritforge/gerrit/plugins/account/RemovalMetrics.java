@@ -0,0 +1,181 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Histogram0;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Singleton
+public class RemovalMetrics {
+
+  /** The phases of an account removal, timed separately. */
+  public enum Phase {
+    EMAILS("emails", "removing the emails through the accounts API"),
+    SSH_KEYS("ssh_keys", "removing the SSH keys"),
+    EXTERNAL_IDS("external_ids", "removing the external IDs through the accounts API"),
+    FULL_NAME("full_name", "removing the full name through the accounts API"),
+    INACTIVE_FLAG("inactive_flag", "deactivating the account through the accounts API"),
+    ACCOUNT_UPDATE("account_update", "the single account update of the transactional removal"),
+    PERSONAL_REFS("personal_refs", "removing the draft comments, starred changes and change edits");
+
+    private final String metricName;
+    private final String description;
+
+    Phase(String metricName, String description) {
+      this.metricName = metricName;
+      this.description = description;
+    }
+  }
+
+  private final Timer0 removalLatency;
+  private final Map<Phase, Timer0> phaseLatency = new EnumMap<>(Phase.class);
+  private final Counter0 removalSuccesses;
+  private final Counter0 removalFailures;
+  private final Counter0 removalsCoalesced;
+  private final AtomicLong removalsInFlight = new AtomicLong();
+  private final AtomicLong removalsQueued = new AtomicLong();
+  private final Counter0 removalsRejected;
+  private final Histogram0 removedEmails;
+  private final Histogram0 removedSshKeys;
+  private final Histogram0 removedExternalIds;
+  private final Histogram0 externalIdBatchSize;
+
+  @Inject
+  public RemovalMetrics(MetricMaker metricMaker) {
+    removalLatency =
+        metricMaker.newTimer(
+            "removal/latency",
+            new Description("Latency of the whole removal of an account")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+    for (Phase phase : Phase.values()) {
+      phaseLatency.put(
+          phase,
+          metricMaker.newTimer(
+              "removal/phase/" + phase.metricName,
+              new Description("Latency of " + phase.description)
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS)));
+    }
+    removalSuccesses =
+        metricMaker.newCounter(
+            "removal/success_count",
+            new Description("Accounts successfully removed").setRate().setUnit("accounts"));
+    removalFailures =
+        metricMaker.newCounter(
+            "removal/failure_count",
+            new Description("Account removals that failed").setRate().setUnit("accounts"));
+    removalsCoalesced =
+        metricMaker.newCounter(
+            "removal/coalesced_count",
+            new Description("Account removals joining one already in progress for the same account")
+                .setRate()
+                .setUnit("requests"));
+    metricMaker.newCallbackMetric(
+        "removal/in_flight",
+        Long.class,
+        new Description("Account removals currently in progress").setGauge().setUnit("accounts"),
+        removalsInFlight::get);
+    metricMaker.newCallbackMetric(
+        "admission/queue_depth",
+        Long.class,
+        new Description("Account deletion requests waiting for a running one to complete")
+            .setGauge()
+            .setUnit("requests"),
+        removalsQueued::get);
+    removalsRejected =
+        metricMaker.newCounter(
+            "admission/rejected_count",
+            new Description("Account deletion requests rejected as too many were in progress")
+                .setRate()
+                .setUnit("requests"));
+    removedEmails =
+        metricMaker.newHistogram(
+            "removal/emails_per_account",
+            new Description("Emails removed per deleted account")
+                .setCumulative()
+                .setUnit("emails"));
+    removedSshKeys =
+        metricMaker.newHistogram(
+            "removal/ssh_keys_per_account",
+            new Description("SSH keys removed per deleted account")
+                .setCumulative()
+                .setUnit("keys"));
+    removedExternalIds =
+        metricMaker.newHistogram(
+            "removal/external_ids_per_account",
+            new Description("External IDs removed per deleted account")
+                .setCumulative()
+                .setUnit("external IDs"));
+    externalIdBatchSize =
+        metricMaker.newHistogram(
+            "removal/external_ids_batch_size",
+            new Description("Accounts whose external IDs are removed in one commit")
+                .setCumulative()
+                .setUnit("accounts"));
+  }
+
+  Timer0.Context startRemoval() {
+    removalsInFlight.incrementAndGet();
+    return removalLatency.start();
+  }
+
+  void removalCompleted(DeletionRecord record) {
+    removalsInFlight.decrementAndGet();
+    (record.deleted ? removalSuccesses : removalFailures).increment();
+    if (record.emails != null) {
+      removedEmails.record(record.emails);
+    }
+    if (record.sshKeys != null) {
+      removedSshKeys.record(record.sshKeys);
+    }
+    if (record.externalIds != null) {
+      removedExternalIds.record(record.externalIds);
+    }
+  }
+
+  void recordExternalIdBatch(int accounts) {
+    externalIdBatchSize.record(accounts);
+  }
+
+  void removalQueued() {
+    removalsQueued.incrementAndGet();
+  }
+
+  void removalDequeued() {
+    removalsQueued.decrementAndGet();
+  }
+
+  void removalRejected() {
+    removalsRejected.increment();
+  }
+
+  void removalCoalesced() {
+    removalsCoalesced.increment();
+  }
+
+  Timer0.Context startPhase(Phase phase) {
+    return phaseLatency.get(phase).start();
+  }
+}
@@ -0,0 +1,33 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.server.quota.QuotaException;
+
+/** Thrown when too many account deletions are already running or waiting to run. */
+public class RemovalRejectedException extends QuotaException {
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterSeconds;
+
+  public RemovalRejectedException(long retryAfterSeconds) {
+    super("too many account deletions in progress, retry after " + retryAfterSeconds + " seconds");
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
@@ -0,0 +1,192 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.base.Throwables;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link AccountRemovalStep}s of an account removal on the plugin step executor.
+ *
+ * <p>Each step starts as soon as all its dependencies have completed successfully, hence the
+ * independent steps run concurrently, and is skipped when any of them fails. The removal waits only
+ * for the blocking steps, so that the steps contributed by other plugins do not add to its latency,
+ * and is notified of the outcome of the others once they complete.
+ */
+@Singleton
+public class RemovalSteps implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(RemovalSteps.class);
+
+  private final DynamicSet<AccountRemovalStep> steps;
+  private final ThreadLocalRequestContext requestContext;
+  private final Provider<CurrentUser> userProvider;
+  private final ScheduledExecutorService executor;
+
+  @Inject
+  public RemovalSteps(
+      DynamicSet<AccountRemovalStep> steps,
+      ThreadLocalRequestContext requestContext,
+      Provider<CurrentUser> userProvider,
+      WorkQueue workQueue,
+      Configuration config) {
+    this.steps = steps;
+    this.requestContext = requestContext;
+    this.userProvider = userProvider;
+    this.executor = workQueue.createQueue(config.getRemovalStepThreads(), "AccountRemovalSteps");
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdown();
+  }
+
+  /**
+   * Runs all the steps and waits for the blocking ones, failing with the first of them failing.
+   *
+   * @return the completion of the non-blocking steps, failing when any of them fails or is skipped
+   */
+  public CompletableFuture<Void> run(RemovalContext removal) throws Exception {
+    Map<String, AccountRemovalStep> byName = new LinkedHashMap<>();
+    for (AccountRemovalStep step : steps) {
+      AccountRemovalStep other = byName.putIfAbsent(step.getName(), step);
+      if (other != null) {
+        log.warn("Ignoring duplicate account removal step {}", step.getName());
+      }
+    }
+
+    CurrentUser caller = userProvider.get();
+    Map<String, CompletableFuture<Void>> scheduled = new HashMap<>();
+    List<CompletableFuture<Void>> blocking = new ArrayList<>();
+    List<CompletableFuture<Void>> background = new ArrayList<>();
+    for (AccountRemovalStep step : byName.values()) {
+      CompletableFuture<Void> future =
+          schedule(step.getName(), byName, scheduled, new HashSet<>(), caller, removal);
+      if (step.isBlocking()) {
+        blocking.add(future);
+      } else {
+        background.add(future);
+        future.whenComplete(
+            (v, e) -> {
+              if (e != null) {
+                log.error(
+                    "Account removal step {} failed for account {}",
+                    step.getName(),
+                    removal.getAccountId(),
+                    unwrap(e));
+              }
+            });
+      }
+    }
+
+    Throwable failure = null;
+    for (CompletableFuture<Void> future : blocking) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = unwrap(e);
+        }
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, Exception.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new ExecutionException(failure);
+    }
+    return CompletableFuture.allOf(background.toArray(new CompletableFuture<?>[0]));
+  }
+
+  private CompletableFuture<Void> schedule(
+      String name,
+      Map<String, AccountRemovalStep> byName,
+      Map<String, CompletableFuture<Void>> scheduled,
+      Set<String> visiting,
+      CurrentUser caller,
+      RemovalContext removal) {
+    CompletableFuture<Void> future = scheduled.get(name);
+    if (future != null) {
+      return future;
+    }
+    AccountRemovalStep step = byName.get(name);
+    if (step == null) {
+      return failed(new IllegalStateException("unknown account removal step " + name));
+    }
+    if (!visiting.add(name)) {
+      return failed(
+          new IllegalStateException("account removal step " + name + " depends on itself"));
+    }
+
+    List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+    for (String dependency : step.getDependencies()) {
+      dependencies.add(schedule(dependency, byName, scheduled, visiting, caller, removal));
+    }
+    visiting.remove(name);
+
+    future =
+        CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+            .thenRunAsync(() -> run(step, caller, removal), executor);
+    scheduled.put(name, future);
+    return future;
+  }
+
+  private void run(AccountRemovalStep step, CurrentUser caller, RemovalContext removal) {
+    RequestContext old = requestContext.setContext(() -> caller);
+    try {
+      step.remove(removal);
+    } catch (Exception e) {
+      throw new CompletionException(e);
+    } finally {
+      requestContext.setContext(old);
+    }
+  }
+
+  private static CompletableFuture<Void> failed(Exception e) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    future.completeExceptionally(e);
+    return future;
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    while ((e instanceof CompletionException || e instanceof ExecutionException)
+        && e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e;
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.httpd.AllRequestFilter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Adds a {@code Retry-After} header to the account deletions rejected with {@code 429 Too Many
+ * Requests} by {@link RemovalAdmission}.
+ *
+ * <p>Only the {@code DELETE} requests on accounts go through the admission, the bulk deletions
+ * being bounded by the plugin deletion threads instead.
+ */
+@Singleton
+public class RetryAfterFilter extends AllRequestFilter {
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private final RemovalAdmission admission;
+
+  @Inject
+  public RetryAfterFilter(RemovalAdmission admission) {
+    this.admission = admission;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    if (isAccountDeletion(httpRequest.getMethod(), httpRequest.getRequestURI())) {
+      response = new RetryAfterResponse((HttpServletResponse) response);
+    }
+    chain.doFilter(request, response);
+  }
+
+  private static boolean isAccountDeletion(String method, String requestUri) {
+    return method.equals("DELETE") && requestUri.contains("/accounts/");
+  }
+
+  private class RetryAfterResponse extends HttpServletResponseWrapper {
+    RetryAfterResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public void setStatus(int sc) {
+      retryAfter(sc);
+      super.setStatus(sc);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      retryAfter(sc);
+      super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      retryAfter(sc);
+      super.sendError(sc, msg);
+    }
+
+    private void retryAfter(int sc) {
+      if (sc == SC_TOO_MANY_REQUESTS) {
+        setHeader("Retry-After", Long.toString(admission.getRetryAfterSeconds()));
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.common.AccountExternalIdInfo;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Rules shared by all the removal paths for deciding what is kept on a deleted account. */
+public final class ScrubRules {
+
+  /**
+   * Returns true if the external ID must be removed from the account.
+   *
+   * <p>The username, UUID and gerrit external IDs are kept for consistency with existing reviews.
+   */
+  public static boolean isRemovableExternalId(String identity) {
+    return identity != null
+        && !identity.startsWith(ExternalId.SCHEME_USERNAME)
+        && !identity.startsWith(ExternalId.SCHEME_UUID)
+        && !identity.startsWith(ExternalId.SCHEME_GERRIT);
+  }
+
+  /** Returns the identities of the external IDs that must be removed from the account. */
+  public static List<String> removableExternalIds(Collection<AccountExternalIdInfo> externalIds) {
+    return externalIds.stream()
+        .map(eid -> eid.identity)
+        .filter(ScrubRules::isRemovableExternalId)
+        .collect(Collectors.toList());
+  }
+
+  private ScrubRules() {}
+}
@@ -0,0 +1,79 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static com.google.gerrit.server.account.AccountProperties.ACCOUNT;
+import static com.google.gerrit.server.account.AccountProperties.ACCOUNT_CONFIG;
+import static com.google.gerrit.server.account.AccountProperties.KEY_ACTIVE;
+import static com.google.gerrit.server.account.AccountProperties.KEY_FULL_NAME;
+import static com.google.gerrit.server.account.AccountProperties.KEY_PREFERRED_EMAIL;
+
+import com.google.gerrit.entities.Account;
+import java.io.IOException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * The account.config and authorized_keys files of an account with its personal information removed,
+ * for scrubbing accounts without going through the accounts API.
+ *
+ * <p>The full name and preferred email are removed, the account deactivated and the valid SSH keys
+ * marked as deleted, all in one commit, leaving the account untouched when already scrubbed.
+ */
+class ScrubbedAccount extends ScrubbedAuthorizedKeys {
+  private Config account;
+  private boolean accountScrubbed;
+
+  ScrubbedAccount(Account.Id accountId) {
+    super(accountId);
+  }
+
+  @Override
+  protected void onLoad() throws IOException, ConfigInvalidException {
+    super.onLoad();
+    account = readConfig(ACCOUNT_CONFIG);
+    accountScrubbed = false;
+  }
+
+  String getPreferredEmail() {
+    return account.getString(ACCOUNT, null, KEY_PREFERRED_EMAIL);
+  }
+
+  /** Removes the full name and preferred email and deactivates the account. */
+  void scrubAccount() {
+    if (account.getString(ACCOUNT, null, KEY_FULL_NAME) != null) {
+      account.unset(ACCOUNT, null, KEY_FULL_NAME);
+      accountScrubbed = true;
+    }
+    if (getPreferredEmail() != null) {
+      account.unset(ACCOUNT, null, KEY_PREFERRED_EMAIL);
+      accountScrubbed = true;
+    }
+    if (account.getBoolean(ACCOUNT, null, KEY_ACTIVE, true)) {
+      account.setBoolean(ACCOUNT, null, KEY_ACTIVE, false);
+      accountScrubbed = true;
+    }
+  }
+
+  @Override
+  protected boolean onSave(CommitBuilder commit) throws IOException, ConfigInvalidException {
+    boolean keysScrubbed = super.onSave(commit);
+    if (accountScrubbed) {
+      saveConfig(ACCOUNT_CONFIG, account);
+    }
+    return keysScrubbed || accountScrubbed;
+  }
+}
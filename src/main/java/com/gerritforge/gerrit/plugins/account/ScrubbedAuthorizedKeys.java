@@ -0,0 +1,103 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.account.AccountSshKey;
+import com.google.gerrit.server.account.AuthorizedKeys;
+import com.google.gerrit.server.git.meta.VersionedMetaData;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.CommitBuilder;
+
+/**
+ * The authorized_keys file of an account with all the valid keys marked as deleted.
+ *
+ * <p>Keys are removed in place, as {@code VersionedAuthorizedKeys} does, so that the sequence
+ * numbers of the remaining entries are preserved, but all of them are written in one commit.
+ */
+class ScrubbedAuthorizedKeys extends VersionedMetaData {
+  private final Account.Id accountId;
+  private final String ref;
+  private List<Optional<AccountSshKey>> keys;
+  private int removed;
+
+  ScrubbedAuthorizedKeys(Account.Id accountId) {
+    this.accountId = accountId;
+    this.ref = RefNames.refsUsers(accountId);
+  }
+
+  @Override
+  protected String getRefName() {
+    return ref;
+  }
+
+  @Override
+  protected void onLoad() throws IOException, ConfigInvalidException {
+    keys = AuthorizedKeys.parse(accountId, readUTF8(AuthorizedKeys.FILE_NAME));
+    removed = 0;
+  }
+
+  /** Returns all the keys, valid or not. */
+  List<AccountSshKey> getKeys() {
+    checkLoaded();
+    return keys.stream()
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .collect(Collectors.toList());
+  }
+
+  /** Returns the valid keys, which are the ones {@link #scrub()} removes. */
+  List<AccountSshKey> getValidKeys() {
+    checkLoaded();
+    return keys.stream()
+        .filter(k -> k.isPresent() && k.get().valid())
+        .map(Optional::get)
+        .collect(Collectors.toList());
+  }
+
+  /** Marks all the valid keys as deleted and returns how many were removed. */
+  int scrub() {
+    checkLoaded();
+    removed = (int) keys.stream().filter(k -> k.isPresent() && k.get().valid()).count();
+    keys = keys.stream().map(k -> k.filter(key -> !key.valid())).collect(Collectors.toList());
+    return removed;
+  }
+
+  @Override
+  protected boolean onSave(CommitBuilder commit) throws IOException {
+    if (removed == 0) {
+      return false;
+    }
+
+    if (Strings.isNullOrEmpty(commit.getMessage())) {
+      commit.setMessage("Delete " + removed + " SSH keys\n");
+    }
+
+    saveUTF8(AuthorizedKeys.FILE_NAME, AuthorizedKeys.serialize(keys));
+    return true;
+  }
+
+  private void checkLoaded() {
+    if (keys == null) {
+      throw new IllegalStateException("SSH keys not loaded yet");
+    }
+  }
+}
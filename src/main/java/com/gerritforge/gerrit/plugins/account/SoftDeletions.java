@@ -0,0 +1,298 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.restapi.ResourceConflictException;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.UserInitiated;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.server.account.AccountsUpdate;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.Lock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accounts soft deleted, waiting for their grace period to expire before being scrubbed.
+ *
+ * <p>A soft deletion only deactivates the account, after storing an {@link AccountSnapshot} of it
+ * under the plugin data directory, and returns right away. The accounts whose grace period has
+ * expired are scrubbed by a periodic task on the plugin deletion executor, on behalf of the caller
+ * of their deletion, and their snapshots are then discarded. Until then, the deletion can be undone
+ * by restoring the account from its snapshot with a single account update. Both the soft deletion
+ * and its undo hold the {@link AccountLocks lock} of the account, hence wait for any removal of the
+ * account in progress.
+ */
+@Singleton
+public class SoftDeletions implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(SoftDeletions.class);
+
+  static final String SNAPSHOTS_DIR = "soft-deletions";
+
+  private static final long CHECK_INTERVAL_MS = 60000;
+
+  private final Accounts accounts;
+  private final Provider<AccountsUpdate> accountsUpdateProvider;
+  private final Provider<CurrentUser> userProvider;
+  private final AccountRemover remover;
+  private final AccountLocks locks;
+  private final ScheduledExecutorService executor;
+  private final ThreadLocalRequestContext requestContext;
+  private final IdentifiedUser.GenericFactory userFactory;
+  private final long gracePeriodMs;
+  private final Path snapshotsDir;
+  /** Time of the deletion of each account pending, the snapshots being only read when restored. */
+  private final Map<Integer, Long> pending = new ConcurrentHashMap<>();
+
+  private ScheduledFuture<?> scrubTask;
+
+  @Inject
+  public SoftDeletions(
+      Accounts accounts,
+      @UserInitiated Provider<AccountsUpdate> accountsUpdateProvider,
+      Provider<CurrentUser> userProvider,
+      AccountRemover remover,
+      AccountLocks locks,
+      @DeletionExecutor ScheduledExecutorService executor,
+      ThreadLocalRequestContext requestContext,
+      IdentifiedUser.GenericFactory userFactory,
+      Configuration config,
+      @PluginData Path pluginData) {
+    this.accounts = accounts;
+    this.accountsUpdateProvider = accountsUpdateProvider;
+    this.userProvider = userProvider;
+    this.remover = remover;
+    this.locks = locks;
+    this.executor = executor;
+    this.requestContext = requestContext;
+    this.userFactory = userFactory;
+    this.gracePeriodMs = config.getSoftDeleteGracePeriodMs();
+    this.snapshotsDir = pluginData.resolve(SNAPSHOTS_DIR);
+  }
+
+  @Override
+  public synchronized void start() {
+    try {
+      loadSnapshots();
+    } catch (IOException e) {
+      log.error("Unable to load the soft deleted accounts from {}", snapshotsDir, e);
+    }
+    if (isEnabled() || !pending.isEmpty()) {
+      scrubTask =
+          executor.scheduleWithFixedDelay(
+              this::scrubExpired,
+              0,
+              isEnabled() ? Math.min(CHECK_INTERVAL_MS, gracePeriodMs) : CHECK_INTERVAL_MS,
+              MILLISECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scrubTask != null) {
+      scrubTask.cancel(false);
+      scrubTask = null;
+    }
+  }
+
+  /** Whether the account deletions are soft deletions. */
+  public boolean isEnabled() {
+    return gracePeriodMs > 0;
+  }
+
+  /**
+   * Deactivates the account and schedules its scrub once the grace period expires.
+   *
+   * @return when the account is scrubbed at the earliest
+   */
+  public Timestamp softDelete(int accountId) throws Exception {
+    Lock lock = locks.get(accountId);
+    lock.lock();
+    try {
+      return softDeleteLocked(accountId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Timestamp softDeleteLocked(int accountId) throws Exception {
+    Account.Id id = Account.id(accountId);
+    AccountState state = accounts.get(id).orElseThrow(() -> notFound(accountId));
+
+    long now = System.currentTimeMillis();
+    if (pending.putIfAbsent(accountId, now) != null) {
+      throw new ResourceConflictException("account " + accountId + " is already deleted");
+    }
+    try {
+      CurrentUser caller = userProvider.get();
+      writeSnapshot(AccountSnapshot.of(state, now, caller.getAccountId().get()));
+      if (state.account().isActive()) {
+        accountsUpdateProvider
+            .get()
+            .update(
+                "Soft delete account via account plugin",
+                id,
+                (s, update) -> update.setActive(false));
+      }
+    } catch (Exception e) {
+      pending.remove(accountId, now);
+      Files.deleteIfExists(snapshotFile(accountId));
+      throw e;
+    }
+    return new Timestamp(now + gracePeriodMs);
+  }
+
+  /** Restores a soft deleted account not scrubbed yet, as it was before its deletion. */
+  public void undelete(int accountId) throws Exception {
+    Lock lock = locks.get(accountId);
+    lock.lock();
+    try {
+      undeleteLocked(accountId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void undeleteLocked(int accountId) throws Exception {
+    Long deletedOn = pending.remove(accountId);
+    if (deletedOn == null) {
+      throw new ResourceConflictException(
+          "account " + accountId + " is not pending deletion or is being scrubbed");
+    }
+    try {
+      AccountSnapshot snapshot = readSnapshot(accountId);
+      accountsUpdateProvider
+          .get()
+          .update(
+              "Restore account via account plugin",
+              snapshot.accountId,
+              (state, update) -> snapshot.restoreTo(update))
+          .orElseThrow(() -> notFound(accountId));
+    } catch (Exception e) {
+      pending.put(accountId, deletedOn);
+      throw e;
+    }
+    Files.deleteIfExists(snapshotFile(accountId));
+  }
+
+  private void scrubExpired() {
+    long expiredBefore = System.currentTimeMillis() - gracePeriodMs;
+    for (Map.Entry<Integer, Long> e : pending.entrySet()) {
+      int accountId = e.getKey();
+      long deletedOn = e.getValue();
+      if (deletedOn <= expiredBefore && pending.remove(accountId, deletedOn)) {
+        try {
+          executor.execute(() -> scrub(accountId, deletedOn));
+        } catch (RejectedExecutionException ex) {
+          pending.put(accountId, deletedOn);
+          return;
+        }
+      }
+    }
+  }
+
+  private void scrub(int accountId, long deletedOn) {
+    RequestContext old = null;
+    try {
+      AccountSnapshot snapshot = readSnapshot(accountId);
+      IdentifiedUser caller = userFactory.create(Account.id(snapshot.callerId));
+      old = requestContext.setContext(() -> caller);
+      remover.removeAccount(accountId);
+      Files.deleteIfExists(snapshotFile(accountId));
+    } catch (Exception e) {
+      log.error("Unable to scrub soft deleted account {}, retrying later", accountId, e);
+      pending.put(accountId, deletedOn);
+    } finally {
+      if (old != null) {
+        requestContext.setContext(old);
+      }
+    }
+  }
+
+  private void loadSnapshots() throws IOException {
+    if (!Files.isDirectory(snapshotsDir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshotsDir)) {
+      for (Path file : files) {
+        Optional<Account.Id> accountId = Account.Id.tryParse(file.getFileName().toString());
+        if (!accountId.isPresent()) {
+          continue;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+          pending.put(accountId.get().get(), AccountSnapshot.readDeletedOn(in));
+        } catch (IOException e) {
+          log.warn("Ignoring invalid account snapshot {}", file, e);
+        }
+      }
+    }
+  }
+
+  private void writeSnapshot(AccountSnapshot snapshot) throws IOException {
+    Files.createDirectories(snapshotsDir);
+    Path file = snapshotFile(snapshot.accountId.get());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      snapshot.writeTo(out);
+    }
+    Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  private AccountSnapshot readSnapshot(int accountId) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(snapshotFile(accountId))))) {
+      return AccountSnapshot.readFrom(Account.id(accountId), in);
+    }
+  }
+
+  private Path snapshotFile(int accountId) {
+    return snapshotsDir.resolve(Integer.toString(accountId));
+  }
+
+  private static ResourceNotFoundException notFound(int accountId) {
+    return new ResourceNotFoundException("account " + accountId);
+  }
+}
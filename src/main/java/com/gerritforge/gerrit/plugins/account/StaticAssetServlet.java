@@ -0,0 +1,265 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.common.Nullable;
+import com.google.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the static resources of the plugin with long-lived caching.
+ *
+ * <p>The HTML pages reference their scripts and stylesheets by content-hashed names, e.g. {@code
+ * js/account.0123456789ab.js}, which are served as immutable for one year. The pages themselves are
+ * revalidated on every visit through their {@code ETag}, and answered with {@code 304} when
+ * unchanged. Each resource is loaded, hashed and compressed once per plugin load: brotli and gzip
+ * variants packaged next to a resource, as {@code .br} and {@code .gz} files, are served as they
+ * are, otherwise the textual resources are gzipped in memory.
+ */
+@Singleton
+public class StaticAssetServlet extends HttpServlet {
+  private static final long serialVersionUID = 1L;
+
+  static final String RESOURCE_PREFIX = "static";
+
+  private static final int HASH_LENGTH = 12;
+  private static final int MIN_COMPRESSED_SIZE = 256;
+  private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+  private static final String REVALIDATE = "no-cache";
+  private static final Pattern HASHED_NAME =
+      Pattern.compile("^(.+)\\.([0-9a-f]{" + HASH_LENGTH + "})(\\.[a-z0-9]+)$");
+  private static final Pattern HTML_REFERENCE =
+      Pattern.compile("((?:src|href)=\")([^\":?#]+\\.(?:js|css))(\")");
+  private static final ImmutableMap<String, String> CONTENT_TYPES =
+      ImmutableMap.<String, String>builder()
+          .put("html", "text/html;charset=utf-8")
+          .put("js", "application/javascript;charset=utf-8")
+          .put("css", "text/css;charset=utf-8")
+          .put("json", "application/json;charset=utf-8")
+          .put("svg", "image/svg+xml")
+          .put("png", "image/png")
+          .put("gif", "image/gif")
+          .put("ico", "image/x-icon")
+          .put("woff", "font/woff")
+          .put("woff2", "font/woff2")
+          .build();
+
+  private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<>();
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse rsp) throws IOException {
+    String path = req.getPathInfo();
+    if (path == null || path.contains("..")) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String requestedHash = null;
+    Matcher hashed = HASHED_NAME.matcher(path);
+    if (hashed.matches()) {
+      requestedHash = hashed.group(2);
+      path = hashed.group(1) + hashed.group(3);
+    }
+
+    Optional<Asset> asset = getAsset(path);
+    if (!asset.isPresent()) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    asset.get().send(req, rsp, asset.get().hash.equals(requestedHash) ? IMMUTABLE : REVALIDATE);
+  }
+
+  private Optional<Asset> getAsset(String path) throws IOException {
+    Asset asset = assets.get(path);
+    if (asset == null) {
+      byte[] content = readResource(path);
+      if (content == null) {
+        return Optional.empty();
+      }
+      // Not computeIfAbsent(): loading a page loads the resources it references
+      asset = load(path, content);
+      Asset loaded = assets.putIfAbsent(path, asset);
+      if (loaded != null) {
+        asset = loaded;
+      }
+    }
+    return Optional.of(asset);
+  }
+
+  private Asset load(String path, byte[] content) throws IOException {
+    String type = contentType(path);
+    if (type.startsWith("text/html")) {
+      content = hashReferences(path, new String(content, UTF_8)).getBytes(UTF_8);
+    }
+    byte[] gzip = readResource(path + ".gz");
+    if (gzip == null && isCompressible(type)) {
+      gzip = gzip(content);
+    }
+    return new Asset(content, type, gzip, readResource(path + ".br"));
+  }
+
+  /** Replaces the relative script and stylesheet references with their content-hashed names. */
+  private String hashReferences(String path, String html) {
+    String dir = path.substring(0, path.lastIndexOf('/') + 1);
+    Matcher m = HTML_REFERENCE.matcher(html);
+    StringBuffer out = new StringBuffer();
+    while (m.find()) {
+      String reference = m.group(2);
+      String hashedReference = reference;
+      try {
+        Optional<Asset> referenced = getAsset(dir + reference);
+        if (referenced.isPresent()) {
+          int ext = reference.lastIndexOf('.');
+          hashedReference =
+              reference.substring(0, ext) + "." + referenced.get().hash + reference.substring(ext);
+        }
+      } catch (IOException e) {
+        // Left unhashed, hence revalidated on every visit
+      }
+      m.appendReplacement(out, Matcher.quoteReplacement(m.group(1) + hashedReference + m.group(3)));
+    }
+    m.appendTail(out);
+    return out.toString();
+  }
+
+  @Nullable
+  private byte[] readResource(String path) throws IOException {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCE_PREFIX + path)) {
+      return in != null ? ByteStreams.toByteArray(in) : null;
+    }
+  }
+
+  @Nullable
+  private static byte[] gzip(byte[] content) throws IOException {
+    if (content.length < MIN_COMPRESSED_SIZE) {
+      return null;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+    try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+      gz.write(content);
+    }
+    return out.size() < content.length ? out.toByteArray() : null;
+  }
+
+  private static String contentType(String path) {
+    String ext = path.substring(path.lastIndexOf('.') + 1);
+    return CONTENT_TYPES.getOrDefault(ext, "application/octet-stream");
+  }
+
+  private static boolean isCompressible(String type) {
+    return type.startsWith("text/")
+        || type.startsWith("application/javascript")
+        || type.startsWith("application/json")
+        || type.startsWith("image/svg+xml");
+  }
+
+  private static boolean accepts(HttpServletRequest req, String encoding) {
+    String accepted = req.getHeader("Accept-Encoding");
+    if (accepted == null) {
+      return false;
+    }
+    for (String token : accepted.split(",")) {
+      String[] parts = token.trim().split(";");
+      if (parts[0].trim().equals(encoding)
+          && (parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A static resource with its compressed variants. */
+  private static class Asset {
+    final String hash;
+    final byte[] content;
+    final String contentType;
+    @Nullable final byte[] gzip;
+    @Nullable final byte[] brotli;
+
+    Asset(byte[] content, String contentType, @Nullable byte[] gzip, @Nullable byte[] brotli) {
+      this.hash = Hashing.sha256().hashBytes(content).toString().substring(0, HASH_LENGTH);
+      this.content = content;
+      this.contentType = contentType;
+      this.gzip = gzip;
+      this.brotli = brotli;
+    }
+
+    void send(HttpServletRequest req, HttpServletResponse rsp, String cacheControl)
+        throws IOException {
+      String encoding = null;
+      byte[] body = content;
+      if (brotli != null && accepts(req, "br")) {
+        encoding = "br";
+        body = brotli;
+      } else if (gzip != null && accepts(req, "gzip")) {
+        encoding = "gzip";
+        body = gzip;
+      }
+      String etag = "\"" + hash + (encoding != null ? "-" + encoding : "") + "\"";
+
+      rsp.setHeader("Cache-Control", cacheControl);
+      rsp.setHeader("ETag", etag);
+      if (gzip != null || brotli != null) {
+        rsp.setHeader("Vary", "Accept-Encoding");
+      }
+      if (matches(req.getHeader("If-None-Match"))) {
+        rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+
+      rsp.setContentType(contentType);
+      if (encoding != null) {
+        rsp.setHeader("Content-Encoding", encoding);
+      }
+      rsp.setContentLength(body.length);
+      rsp.getOutputStream().write(body);
+    }
+
+    /** Whether any of the entity tags matches one of the variants of this resource. */
+    private boolean matches(@Nullable String ifNoneMatch) {
+      if (ifNoneMatch == null) {
+        return false;
+      }
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*")
+            || tag.equals("\"" + hash + "\"")
+            || tag.startsWith("\"" + hash + "-")) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
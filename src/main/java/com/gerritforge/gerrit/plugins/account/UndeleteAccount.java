@@ -0,0 +1,44 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account;
+
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.server.account.AccountResource;
+import com.google.inject.Inject;
+
+public class UndeleteAccount implements RestModifyView<AccountResource, UndeleteAccount.Input> {
+  public static class Input {}
+
+  private final AccountRemover remover;
+  private final SoftDeletions softDeletions;
+
+  @Inject
+  public UndeleteAccount(AccountRemover remover, SoftDeletions softDeletions) {
+    this.remover = remover;
+    this.softDeletions = softDeletions;
+  }
+
+  @Override
+  public Response<?> apply(AccountResource resource, Input input) throws Exception {
+    int accountId = resource.getUser().getAccountId().get();
+    if (!remover.canDelete(accountId)) {
+      throw new AuthException("not allowed to undelete account " + accountId);
+    }
+    softDeletions.undelete(accountId);
+    return Response.none();
+  }
+}
@@ -32,8 +32,8 @@ import org.slf4j.LoggerFactory;
 
 @Singleton
 public class XAuthFilter extends AllRequestFilter {
-  public static final String ALLOWED_GET_URI_SUFFIX = "/a/accounts/self";
-  public static final String ALLOWED_DELETE_URI_SUFFIX = "/a/accounts/self/account~";
+  public static final String ALLOWED_GET_URI_SUFFIX = AccountRoutes.SELF_URI_SUFFIX;
+  public static final String ALLOWED_DELETE_URI_SUFFIX = AccountRoutes.SELF_DELETE_URI_SUFFIX;
 
   private static final Logger log = LoggerFactory.getLogger(XAuthFilter.class);
 
@@ -49,10 +49,8 @@ public class XAuthFilter extends AllRequestFilter {
       throws IOException, ServletException {
     HttpServletRequest httpRequest = (HttpServletRequest) request;
     String uri = httpRequest.getRequestURI();
-    String method = httpRequest.getMethod();
 
-    if ((method.equals("GET") && uri.endsWith(ALLOWED_GET_URI_SUFFIX))
-        || method.equals("DELETE") && uri.endsWith(ALLOWED_DELETE_URI_SUFFIX)) {
+    if (AccountRoutes.isSelfRequest(httpRequest.getMethod(), uri)) {
       WebSession session = webSession.get();
       if (session != null && session.isSignedIn() && session.getXGerritAuth() != null) {
         session
@@ -0,0 +1,192 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountFootprintScanner;
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.FootprintInfo;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Table;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.PatchSetApproval;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryResult;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.ReviewerSet;
+import com.google.gerrit.server.account.GroupIncludeCache;
+import com.google.gerrit.server.notedb.ReviewerStateInternal;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangeQueryBuilder;
+import com.google.gerrit.server.query.change.ChangeQueryProcessor;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccountFootprintScannerTest {
+  private static final int ACCOUNTS = 150;
+
+  @Mock private GroupIncludeCache groupIncludeCacheMock;
+  @Mock private ChangeQueryBuilder queryBuilderMock;
+  @Mock private ChangeQueryProcessor queryProcessorMock;
+  @Mock private Predicate<ChangeData> predicateMock;
+  @Mock private CurrentUser userMock;
+  @Mock private Configuration configMock;
+
+  private AccountFootprintScanner scanner;
+
+  @Before
+  public void setup() throws Exception {
+    when(configMock.getFootprintThreads()).thenReturn(1);
+    when(queryBuilderMock.parse(anyString())).thenReturn(predicateMock);
+    when(queryProcessorMock.enforceVisibility(anyBoolean())).thenReturn(queryProcessorMock);
+    when(queryProcessorMock.setUserProvidedLimit(anyInt())).thenReturn(queryProcessorMock);
+
+    scanner =
+        new AccountFootprintScanner(
+            groupIncludeCacheMock,
+            () -> queryBuilderMock,
+            () -> queryProcessorMock,
+            new ThreadLocalRequestContext(),
+            () -> userMock,
+            configMock);
+    scanner.start();
+  }
+
+  @After
+  public void tearDown() {
+    scanner.stop();
+  }
+
+  @Test
+  public void givenChangeMatchedBySeveralChunks_whenScanning_shouldCountItOncePerAccount()
+      throws Exception {
+    ChangeData change = mockChange(1, Account.id(1), Account.id(ACCOUNTS));
+    mockPages(page(false, change));
+
+    List<FootprintInfo> footprints = scanner.scan(accounts(ACCOUNTS));
+
+    verify(queryProcessorMock, times(2)).query(predicateMock);
+    assertThat(footprints).hasSize(ACCOUNTS);
+    assertThat(footprints.get(0).changesOwned).isEqualTo(1);
+    assertThat(footprints.get(ACCOUNTS - 1).reviews).isEqualTo(1);
+    assertThat(footprints.stream().mapToInt(f -> f.changesOwned + f.reviews).sum()).isEqualTo(2);
+  }
+
+  @Test
+  public void givenVisibilityEnforced_whenScanning_shouldQueryOnlyVisibleChanges()
+      throws Exception {
+    ChangeData change = mockChange(1, Account.id(1), Account.id(2));
+    mockPages(page(false, change));
+
+    List<FootprintInfo> footprints = scanner.scan(accounts(2), true);
+
+    verify(queryProcessorMock).enforceVisibility(true);
+    assertThat(footprints.get(0).changesOwned).isEqualTo(1);
+  }
+
+  @Test
+  public void givenSeveralPages_whenScanning_shouldContinueFromTheLastUpdateOfEachPage()
+      throws Exception {
+    ChangeData first = mockChange(2, Account.id(1), Account.id(2));
+    when(first.change().getLastUpdatedOn()).thenReturn(new Timestamp(1000));
+    ChangeData second = mockChange(1, Account.id(1), Account.id(2));
+    // The change at the boundary is returned again by the next page
+    mockPages(page(true, first), page(false, first, second));
+
+    List<FootprintInfo> footprints = scanner.scan(accounts(2));
+
+    verify(queryBuilderMock).parse("until:\"1970-01-01 00:00:01.000\"");
+    verify(queryProcessorMock, never()).setStart(anyInt());
+    verify(queryProcessorMock, times(2)).query(any());
+    assertThat(footprints.get(0).changesOwned).isEqualTo(2);
+    assertThat(footprints.get(1).reviews).isEqualTo(2);
+  }
+
+  @Test
+  public void givenVotesOnSeveralPatchSets_whenScanning_shouldCountThemAll() throws Exception {
+    Change.Id changeId = Change.id(1);
+    PatchSetApproval vote = mock(PatchSetApproval.class);
+    when(vote.value()).thenReturn((short) 1);
+    when(vote.accountId()).thenReturn(Account.id(2));
+    ChangeData change = mockChange(changeId.get(), Account.id(1), Account.id(2));
+    when(change.approvals())
+        .thenReturn(
+            ImmutableListMultimap.of(
+                PatchSet.id(changeId, 1), vote, PatchSet.id(changeId, 2), vote));
+    mockPages(page(false, change));
+
+    List<FootprintInfo> footprints = scanner.scan(accounts(2));
+
+    assertThat(footprints.get(0).votes).isEqualTo(0);
+    assertThat(footprints.get(1).votes).isEqualTo(2);
+  }
+
+  private ChangeData mockChange(int changeId, Account.Id owner, Account.Id reviewer) {
+    Table<ReviewerStateInternal, Account.Id, Timestamp> reviewers = HashBasedTable.create();
+    reviewers.put(ReviewerStateInternal.REVIEWER, reviewer, new Timestamp(0));
+    ChangeData changeData = mock(ChangeData.class);
+    Change change = mock(Change.class);
+    when(changeData.getId()).thenReturn(Change.id(changeId));
+    when(changeData.change()).thenReturn(change);
+    when(change.getOwner()).thenReturn(owner);
+    when(changeData.reviewers()).thenReturn(ReviewerSet.fromTable(reviewers));
+    when(changeData.approvals()).thenReturn(ImmutableListMultimap.of());
+    when(changeData.publishedComments()).thenReturn(ImmutableList.of());
+    return changeData;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static QueryResult<ChangeData> page(boolean more, ChangeData... changes) {
+    QueryResult<ChangeData> page = mock(QueryResult.class);
+    when(page.entities()).thenReturn(ImmutableList.copyOf(changes));
+    if (more) {
+      when(page.more()).thenReturn(true);
+    }
+    return page;
+  }
+
+  @SafeVarargs
+  private final void mockPages(QueryResult<ChangeData> first, QueryResult<ChangeData>... next) {
+    when(queryProcessorMock.query(any())).thenReturn(first, next);
+  }
+
+  private static List<Account.Id> accounts(int count) {
+    return IntStream.rangeClosed(1, count).mapToObj(Account::id).collect(Collectors.toList());
+  }
+}
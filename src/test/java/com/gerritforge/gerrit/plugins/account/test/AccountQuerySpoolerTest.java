@@ -0,0 +1,128 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountQuerySpooler;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryResult;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.server.query.account.AccountQueryBuilder;
+import com.google.gerrit.server.query.account.AccountQueryProcessor;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccountQuerySpoolerTest {
+  private static final int ACCOUNTS = 1200;
+  private static final int PAGE_SIZE = 500;
+
+  @Mock private Accounts accountsMock;
+  @Mock private AccountQueryBuilder queryBuilderMock;
+  @Mock private AccountQueryProcessor queryProcessorMock;
+  @Mock private Predicate<AccountState> predicateMock;
+
+  private AccountQuerySpooler spooler;
+
+  @Before
+  public void setup() throws Exception {
+    when(accountsMock.allIds())
+        .thenReturn(
+            IntStream.rangeClosed(1, ACCOUNTS)
+                .mapToObj(Account::id)
+                .collect(ImmutableSortedSet.toImmutableSortedSet(Account.Id::compareTo)));
+    when(queryBuilderMock.parse("is:inactive")).thenReturn(predicateMock);
+    when(queryProcessorMock.enforceVisibility(anyBoolean())).thenReturn(queryProcessorMock);
+    when(queryProcessorMock.setUserProvidedLimit(anyInt())).thenReturn(queryProcessorMock);
+
+    // Every page matches the even account ids of its range
+    Iterator<QueryResult<AccountState>> pages =
+        IntStream.range(0, (ACCOUNTS + PAGE_SIZE - 1) / PAGE_SIZE)
+            .mapToObj(
+                page ->
+                    page(
+                        IntStream.rangeClosed(
+                                page * PAGE_SIZE + 1, Math.min((page + 1) * PAGE_SIZE, ACCOUNTS))
+                            .filter(id -> id % 2 == 0)))
+            .iterator();
+    when(queryProcessorMock.query(any())).thenAnswer(invocation -> pages.next());
+
+    spooler =
+        new AccountQuerySpooler(accountsMock, () -> queryBuilderMock, () -> queryProcessorMock);
+  }
+
+  @Test
+  public void givenMatchesOverSeveralPages_whenSpooling_shouldCollectThemAll() throws Exception {
+    List<String> ids = new ArrayList<>();
+    try (AccountQuerySpooler.Spool spool = spooler.spool("is:inactive")) {
+      spool.forEachRemaining(ids::add);
+      assertThat(spool.size()).isEqualTo(ACCOUNTS / 2);
+    }
+
+    assertThat(ids)
+        .containsExactlyElementsIn(
+            IntStream.rangeClosed(1, ACCOUNTS / 2)
+                .mapToObj(i -> Integer.toString(i * 2))
+                .collect(Collectors.toList()))
+        .inOrder();
+    verify(queryProcessorMock, times(3)).query(any());
+    verify(queryProcessorMock, never()).setStart(anyInt());
+  }
+
+  @Test
+  public void givenFilter_whenSpooling_shouldSkipTheRejectedAccounts() throws Exception {
+    List<String> ids = new ArrayList<>();
+    try (AccountQuerySpooler.Spool spool =
+        spooler.spool("is:inactive", account -> account.account().id().get() > 1000)) {
+      spool.forEachRemaining(ids::add);
+    }
+
+    assertThat(ids).hasSize(100);
+    assertThat(ids.get(0)).isEqualTo("1002");
+  }
+
+  private QueryResult<AccountState> page(IntStream ids) {
+    return QueryResult.create(
+        "is:inactive",
+        predicateMock,
+        PAGE_SIZE,
+        ids.mapToObj(
+                id ->
+                    AccountState.forAccount(
+                        Account.builder(Account.id(id), new Timestamp(0)).build()))
+            .collect(ImmutableList.toImmutableList()));
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.gerritforge.gerrit.plugins.account.AccountSnapshot;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.InternalAccountUpdate;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class AccountSnapshotTest {
+  private static final Account.Id ACCOUNT_ID = Account.id(1000001);
+  private static final String EMAIL = "jdoe@example.com";
+
+  @Test
+  public void givenSnapshot_whenWrittenAndReadBack_shouldBeUnchanged() throws Exception {
+    AccountSnapshot snapshot = snapshot();
+
+    byte[] written = write(snapshot);
+    AccountSnapshot read =
+        AccountSnapshot.readFrom(
+            ACCOUNT_ID, new DataInputStream(new ByteArrayInputStream(written)));
+
+    assertThat(write(read)).isEqualTo(written);
+  }
+
+  @Test
+  public void givenReadSnapshot_whenRestoring_shouldRestoreTheEmailsOfTheKeptExternalIds()
+      throws Exception {
+    AccountSnapshot snapshot =
+        AccountSnapshot.readFrom(
+            ACCOUNT_ID, new DataInputStream(new ByteArrayInputStream(write(snapshot()))));
+    InternalAccountUpdate.Builder update = mock(InternalAccountUpdate.Builder.class, RETURNS_SELF);
+
+    snapshot.restoreTo(update);
+
+    verify(update).setActive(true);
+    verify(update).setFullName("John Doe");
+    verify(update).setPreferredEmail(EMAIL);
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Collection<ExternalId>> externalIds = ArgumentCaptor.forClass(Collection.class);
+    verify(update).updateExternalIds(externalIds.capture());
+    assertThat(
+            externalIds.getValue().stream()
+                .map(e -> e.key().get() + " " + e.email())
+                .collect(Collectors.toList()))
+        .containsExactly("username:jdoe " + EMAIL, "mailto:" + EMAIL + " " + EMAIL);
+  }
+
+  private static AccountSnapshot snapshot() {
+    Account account =
+        Account.builder(ACCOUNT_ID, new Timestamp(0))
+            .setFullName("John Doe")
+            .setPreferredEmail(EMAIL)
+            .build();
+    AccountState state =
+        AccountState.forAccount(
+            account,
+            ImmutableList.of(
+                ExternalId.createWithEmail(ExternalId.SCHEME_USERNAME, "jdoe", ACCOUNT_ID, EMAIL),
+                ExternalId.createWithEmail(ExternalId.SCHEME_MAILTO, EMAIL, ACCOUNT_ID, EMAIL),
+                ExternalId.create(ExternalId.SCHEME_GERRIT, "jdoe", ACCOUNT_ID)));
+    return AccountSnapshot.of(state, 1000, 1000000);
+  }
+
+  private static byte[] write(AccountSnapshot snapshot) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      snapshot.writeTo(out);
+    }
+    return bytes.toByteArray();
+  }
+}
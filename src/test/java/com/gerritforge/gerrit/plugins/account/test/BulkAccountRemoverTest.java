@@ -0,0 +1,270 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountRemover;
+import com.gerritforge.gerrit.plugins.account.BulkAccountRemover;
+import com.gerritforge.gerrit.plugins.account.BulkDeleteResult;
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.PersonalRefsRemover;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.AccountResolver;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkAccountRemoverTest {
+  private static final int DELETION_THREADS = 2;
+  private static final int MAX_IN_FLIGHT = 2 * DELETION_THREADS;
+
+  @Mock private AccountRemover removerMock;
+  @Mock private AccountResolver accountResolverMock;
+  @Mock private PersonalRefsRemover personalRefsRemoverMock;
+  @Mock private PersonalRefsRemover.Batch batchMock;
+  @Mock private CurrentUser userMock;
+  @Mock private Configuration configMock;
+
+  private ScheduledExecutorService executor;
+  private BulkAccountRemover bulkRemover;
+  private final List<BulkDeleteResult> results = Collections.synchronizedList(new ArrayList<>());
+
+  @Before
+  public void setup() throws Exception {
+    when(configMock.getDeletionThreads()).thenReturn(DELETION_THREADS);
+    // More threads than removals in flight, so that only the bulk remover bounds them
+    executor = Executors.newScheduledThreadPool(2 * MAX_IN_FLIGHT);
+    bulkRemover =
+        new BulkAccountRemover(
+            removerMock,
+            accountResolverMock,
+            personalRefsRemoverMock,
+            new ThreadLocalRequestContext(),
+            () -> userMock,
+            executor,
+            configMock);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenManyAccounts_whenRemoving_shouldBoundTheRemovalsInFlight() throws Exception {
+    int accounts = 3 * MAX_IN_FLIGHT;
+    List<String> ids = new ArrayList<>();
+    for (int id = 1; id <= accounts; id++) {
+      mockResolve(Integer.toString(id), id);
+      ids.add(Integer.toString(id));
+    }
+    mockBatch();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(MAX_IN_FLIGHT);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              started.countDown();
+              release.await();
+              running.decrementAndGet();
+              return null;
+            })
+        .when(removerMock)
+        .removeAccount(anyInt());
+    AtomicInteger consumed = new AtomicInteger();
+    Iterator<String> input = counting(ids.iterator(), consumed);
+
+    ExecutorService callers = Executors.newSingleThreadExecutor();
+    try {
+      AtomicReference<Thread> caller = new AtomicReference<>();
+      Future<?> removal =
+          callers.submit(
+              () -> {
+                caller.set(Thread.currentThread());
+                bulkRemover.removeAccounts(input, results::add);
+                return null;
+              });
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+      awaitWaiting(caller);
+
+      assertThat(running.get()).isEqualTo(MAX_IN_FLIGHT);
+      // The next account is read, but waits for a removal to complete before being submitted
+      assertThat(consumed.get()).isEqualTo(MAX_IN_FLIGHT + 1);
+
+      release.countDown();
+      removal.get(10, TimeUnit.SECONDS);
+    } finally {
+      release.countDown();
+      callers.shutdownNow();
+    }
+
+    assertThat(maxRunning.get()).isEqualTo(MAX_IN_FLIGHT);
+    assertThat(results).hasSize(accounts);
+    assertThat(results.stream().allMatch(r -> r.deleted)).isTrue();
+    verify(batchMock).close();
+  }
+
+  @Test
+  public void givenFailingRemoval_whenRemoving_shouldReportItAndRemoveTheOthers() throws Exception {
+    mockResolve("1000001", 1000001);
+    mockResolve("1000002", 1000002);
+    mockResolve("1000003", 1000003);
+    mockBatch();
+    doThrow(new IllegalStateException("lock failure")).when(removerMock).removeAccount(1000002);
+
+    bulkRemover.removeAccounts(
+        ImmutableList.of("1000001", "1000002", "1000003").iterator(), results::add);
+
+    Map<String, BulkDeleteResult> byAccount = byAccount();
+    assertThat(byAccount.get("1000001").deleted).isTrue();
+    assertThat(byAccount.get("1000003").deleted).isTrue();
+    BulkDeleteResult failed = byAccount.get("1000002");
+    assertThat(failed.deleted).isFalse();
+    assertThat(failed.accountId).isEqualTo(1000002);
+    assertThat(failed.error).isEqualTo("lock failure");
+    verify(removerMock).removeAccount(1000001);
+    verify(removerMock).removeAccount(1000003);
+  }
+
+  @Test
+  public void givenUnknownOrAmbiguousUsernames_whenRemoving_shouldReportThemAndRemoveTheOthers()
+      throws Exception {
+    mockUnresolvable("nobody", "Account 'nobody' not found");
+    mockUnresolvable("john", "Account 'john' is ambiguous");
+    mockResolve("jdoe", 1000001);
+    mockBatch();
+
+    bulkRemover.removeAccounts(
+        ImmutableList.of("nobody", " jdoe ", "", "john").iterator(), results::add);
+
+    Map<String, BulkDeleteResult> byAccount = byAccount();
+    assertThat(byAccount.keySet()).containsExactly("nobody", "jdoe", "john");
+    assertThat(byAccount.get("jdoe").deleted).isTrue();
+    assertThat(byAccount.get("jdoe").accountId).isEqualTo(1000001);
+    assertFailed(byAccount.get("nobody"), "Account 'nobody' not found");
+    assertFailed(byAccount.get("john"), "Account 'john' is ambiguous");
+    verify(removerMock).removeAccount(1000001);
+  }
+
+  @Test
+  public void givenUnknownUsername_whenPlanning_shouldReportItWithoutPlanning() throws Exception {
+    mockUnresolvable("nobody", "Account 'nobody' not found");
+
+    bulkRemover.planAccounts(ImmutableList.of("nobody").iterator(), results::add);
+
+    assertThat(results).hasSize(1);
+    assertFailed(results.get(0), "Account 'nobody' not found");
+    verify(removerMock, never()).planRemoval(anyInt());
+  }
+
+  private void mockResolve(String account, int accountId) throws Exception {
+    AccountResolver.Result result = mock(AccountResolver.Result.class);
+    when(result.asUnique())
+        .thenReturn(
+            AccountState.forAccount(
+                Account.builder(Account.id(accountId), new Timestamp(0)).build()));
+    when(accountResolverMock.resolve(account)).thenReturn(result);
+  }
+
+  private void mockUnresolvable(String account, String message) throws Exception {
+    AccountResolver.UnresolvableAccountException unresolvable =
+        mock(AccountResolver.UnresolvableAccountException.class);
+    when(unresolvable.getMessage()).thenReturn(message);
+    AccountResolver.Result result = mock(AccountResolver.Result.class);
+    when(result.asUnique()).thenThrow(unresolvable);
+    when(accountResolverMock.resolve(account)).thenReturn(result);
+  }
+
+  private void mockBatch() throws Exception {
+    when(personalRefsRemoverMock.newBatch()).thenReturn(batchMock);
+    doAnswer(
+            invocation -> {
+              invocation.<PersonalRefsRemover.AccountRemoval>getArgument(1).run();
+              return null;
+            })
+        .when(batchMock)
+        .remove(any(Account.Id.class), any(PersonalRefsRemover.AccountRemoval.class));
+  }
+
+  private Map<String, BulkDeleteResult> byAccount() {
+    synchronized (results) {
+      return results.stream().collect(Collectors.toMap(r -> r.account, Function.identity()));
+    }
+  }
+
+  private static void assertFailed(BulkDeleteResult result, String error) {
+    assertThat(result.deleted).isFalse();
+    assertThat(result.accountId).isNull();
+    assertThat(result.error).isEqualTo(error);
+  }
+
+  private static Iterator<String> counting(Iterator<String> accounts, AtomicInteger consumed) {
+    return new Iterator<String>() {
+      @Override
+      public boolean hasNext() {
+        return accounts.hasNext();
+      }
+
+      @Override
+      public String next() {
+        consumed.incrementAndGet();
+        return accounts.next();
+      }
+    };
+  }
+
+  private static void awaitWaiting(AtomicReference<Thread> thread) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.gerritforge.gerrit.plugins.account.AccountLocks;
+import com.gerritforge.gerrit.plugins.account.CoalescingAccountRemover;
+import com.gerritforge.gerrit.plugins.account.GerritAccountRemover;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CoalescingAccountRemoverTest {
+
+  @Mock private GerritAccountRemover removerMock;
+
+  private CoalescingAccountRemover remover;
+  private ExecutorService executor;
+
+  @Before
+  public void setup() {
+    remover =
+        new CoalescingAccountRemover(
+            removerMock, new RemovalMetrics(new DisabledMetricMaker()), new AccountLocks());
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenRemovalInProgress_whenRemovingSameAccount_shouldJoinIt() throws Exception {
+    int accountId = 1;
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await();
+              return null;
+            })
+        .when(removerMock)
+        .removeAccount(accountId);
+
+    Future<?> first = executor.submit(() -> removeAccount(accountId));
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    AtomicReference<Thread> secondThread = new AtomicReference<>();
+    Future<?> second =
+        executor.submit(
+            () -> {
+              secondThread.set(Thread.currentThread());
+              return removeAccount(accountId);
+            });
+    awaitWaiting(secondThread);
+    release.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    verify(removerMock, times(1)).removeAccount(accountId);
+  }
+
+  @Test
+  public void givenRemovalInProgress_whenRemovingOtherAccount_shouldRunInParallel()
+      throws Exception {
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    doAnswer(
+            invocation -> {
+              bothStarted.countDown();
+              assertThat(bothStarted.await(10, TimeUnit.SECONDS)).isTrue();
+              return null;
+            })
+        .when(removerMock)
+        .removeAccount(anyInt());
+
+    Future<?> first = executor.submit(() -> removeAccount(1));
+    Future<?> second = executor.submit(() -> removeAccount(2));
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    verify(removerMock).removeAccount(1);
+    verify(removerMock).removeAccount(2);
+  }
+
+  @Test
+  public void givenFailedRemoval_whenRemovingAgain_shouldRetry() throws Exception {
+    int accountId = 1;
+    doThrow(new IllegalStateException("lock failure"))
+        .doNothing()
+        .when(removerMock)
+        .removeAccount(accountId);
+
+    try {
+      remover.removeAccount(accountId);
+      fail("expected the removal to fail");
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageThat().isEqualTo("lock failure");
+    }
+    remover.removeAccount(accountId);
+
+    verify(removerMock, times(2)).removeAccount(accountId);
+  }
+
+  @Test
+  public void givenRemovalInProgress_whenPlanningSameAccount_shouldWaitForIt() throws Exception {
+    int accountId = 1;
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await();
+              return null;
+            })
+        .when(removerMock)
+        .removeAccount(accountId);
+
+    Future<?> removal = executor.submit(() -> removeAccount(accountId));
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    AtomicReference<Thread> planThread = new AtomicReference<>();
+    Future<?> plan =
+        executor.submit(
+            () -> {
+              planThread.set(Thread.currentThread());
+              return remover.planRemoval(accountId);
+            });
+    awaitWaiting(planThread);
+    verify(removerMock, never()).planRemoval(accountId);
+    release.countDown();
+    removal.get(10, TimeUnit.SECONDS);
+    plan.get(10, TimeUnit.SECONDS);
+
+    verify(removerMock).planRemoval(accountId);
+  }
+
+  @Test
+  public void givenResumedRemovalInProgress_whenPlanningSameAccount_shouldWaitForIt()
+      throws Exception {
+    int accountId = 1;
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await();
+              return null;
+            })
+        .when(removerMock)
+        .resumeRemoval(accountId);
+
+    Future<?> removal =
+        executor.submit(
+            () -> {
+              remover.resumeRemoval(accountId);
+              return null;
+            });
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    AtomicReference<Thread> planThread = new AtomicReference<>();
+    Future<?> plan =
+        executor.submit(
+            () -> {
+              planThread.set(Thread.currentThread());
+              return remover.planRemoval(accountId);
+            });
+    awaitWaiting(planThread);
+    verify(removerMock, never()).planRemoval(accountId);
+    release.countDown();
+    removal.get(10, TimeUnit.SECONDS);
+    plan.get(10, TimeUnit.SECONDS);
+
+    verify(removerMock).planRemoval(accountId);
+  }
+
+  private static void awaitWaiting(AtomicReference<Thread> thread) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  private Void removeAccount(int accountId) throws Exception {
+    remover.removeAccount(accountId);
+    return null;
+  }
+}
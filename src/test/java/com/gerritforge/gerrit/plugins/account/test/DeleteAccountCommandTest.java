@@ -14,25 +14,34 @@
 
 package com.gerritforge.gerrit.plugins.account.test;
 
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.gerritforge.gerrit.plugins.account.AccountQuerySpooler;
 import com.gerritforge.gerrit.plugins.account.AccountResourceFactory;
+import com.gerritforge.gerrit.plugins.account.BulkAccountRemover;
 import com.gerritforge.gerrit.plugins.account.DeleteAccount;
 import com.gerritforge.gerrit.plugins.account.DeleteAccountCommand;
 import com.gerritforge.gerrit.plugins.account.DeleteAccountResponse;
+import com.google.common.collect.ImmutableList;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.account.AccountResource;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.function.Consumer;
 import org.apache.sshd.server.Environment;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -43,15 +52,23 @@ public class DeleteAccountCommandTest {
 
   @Mock private AccountResourceFactory accountFactoryMock;
   @Mock private DeleteAccount deleteAccountMock;
+  @Mock private BulkAccountRemover bulkRemoverMock;
+  @Mock private AccountQuerySpooler spoolerMock;
+  @Mock private AccountQuerySpooler.Spool spoolMock;
   @Mock private Environment envMock;
   @Mock private AccountResource accountResourceMock;
   @Mock private IdentifiedUser userMock;
 
   @Before
   public void setup() throws Exception {
-    deleteAccountCommand = new DeleteAccountCommand(accountFactoryMock, deleteAccountMock);
+    deleteAccountCommand =
+        new DeleteAccountCommand(
+            accountFactoryMock, deleteAccountMock, bulkRemoverMock, spoolerMock);
     deleteAccountCommand.setPrintWriters(
         new PrintWriter(new ByteArrayOutputStream()), new PrintWriter(new ByteArrayOutputStream()));
+  }
+
+  private void mockDeleteAccount() throws Exception {
     DeleteAccountResponse resp = new DeleteAccountResponse(true);
     when(deleteAccountMock.apply(same(accountResourceMock), any(DeleteAccount.Input.class)))
         .thenReturn(Response.ok(resp));
@@ -62,10 +79,37 @@ public class DeleteAccountCommandTest {
     int expectedAccountId = 1;
     DeleteAccount.Input expectedInput = new DeleteAccount.Input();
     expectedInput.accountName = "First Last";
+    mockDeleteAccount();
     when(accountFactoryMock.create(expectedAccountId)).thenReturn(accountResourceMock);
 
     deleteAccountCommand.testRun(expectedAccountId, expectedInput.accountName);
 
     verify(deleteAccountMock).apply(same(accountResourceMock), eq(expectedInput));
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void givenAccountsOnStdin_whenStart_shouldRemoveThemAsOneBatch() throws Exception {
+    deleteAccountCommand.testRunFromStdin(
+        new ByteArrayInputStream("1000001\njdoe\n".getBytes(UTF_8)));
+
+    ArgumentCaptor<Iterator<String>> accounts = ArgumentCaptor.forClass(Iterator.class);
+    verify(bulkRemoverMock).checkCanDeleteAccounts();
+    verify(bulkRemoverMock).removeAccounts(accounts.capture(), any(Consumer.class));
+    assertThat(ImmutableList.copyOf(accounts.getValue()))
+        .containsExactly("1000001", "jdoe")
+        .inOrder();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void givenQuery_whenStart_shouldRemoveTheSpooledAccounts() throws Exception {
+    when(spoolerMock.spool("is:inactive")).thenReturn(spoolMock);
+
+    deleteAccountCommand.testRunQuery("is:inactive");
+
+    verify(bulkRemoverMock).checkCanDeleteAccounts();
+    verify(bulkRemoverMock).removeAccounts(same(spoolMock), any(Consumer.class));
+    verify(spoolMock).close();
+  }
 }
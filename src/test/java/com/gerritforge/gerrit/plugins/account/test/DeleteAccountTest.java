@@ -14,14 +14,24 @@
 
 package com.gerritforge.gerrit.plugins.account.test;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.*;
 
 import com.gerritforge.gerrit.plugins.account.AccountRemover;
 import com.gerritforge.gerrit.plugins.account.DeleteAccount;
+import com.gerritforge.gerrit.plugins.account.DeleteAccountResponse;
+import com.gerritforge.gerrit.plugins.account.DeletionJob;
+import com.gerritforge.gerrit.plugins.account.DeletionJobs;
+import com.gerritforge.gerrit.plugins.account.DeletionPlanInfo;
+import com.gerritforge.gerrit.plugins.account.RemovalAdmission;
+import com.gerritforge.gerrit.plugins.account.RemovalRejectedException;
+import com.gerritforge.gerrit.plugins.account.SoftDeletions;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.account.AccountResource;
+import java.sql.Timestamp;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,6 +43,12 @@ public class DeleteAccountTest {
 
   @Mock private AccountRemover accountRemoverMock;
 
+  @Mock private DeletionJobs deletionJobsMock;
+
+  @Mock private RemovalAdmission admissionMock;
+
+  @Mock private SoftDeletions softDeletionsMock;
+
   @Mock private AccountResource accountResourceMock;
 
   @Mock private IdentifiedUser userMock;
@@ -51,7 +67,9 @@ public class DeleteAccountTest {
     mockUserData(accountId, input.accountName);
     when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
 
-    new DeleteAccount(accountRemoverMock).apply(accountResourceMock, input);
+    new DeleteAccount(
+            accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+        .apply(accountResourceMock, input);
 
     verify(accountRemoverMock).removeAccount(accountId);
   }
@@ -65,7 +83,9 @@ public class DeleteAccountTest {
     mockUserData(accountId, input.accountName);
     when(accountRemoverMock.canDelete(accountId)).thenReturn(false);
 
-    new DeleteAccount(accountRemoverMock).apply(accountResourceMock, input);
+    new DeleteAccount(
+            accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+        .apply(accountResourceMock, input);
 
     verify(accountRemoverMock, times(0)).removeAccount(accountId);
   }
@@ -79,11 +99,121 @@ public class DeleteAccountTest {
     mockUserData(accountId, "First Last");
     when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
 
-    new DeleteAccount(accountRemoverMock).apply(accountResourceMock, input);
+    new DeleteAccount(
+            accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+        .apply(accountResourceMock, input);
+
+    verify(accountRemoverMock, times(0)).removeAccount(accountId);
+  }
+
+  @Test
+  public void givenDryRun_whenRunningDeleteAccount_thenPlanIsReturnedAndAccountIsNotRemoved()
+      throws Exception {
+    int accountId = 1;
+    DeleteAccount.Input input = new DeleteAccount.Input();
+    input.dryRun = true;
+    when(userMock.getAccountId()).thenReturn(Account.id(accountId));
+    when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
+    DeletionPlanInfo plan = new DeletionPlanInfo();
+    when(accountRemoverMock.planRemoval(accountId)).thenReturn(plan);
+
+    Object result =
+        new DeleteAccount(
+                accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+            .apply(accountResourceMock, input)
+            .value();
+
+    assertThat(result).isSameInstanceAs(plan);
+    verify(accountRemoverMock, times(0)).removeAccount(accountId);
+  }
+
+  @Test(expected = RemovalRejectedException.class)
+  public void givenTooManyDeletions_whenRunningDeleteAccount_thenThrowRemovalRejectedException()
+      throws Exception {
+    int accountId = 1;
+    DeleteAccount.Input input = new DeleteAccount.Input();
+    input.accountName = "First Last";
+    mockUserData(accountId, input.accountName);
+    when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
+    when(admissionMock.admit()).thenThrow(new RemovalRejectedException(10));
+
+    try {
+      new DeleteAccount(
+              accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+          .apply(accountResourceMock, input);
+    } finally {
+      verify(accountRemoverMock, times(0)).removeAccount(accountId);
+    }
+  }
+
+  @Test
+  public void givenSoftDeletions_whenRunningDeleteAccount_thenAccountIsOnlySoftDeleted()
+      throws Exception {
+    int accountId = 1;
+    DeleteAccount.Input input = new DeleteAccount.Input();
+    input.accountName = "First Last";
+    mockUserData(accountId, input.accountName);
+    when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
+    when(softDeletionsMock.isEnabled()).thenReturn(true);
+    Timestamp scrubOn = new Timestamp(System.currentTimeMillis());
+    when(softDeletionsMock.softDelete(accountId)).thenReturn(scrubOn);
+
+    Object result =
+        new DeleteAccount(
+                accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+            .apply(accountResourceMock, input)
+            .value();
 
+    assertThat(((DeleteAccountResponse) result).scrubOn).isEqualTo(scrubOn);
     verify(accountRemoverMock, times(0)).removeAccount(accountId);
   }
 
+  @Test
+  public void givenAsync_whenRunningDeleteAccount_thenJobIsQueuedAndAccepted() throws Exception {
+    int accountId = 1;
+    DeleteAccount.Input input = new DeleteAccount.Input();
+    input.accountName = "First Last";
+    input.async = true;
+    mockUserData(accountId, input.accountName);
+    when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
+    DeletionJob job = new DeletionJob("job-1", accountId, 2, false);
+    when(deletionJobsMock.submit(accountId, false)).thenReturn(job);
+
+    Response<?> response =
+        new DeleteAccount(
+                accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+            .apply(accountResourceMock, input);
+
+    assertThat(response.statusCode()).isEqualTo(202);
+    assertThat(((Response.Accepted) response).getLocation())
+        .isEqualTo("/config/server/account~jobs/job-1");
+    verify(accountRemoverMock, times(0)).removeAccount(accountId);
+    verifyZeroInteractions(admissionMock);
+  }
+
+  @Test
+  public void givenSoftDeletions_whenRunningAsyncDeleteAccount_thenAccountIsOnlySoftDeleted()
+      throws Exception {
+    int accountId = 1;
+    DeleteAccount.Input input = new DeleteAccount.Input();
+    input.accountName = "First Last";
+    input.async = true;
+    mockUserData(accountId, input.accountName);
+    when(accountRemoverMock.canDelete(accountId)).thenReturn(true);
+    when(softDeletionsMock.isEnabled()).thenReturn(true);
+    Timestamp scrubOn = new Timestamp(System.currentTimeMillis());
+    when(softDeletionsMock.softDelete(accountId)).thenReturn(scrubOn);
+
+    Object result =
+        new DeleteAccount(
+                accountRemoverMock, deletionJobsMock, admissionMock, softDeletionsMock, "account")
+            .apply(accountResourceMock, input)
+            .value();
+
+    assertThat(((DeleteAccountResponse) result).scrubOn).isEqualTo(scrubOn);
+    verifyZeroInteractions(deletionJobsMock);
+  }
+
   private void mockUserData(int accountId, String accountName) {
     when(userMock.getAccountId()).thenReturn(Account.id(accountId));
     when(userMock.getName()).thenReturn(accountName);
@@ -0,0 +1,111 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.DeletePermissionCache;
+import com.gerritforge.gerrit.plugins.account.DeletePermissionCache.Key;
+import com.gerritforge.gerrit.plugins.account.DeletePermissionCache.Permission;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.api.access.PluginPermission;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeletePermissionCacheTest {
+  private static final AllProjectsName ALL_PROJECTS = new AllProjectsName("All-Projects");
+
+  @Mock private PermissionBackend permissionBackendMock;
+  @Mock private PermissionBackend.WithUser withUserMock;
+  @Mock private CurrentUser userMock;
+  @Mock private GitReferenceUpdatedListener.Event eventMock;
+
+  private DeletePermissionCache permissionCache;
+
+  @Before
+  public void setup() {
+    permissionCache =
+        new DeletePermissionCache(
+            CacheBuilder.newBuilder().build(), permissionBackendMock, "account", ALL_PROJECTS);
+    when(userMock.isIdentifiedUser()).thenReturn(true);
+    when(userMock.getAccountId()).thenReturn(Account.id(1));
+    when(permissionBackendMock.user(userMock)).thenReturn(withUserMock);
+  }
+
+  @Test
+  public void givenSameAccountAndGroupsVersion_keysShouldBeEqual() {
+    assertThat(new Key(1, 1)).isEqualTo(new Key(1, 1));
+    assertThat(new Key(1, 1).hashCode()).isEqualTo(new Key(1, 1).hashCode());
+    assertThat(new Key(1, 1)).isNotEqualTo(new Key(1, 2));
+    assertThat(new Key(1, 1)).isNotEqualTo(new Key(2, 1));
+  }
+
+  @Test
+  public void givenCachedDecision_whenAskedAgain_shouldNotEvaluateIt() {
+    when(withUserMock.testOrFalse(any(PluginPermission.class))).thenReturn(true);
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.DELETE_ANY_ACCOUNT);
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.DELETE_ANY_ACCOUNT);
+
+    verify(withUserMock, times(1)).testOrFalse(any(PluginPermission.class));
+  }
+
+  @Test
+  public void givenCachedDecision_whenGroupReindexed_shouldEvaluateItAgain() {
+    when(withUserMock.testOrFalse(any(PluginPermission.class))).thenReturn(true, false);
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.DELETE_ANY_ACCOUNT);
+    permissionCache.onGroupIndexed("group-uuid");
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.NONE);
+  }
+
+  @Test
+  public void givenCachedDecision_whenAllProjectsConfigUpdated_shouldEvaluateItAgain() {
+    when(withUserMock.testOrFalse(any(PluginPermission.class))).thenReturn(true, false);
+    when(eventMock.getProjectName()).thenReturn(ALL_PROJECTS.get());
+    when(eventMock.getRefName()).thenReturn(RefNames.REFS_CONFIG);
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.DELETE_ANY_ACCOUNT);
+    permissionCache.onGitReferenceUpdated(eventMock);
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.NONE);
+  }
+
+  @Test
+  public void givenCachedDecision_whenOtherProjectConfigUpdated_shouldKeepIt() {
+    when(withUserMock.testOrFalse(any(PluginPermission.class))).thenReturn(true, false);
+    when(eventMock.getProjectName()).thenReturn("some-project");
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.DELETE_ANY_ACCOUNT);
+    permissionCache.onGitReferenceUpdated(eventMock);
+
+    assertThat(permissionCache.get(userMock)).isEqualTo(Permission.DELETE_ANY_ACCOUNT);
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.DeletionAuditLog;
+import com.gerritforge.gerrit.plugins.account.DeletionRecord;
+import com.google.gerrit.server.git.WorkQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeletionAuditLogTest {
+  private static final String LOG_FILE = "deletions-audit.log";
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock private WorkQueue workQueueMock;
+  @Mock private Configuration configMock;
+
+  @Test
+  public void givenMoreRecordsThanOneBatch_whenFlushing_shouldWriteThemAllInOrder()
+      throws Exception {
+    Path pluginData = tempFolder.getRoot().toPath();
+    DeletionAuditLog auditLog = newAuditLog(pluginData, Long.MAX_VALUE, 1);
+    int records = 2500;
+    for (int i = 1; i <= records; i++) {
+      auditLog.append(record(i, i));
+    }
+
+    auditLog.flush();
+
+    List<String> lines = Files.readAllLines(pluginData.resolve(LOG_FILE), UTF_8);
+    assertThat(lines).hasSize(records);
+    assertThat(lines.get(0)).contains("\"account_id\":1,");
+    assertThat(lines.get(records - 1)).contains("\"account_id\":" + records + ",");
+  }
+
+  @Test
+  public void givenWriteFailure_whenFlushingAgain_shouldWriteTheKeptBatch() throws Exception {
+    Path pluginData = tempFolder.getRoot().toPath().resolve("data");
+    DeletionAuditLog auditLog = newAuditLog(pluginData, Long.MAX_VALUE, 1);
+    auditLog.append(record(1, 1000));
+
+    auditLog.flush();
+    assertThat(Files.exists(pluginData.resolve(LOG_FILE))).isFalse();
+
+    Files.createDirectories(pluginData);
+    auditLog.append(record(2, 2000));
+    auditLog.flush();
+
+    assertThat(accountIds(auditLog.query(null, null, 10))).containsExactly(2, 1).inOrder();
+  }
+
+  @Test
+  public void givenLogAboveMaxSize_whenFlushing_shouldRotateAndDropTheOldestFile()
+      throws Exception {
+    Path pluginData = tempFolder.getRoot().toPath();
+    DeletionAuditLog auditLog = newAuditLog(pluginData, 1, 2);
+    for (int i = 1; i <= 3; i++) {
+      auditLog.append(record(i, i * 1000));
+      auditLog.flush();
+    }
+
+    assertThat(Files.exists(pluginData.resolve(LOG_FILE))).isFalse();
+    assertThat(Files.readAllLines(pluginData.resolve(LOG_FILE + ".1"), UTF_8).get(0))
+        .contains("\"account_id\":3,");
+    assertThat(Files.readAllLines(pluginData.resolve(LOG_FILE + ".2"), UTF_8).get(0))
+        .contains("\"account_id\":2,");
+    assertThat(Files.exists(pluginData.resolve(LOG_FILE + ".3"))).isFalse();
+    assertThat(accountIds(auditLog.query(null, null, 10))).containsExactly(3, 2).inOrder();
+  }
+
+  @Test
+  public void givenRecordsInSeveralFiles_whenQuerying_shouldReturnNewestFirstUpToLimit()
+      throws Exception {
+    DeletionAuditLog auditLog = newAuditLog(tempFolder.getRoot().toPath(), 1, 5);
+    for (int i = 1; i <= 4; i++) {
+      auditLog.append(record(i, i * 1000));
+      auditLog.flush();
+    }
+
+    assertThat(accountIds(auditLog.query(null, null, 3))).containsExactly(4, 3, 2).inOrder();
+  }
+
+  @Test
+  public void givenAccountFilter_whenQuerying_shouldOnlyReturnItsRecords() throws Exception {
+    DeletionAuditLog auditLog = newAuditLog(tempFolder.getRoot().toPath(), Long.MAX_VALUE, 1);
+    auditLog.append(record(1, 1000));
+    auditLog.append(record(12, 2000));
+    auditLog.append(record(1, 3000));
+
+    List<DeletionRecord> records = auditLog.query(1, null, 10);
+
+    assertThat(accountIds(records)).containsExactly(1, 1);
+    assertThat(records.get(0).deletedOn).isEqualTo(new Timestamp(3000));
+  }
+
+  @Test
+  public void givenSinceCutOff_whenQuerying_shouldSkipOlderRecords() throws Exception {
+    DeletionAuditLog auditLog = newAuditLog(tempFolder.getRoot().toPath(), Long.MAX_VALUE, 1);
+    auditLog.append(record(1, 1000));
+    auditLog.append(record(2, 2000));
+    auditLog.append(record(3, 3000));
+
+    assertThat(accountIds(auditLog.query(null, new Timestamp(2000), 10)))
+        .containsExactly(3, 2)
+        .inOrder();
+  }
+
+  private DeletionAuditLog newAuditLog(Path pluginData, long maxFileSize, int maxFiles) {
+    when(configMock.getAuditMaxFileSize()).thenReturn(maxFileSize);
+    when(configMock.getAuditMaxFiles()).thenReturn(maxFiles);
+    return new DeletionAuditLog(workQueueMock, configMock, pluginData);
+  }
+
+  private static DeletionRecord record(int accountId, long deletedOn) {
+    DeletionRecord record = new DeletionRecord(accountId, null, false);
+    record.deletedOn = new Timestamp(deletedOn);
+    return record;
+  }
+
+  private static List<Integer> accountIds(List<DeletionRecord> records) {
+    return records.stream().map(r -> r.accountId).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.*;
+
+import com.gerritforge.gerrit.plugins.account.AccountRemover;
+import com.gerritforge.gerrit.plugins.account.DeletionJob;
+import com.gerritforge.gerrit.plugins.account.DeletionJobs;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeletionJobsTest {
+  private static final String JOURNAL_FILE = "deletion-jobs.journal";
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock private AccountRemover removerMock;
+  @Mock private ScheduledExecutorService executorMock;
+  @Mock private IdentifiedUser.GenericFactory userFactoryMock;
+  @Mock private IdentifiedUser callerMock;
+  @Mock private CurrentUser currentUserMock;
+  @Mock private Future<?> executionMock;
+
+  private final ThreadLocalRequestContext requestContext = new ThreadLocalRequestContext();
+  private Path pluginData;
+  private Path journalFile;
+
+  @Before
+  public void setup() {
+    pluginData = tempFolder.getRoot().toPath();
+    journalFile = pluginData.resolve(JOURNAL_FILE);
+    doReturn(executionMock).when(executorMock).submit(any(Runnable.class));
+  }
+
+  @Test
+  public void givenJournalWithPendingJobs_whenStarting_shouldResumeThemAsTheirCaller()
+      throws Exception {
+    Files.write(
+        journalFile, Arrays.asList("Q job-1 10 20", "Q job-2 11 21", "C job-2", "Q job-3 x 22"));
+    when(userFactoryMock.create(Account.id(20))).thenReturn(callerMock);
+    List<CurrentUser> callers = new ArrayList<>();
+    doAnswer(
+            invocation -> {
+              callers.add(requestContext.getContext().getUser());
+              return null;
+            })
+        .when(removerMock)
+        .resumeRemoval(10);
+
+    DeletionJobs jobs = deletionJobs();
+    jobs.start();
+    runQueuedJobs(1);
+
+    verify(removerMock).resumeRemoval(10);
+    verifyNoMoreInteractions(removerMock);
+    assertThat(callers).containsExactly(callerMock);
+    assertThat(jobs.get("job-1").get().toInfo().status).isEqualTo("DONE");
+  }
+
+  @Test
+  public void givenPendingJobs_whenOneCompletes_shouldRecordItsCompletion() throws Exception {
+    when(currentUserMock.getAccountId()).thenReturn(Account.id(5));
+    DeletionJobs jobs = deletionJobs();
+    jobs.start();
+    DeletionJob first = jobs.submit(1, false);
+    DeletionJob second = jobs.submit(2, false);
+
+    List<Runnable> queued = queuedJobs(2);
+    queued.get(0).run();
+
+    verify(removerMock).removeAccount(1);
+    assertThat(Files.readAllLines(journalFile, UTF_8))
+        .containsExactly("Q " + first.id + " 1 5", "Q " + second.id + " 2 5", "C " + first.id)
+        .inOrder();
+    assertThat(first.isFinished()).isTrue();
+    assertThat(second.isFinished()).isFalse();
+  }
+
+  @Test
+  public void givenNoMorePendingJobs_whenTheLastCompletes_shouldTruncateTheJournal()
+      throws Exception {
+    when(currentUserMock.getAccountId()).thenReturn(Account.id(5));
+    DeletionJobs jobs = deletionJobs();
+    jobs.start();
+    jobs.submit(1, false);
+    jobs.submit(2, true);
+
+    queuedJobs(2).forEach(Runnable::run);
+
+    verify(removerMock).removeAccount(1);
+    verify(removerMock).resumeRemoval(2);
+    assertThat(Files.readAllLines(journalFile, UTF_8)).isEmpty();
+  }
+
+  @Test
+  public void givenJobsPendingAtStop_whenRestarting_shouldResumeOnlyThePendingOnes()
+      throws Exception {
+    when(currentUserMock.getAccountId()).thenReturn(Account.id(5));
+    DeletionJobs jobs = deletionJobs();
+    jobs.start();
+    jobs.submit(1, false);
+    jobs.submit(2, false);
+    queuedJobs(2).get(0).run();
+    jobs.stop();
+
+    reset(executorMock);
+    doReturn(executionMock).when(executorMock).submit(any(Runnable.class));
+    DeletionJobs restarted = deletionJobs();
+    restarted.start();
+    runQueuedJobs(1);
+
+    verify(removerMock).removeAccount(1);
+    verify(removerMock).resumeRemoval(2);
+    verifyNoMoreInteractions(removerMock);
+  }
+
+  @Test
+  public void givenQueuedJobs_whenStopping_shouldCancelThemAndResumeThemOnRestart()
+      throws Exception {
+    when(currentUserMock.getAccountId()).thenReturn(Account.id(5));
+    DeletionJobs jobs = deletionJobs();
+    jobs.start();
+    jobs.submit(1, false);
+    jobs.submit(2, false);
+    List<Runnable> queued = queuedJobs(2);
+
+    jobs.stop();
+    // A job interrupted by the stop, which completes no longer journaled
+    queued.get(0).run();
+
+    verify(executionMock, times(2)).cancel(true);
+    assertThat(Files.readAllLines(journalFile, UTF_8)).hasSize(2);
+
+    reset(executorMock);
+    doReturn(executionMock).when(executorMock).submit(any(Runnable.class));
+    DeletionJobs restarted = deletionJobs();
+    restarted.start();
+    runQueuedJobs(2);
+
+    verify(removerMock).removeAccount(1);
+    verify(removerMock).resumeRemoval(1);
+    verify(removerMock).resumeRemoval(2);
+  }
+
+  private DeletionJobs deletionJobs() {
+    return new DeletionJobs(
+        removerMock,
+        executorMock,
+        requestContext,
+        userFactoryMock,
+        () -> currentUserMock,
+        pluginData);
+  }
+
+  private void runQueuedJobs(int count) {
+    queuedJobs(count).forEach(Runnable::run);
+  }
+
+  private List<Runnable> queuedJobs(int count) {
+    ArgumentCaptor<Runnable> jobs = ArgumentCaptor.forClass(Runnable.class);
+    verify(executorMock, times(count)).submit(jobs.capture());
+    return jobs.getAllValues();
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.ExternalIdBatcher;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.gerrit.server.account.externalids.ExternalIdNotes;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExternalIdBatcherTest {
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final long LONG_WINDOW_MS = TimeUnit.HOURS.toMillis(1);
+
+  @Mock private WorkQueue workQueueMock;
+  @Mock private GitRepositoryManager repoManagerMock;
+  @Mock private Repository repoMock;
+  @Mock private ExternalIdNotes.Factory notesFactoryMock;
+  @Mock private ExternalIdNotes notesMock;
+  @Mock private MetaDataUpdate.Server metaDataUpdateFactoryMock;
+  @Mock private MetaDataUpdate metaDataUpdateMock;
+  @Mock private Configuration configMock;
+
+  private ScheduledThreadPoolExecutor committer;
+  private ExecutorService callers;
+
+  @Before
+  public void setup() throws Exception {
+    committer = new ScheduledThreadPoolExecutor(1);
+    callers = Executors.newFixedThreadPool(2);
+    when(workQueueMock.createQueue(1, "ExternalIdGroupCommit")).thenReturn(committer);
+    when(repoManagerMock.openRepository(ALL_USERS)).thenReturn(repoMock);
+    when(metaDataUpdateFactoryMock.create(ALL_USERS, repoMock, null))
+        .thenReturn(metaDataUpdateMock);
+    when(notesFactoryMock.load(repoMock)).thenReturn(notesMock);
+  }
+
+  @After
+  public void tearDown() {
+    callers.shutdownNow();
+    committer.shutdownNow();
+  }
+
+  @Test
+  public void givenBatchSizeReached_whenUpdating_shouldCommitAllTheUpdatesAtOnce()
+      throws Exception {
+    ExternalIdBatcher batcher = newBatcher(2, LONG_WINDOW_MS);
+
+    Future<?> first = callers.submit(() -> update(batcher, 1));
+    Future<?> second = callers.submit(() -> update(batcher, 2));
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    verify(notesMock, times(1)).commit(metaDataUpdateMock);
+    verify(notesMock).delete(eq(Account.id(1)), anyCollection());
+    verify(notesMock).delete(eq(Account.id(2)), anyCollection());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void givenBatch_whenCommitting_shouldNotReindexItsAccounts() throws Exception {
+    ExternalIdBatcher batcher = newBatcher(2, LONG_WINDOW_MS);
+
+    Future<?> first = callers.submit(() -> update(batcher, 1));
+    Future<?> second = callers.submit(() -> update(batcher, 2));
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    // The accounts to skip are neither reindexed nor evicted, only the external ID cache is updated
+    ArgumentCaptor<Collection<Account.Id>> skipped = ArgumentCaptor.forClass(Collection.class);
+    verify(notesMock).updateCaches(skipped.capture());
+    assertThat(skipped.getValue()).containsExactly(Account.id(1), Account.id(2));
+    verify(notesMock, never()).updateCaches();
+  }
+
+  @Test
+  public void givenBatchSizeNotReached_whenWindowElapses_shouldCommitTheUpdate() throws Exception {
+    ExternalIdBatcher batcher = newBatcher(10, 50);
+
+    callers.submit(() -> update(batcher, 1)).get(10, TimeUnit.SECONDS);
+
+    verify(notesMock, times(1)).commit(metaDataUpdateMock);
+  }
+
+  @Test
+  public void givenFailingUpdate_whenCommittingBatch_shouldOnlyFailItsCaller() throws Exception {
+    ExternalIdBatcher batcher = newBatcher(2, LONG_WINDOW_MS);
+    doThrow(new StorageException("invalid external ID"))
+        .when(notesMock)
+        .delete(eq(Account.id(2)), anyCollection());
+
+    Future<?> good = callers.submit(() -> update(batcher, 1));
+    Future<?> bad = callers.submit(() -> update(batcher, 2));
+
+    good.get(10, TimeUnit.SECONDS);
+    try {
+      bad.get(10, TimeUnit.SECONDS);
+      fail("expected the update of account 2 to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(StorageException.class);
+    }
+    verify(notesMock, times(1)).commit(any(MetaDataUpdate.class));
+  }
+
+  private ExternalIdBatcher newBatcher(int batchSize, long windowMs) {
+    when(configMock.getExternalIdBatchSize()).thenReturn(batchSize);
+    when(configMock.getExternalIdBatchWindowMs()).thenReturn(windowMs);
+    ExternalIdBatcher batcher =
+        new ExternalIdBatcher(
+            workQueueMock,
+            repoManagerMock,
+            ALL_USERS,
+            notesFactoryMock,
+            () -> metaDataUpdateFactoryMock,
+            new RemovalMetrics(new DisabledMetricMaker()),
+            configMock);
+    batcher.start();
+    return batcher;
+  }
+
+  private static Void update(ExternalIdBatcher batcher, int accountId) throws Exception {
+    batcher.update(
+        Account.id(accountId),
+        ImmutableList.of(ExternalId.Key.parse("username:user" + accountId)),
+        ImmutableList.of());
+    return null;
+  }
+}
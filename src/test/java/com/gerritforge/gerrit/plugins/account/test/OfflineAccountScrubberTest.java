@@ -0,0 +1,252 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static com.google.gerrit.server.account.AccountProperties.ACCOUNT;
+import static com.google.gerrit.server.account.AccountProperties.ACCOUNT_CONFIG;
+import static com.google.gerrit.server.account.AccountProperties.KEY_ACTIVE;
+import static com.google.gerrit.server.account.AccountProperties.KEY_FULL_NAME;
+import static com.google.gerrit.server.account.AccountProperties.KEY_PREFERRED_EMAIL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.withSettings;
+
+import com.gerritforge.gerrit.plugins.account.OfflineAccountScrubber;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.account.AccountSshKey;
+import com.google.gerrit.server.account.AuthorizedKeys;
+import com.google.gerrit.server.account.externalids.ExternalId;
+import com.google.gerrit.server.account.externalids.ExternalIdNotes;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.meta.MetaDataUpdate;
+import java.io.IOException;
+import java.util.Optional;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OfflineAccountScrubberTest {
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final PersonIdent SERVER_IDENT = new PersonIdent("Gerrit Code Review", "gerrit@");
+  private static final Account.Id SCRUBBED = Account.id(1000001);
+  private static final Account.Id KEPT = Account.id(1000002);
+  private static final Account.Id MISSING = Account.id(1000003);
+  private static final String EMAIL = "jdoe@example.com";
+  private static final String OTHER_EMAIL = "john.doe@example.com";
+  private static final String SSH_KEY = "ssh-rsa AAAAB3NzaC1yc2E jdoe@example.com";
+
+  private static final ExternalId.Key USERNAME =
+      ExternalId.Key.create(ExternalId.SCHEME_USERNAME, "jdoe");
+  private static final ExternalId.Key GERRIT =
+      ExternalId.Key.create(ExternalId.SCHEME_GERRIT, "jdoe");
+  private static final ExternalId.Key MAILTO =
+      ExternalId.Key.create(ExternalId.SCHEME_MAILTO, EMAIL);
+  private static final ExternalId.Key EXTERNAL =
+      ExternalId.Key.create(ExternalId.SCHEME_EXTERNAL, "jdoe");
+  private static final ExternalId.Key KEPT_USERNAME =
+      ExternalId.Key.create(ExternalId.SCHEME_USERNAME, "kept");
+  private static final ExternalId.Key KEPT_MAILTO =
+      ExternalId.Key.create(ExternalId.SCHEME_MAILTO, "kept@example.com");
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> testRepo;
+
+  @Before
+  public void setup() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription(ALL_USERS.get()));
+    testRepo = new TestRepository<>(repo);
+    createAccount(SCRUBBED, "John Doe", EMAIL);
+    createAccount(KEPT, "Kept", "kept@example.com");
+    insertExternalIds(
+        ExternalId.createWithEmail(USERNAME, SCRUBBED, EMAIL),
+        ExternalId.createWithEmail(GERRIT, SCRUBBED, OTHER_EMAIL),
+        ExternalId.createWithEmail(MAILTO, SCRUBBED, EMAIL),
+        ExternalId.createWithEmail(EXTERNAL, SCRUBBED, EMAIL),
+        ExternalId.createWithEmail(KEPT_USERNAME, KEPT, "kept@example.com"),
+        ExternalId.createWithEmail(KEPT_MAILTO, KEPT, "kept@example.com"));
+  }
+
+  @Test
+  public void givenAccounts_whenScrubbing_shouldRemoveTheirPersonalInformation() throws Exception {
+    OfflineAccountScrubber.Result result =
+        scrubber(repo).scrub(ImmutableList.of("jdoe", MISSING.toString(), "nobody"));
+
+    assertThat(result.accounts).isEqualTo(1);
+    assertThat(result.notFound).isEqualTo(2);
+    assertThat(result.emails).isEqualTo(2);
+    assertThat(result.sshKeys).isEqualTo(1);
+    assertThat(result.externalIds).isEqualTo(2);
+
+    ExternalIdNotes notes = ExternalIdNotes.loadNoCacheUpdate(ALL_USERS, repo);
+    assertThat(notes.get(MAILTO)).isEmpty();
+    assertThat(notes.get(EXTERNAL)).isEmpty();
+    assertThat(notes.get(USERNAME).get().email()).isNull();
+    assertThat(notes.get(USERNAME).get().accountId()).isEqualTo(SCRUBBED);
+    assertThat(notes.get(GERRIT).get().email()).isNull();
+    assertThat(notes.get(KEPT_USERNAME).get().email()).isEqualTo("kept@example.com");
+    assertThat(notes.get(KEPT_MAILTO)).isPresent();
+
+    Config account = readAccountConfig(SCRUBBED);
+    assertThat(account.getString(ACCOUNT, null, KEY_FULL_NAME)).isNull();
+    assertThat(account.getString(ACCOUNT, null, KEY_PREFERRED_EMAIL)).isNull();
+    assertThat(account.getBoolean(ACCOUNT, null, KEY_ACTIVE, true)).isFalse();
+    assertThat(AuthorizedKeys.parse(SCRUBBED, read(SCRUBBED, AuthorizedKeys.FILE_NAME)))
+        .containsExactly(Optional.empty());
+
+    Config kept = readAccountConfig(KEPT);
+    assertThat(kept.getString(ACCOUNT, null, KEY_FULL_NAME)).isEqualTo("Kept");
+    assertThat(AuthorizedKeys.parse(KEPT, read(KEPT, AuthorizedKeys.FILE_NAME)))
+        .containsExactly(Optional.of(AccountSshKey.create(KEPT, 1, SSH_KEY)));
+  }
+
+  @Test
+  public void givenScrubbedAccount_whenScrubbingAgain_shouldLeaveItUnchanged() throws Exception {
+    scrubber(repo).scrub(ImmutableList.of(SCRUBBED.toString()));
+    ObjectId accountRev = repo.exactRef(RefNames.refsUsers(SCRUBBED)).getObjectId();
+    ObjectId externalIdsRev = repo.exactRef(RefNames.REFS_EXTERNAL_IDS).getObjectId();
+
+    OfflineAccountScrubber.Result result =
+        scrubber(repo).scrub(ImmutableList.of(SCRUBBED.toString()));
+
+    assertThat(result.accounts).isEqualTo(1);
+    assertThat(result.emails).isEqualTo(0);
+    assertThat(result.sshKeys).isEqualTo(0);
+    assertThat(result.externalIds).isEqualTo(0);
+    assertThat(repo.exactRef(RefNames.refsUsers(SCRUBBED)).getObjectId()).isEqualTo(accountRev);
+    assertThat(repo.exactRef(RefNames.REFS_EXTERNAL_IDS).getObjectId()).isEqualTo(externalIdsRev);
+  }
+
+  @Test
+  public void givenAccountDataUpdateFailing_whenScrubbing_shouldReportWhatToScrubAgain()
+      throws Exception {
+    ObjectId accountRev = repo.exactRef(RefNames.refsUsers(SCRUBBED)).getObjectId();
+
+    try {
+      scrubber(failingAccountDataUpdates()).scrub(ImmutableList.of(SCRUBBED.toString()));
+      fail("expected the scrub to fail");
+    } catch (IOException e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo(
+              "Scrubbed the external IDs of 1 accounts but only 0 of the 1 refs of their account"
+                  + " data: scrub the same accounts again to complete it");
+    }
+    assertThat(ExternalIdNotes.loadNoCacheUpdate(ALL_USERS, repo).get(MAILTO)).isEmpty();
+    assertThat(repo.exactRef(RefNames.refsUsers(SCRUBBED)).getObjectId()).isEqualTo(accountRev);
+
+    OfflineAccountScrubber.Result result =
+        scrubber(repo).scrub(ImmutableList.of(SCRUBBED.toString()));
+
+    assertThat(result.sshKeys).isEqualTo(1);
+    assertThat(readAccountConfig(SCRUBBED).getString(ACCOUNT, null, KEY_FULL_NAME)).isNull();
+  }
+
+  private static OfflineAccountScrubber scrubber(Repository repo) {
+    return new OfflineAccountScrubber(ALL_USERS, repo, SERVER_IDENT, 2);
+  }
+
+  /** Returns the same repository, failing the updates of the account refs only. */
+  private Repository failingAccountDataUpdates() {
+    RefDatabase refDb = repo.getRefDatabase();
+    RefDatabase failingRefDb =
+        mock(refDb.getClass(), withSettings().defaultAnswer(delegatesTo(refDb)));
+    doAnswer(invocation -> failingOnAccountRefs(refDb.newBatchUpdate()))
+        .when(failingRefDb)
+        .newBatchUpdate();
+    InMemoryRepository failingRepo = spy(repo);
+    doAnswer(invocation -> failingRefDb).when(failingRepo).getRefDatabase();
+    return failingRepo;
+  }
+
+  private static BatchRefUpdate failingOnAccountRefs(BatchRefUpdate bru) throws IOException {
+    BatchRefUpdate failing = spy(bru);
+    doAnswer(
+            invocation -> {
+              if (failing.getCommands().stream()
+                  .anyMatch(c -> c.getRefName().startsWith(RefNames.REFS_USERS))) {
+                ReceiveCommand.abort(failing.getCommands());
+                return null;
+              }
+              return invocation.callRealMethod();
+            })
+        .when(failing)
+        .execute(any(RevWalk.class), any(ProgressMonitor.class));
+    return failing;
+  }
+
+  private void createAccount(Account.Id accountId, String fullName, String preferredEmail)
+      throws Exception {
+    Config account = new Config();
+    account.setString(ACCOUNT, null, KEY_FULL_NAME, fullName);
+    account.setString(ACCOUNT, null, KEY_PREFERRED_EMAIL, preferredEmail);
+    testRepo
+        .branch(RefNames.refsUsers(accountId))
+        .commit()
+        .add(ACCOUNT_CONFIG, account.toText())
+        .add(
+            AuthorizedKeys.FILE_NAME,
+            AuthorizedKeys.serialize(
+                ImmutableList.of(Optional.of(AccountSshKey.create(accountId, 1, SSH_KEY)))))
+        .create();
+  }
+
+  private void insertExternalIds(ExternalId... externalIds) throws Exception {
+    ExternalIdNotes notes = ExternalIdNotes.loadNoCacheUpdate(ALL_USERS, repo);
+    notes.insert(ImmutableList.copyOf(externalIds));
+    // Closing the update closes the repository
+    repo.incrementOpen();
+    try (MetaDataUpdate md = new MetaDataUpdate(GitReferenceUpdated.DISABLED, ALL_USERS, repo)) {
+      md.getCommitBuilder().setAuthor(SERVER_IDENT);
+      md.getCommitBuilder().setCommitter(SERVER_IDENT);
+      notes.commit(md);
+    }
+  }
+
+  private Config readAccountConfig(Account.Id accountId) throws Exception {
+    Config account = new Config();
+    account.fromText(read(accountId, ACCOUNT_CONFIG));
+    return account;
+  }
+
+  private String read(Account.Id accountId, String file) throws Exception {
+    RevCommit commit =
+        testRepo
+            .getRevWalk()
+            .parseCommit(repo.exactRef(RefNames.refsUsers(accountId)).getObjectId());
+    return new String(repo.open(testRepo.get(commit.getTree(), file)).getBytes(), UTF_8);
+  }
+}
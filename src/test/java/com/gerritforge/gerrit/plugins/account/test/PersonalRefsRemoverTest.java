@@ -0,0 +1,201 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.PersonalRefsRemover;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.change.ChangeFinder;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.extensions.events.GitReferenceUpdated;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.index.change.ChangeIndexer;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.testing.InMemoryRepositoryManager;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PersonalRefsRemoverTest {
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final Account.Id REMOVED = Account.id(1000001);
+  private static final Account.Id KEPT = Account.id(1000002);
+  private static final Change.Id CHANGE = Change.id(1);
+
+  @Mock private ProjectCache projectCacheMock;
+  @Mock private ChangeFinder changeFinderMock;
+  @Mock private ChangeIndexer indexerMock;
+  @Mock private GitReferenceUpdated gitRefUpdatedMock;
+  @Mock private GitRepositoryManager failingRepoManagerMock;
+
+  private InMemoryRepositoryManager repoManager;
+  private PersonalRefsRemover remover;
+
+  @Before
+  public void setup() throws Exception {
+    repoManager = new InMemoryRepositoryManager();
+    createPersonalRefs(REMOVED);
+    createPersonalRefs(KEPT);
+    remover = personalRefsRemover(repoManager);
+  }
+
+  @Test
+  public void givenPersonalRefs_whenRemoving_shouldRemoveOnlyThoseOfTheAccounts() throws Exception {
+    mockProjects();
+    int removed = remover.remove(ImmutableSet.of(REMOVED));
+
+    assertThat(removed).isEqualTo(3);
+    assertThat(refs(ALL_USERS, REMOVED)).isEmpty();
+    assertThat(refs(PROJECT, REMOVED)).isEmpty();
+    assertThat(refs(ALL_USERS, KEPT)).hasSize(2);
+    assertThat(refs(PROJECT, KEPT)).hasSize(1);
+    verify(indexerMock).indexAsync(PROJECT, CHANGE);
+  }
+
+  @Test
+  public void givenBatch_whenRemovingAccounts_shouldDeferTheirRefsUntilTheBatchRemovesThem()
+      throws Exception {
+    mockProjects();
+    CompletableFuture<Void> refsRemoval;
+    try (PersonalRefsRemover.Batch batch = remover.newBatch()) {
+      batch.remove(
+          REMOVED, () -> assertThat(remover.deferral(REMOVED)).isNotEqualTo(Optional.empty()));
+      refsRemoval = remover.deferral(REMOVED).get();
+      assertThat(refsRemoval.isDone()).isFalse();
+      assertThat(refs(PROJECT, REMOVED)).hasSize(1);
+    }
+
+    assertThat(refsRemoval.isDone()).isTrue();
+    assertThat(refsRemoval.isCompletedExceptionally()).isFalse();
+    assertThat(remover.deferral(REMOVED)).isEqualTo(Optional.empty());
+    assertThat(refs(ALL_USERS, REMOVED)).isEmpty();
+    assertThat(refs(PROJECT, REMOVED)).isEmpty();
+    assertThat(refs(PROJECT, KEPT)).hasSize(1);
+  }
+
+  @Test
+  public void givenFailedAccountRemoval_whenClosingTheBatch_shouldLeaveItsRefs() throws Exception {
+    CompletableFuture<Void> refsRemoval;
+    try (PersonalRefsRemover.Batch batch = remover.newBatch()) {
+      try {
+        batch.remove(
+            REMOVED,
+            () -> {
+              throw new IOException("All-Users unavailable");
+            });
+        fail("expected the account removal to fail");
+      } catch (IOException e) {
+        // Expected
+      }
+      refsRemoval = remover.deferral(REMOVED).get();
+    }
+
+    assertFailed(refsRemoval);
+    assertThat(refs(PROJECT, REMOVED)).hasSize(1);
+  }
+
+  @Test
+  public void givenFailedScan_whenClosingTheBatch_shouldFailTheDeferredRemovals() throws Exception {
+    when(failingRepoManagerMock.openRepository(ALL_USERS))
+        .thenThrow(new IOException("All-Users unavailable"));
+    PersonalRefsRemover failingRemover = personalRefsRemover(failingRepoManagerMock);
+
+    CompletableFuture<Void> refsRemoval;
+    try (PersonalRefsRemover.Batch batch = failingRemover.newBatch()) {
+      batch.remove(REMOVED, () -> {});
+      refsRemoval = failingRemover.deferral(REMOVED).get();
+    }
+
+    assertFailed(refsRemoval);
+    assertThat(failingRemover.deferral(REMOVED)).isEqualTo(Optional.empty());
+  }
+
+  private void mockProjects() {
+    when(projectCacheMock.all()).thenReturn(ImmutableSortedSet.of(ALL_USERS, PROJECT));
+  }
+
+  private PersonalRefsRemover personalRefsRemover(GitRepositoryManager repoManager) {
+    return new PersonalRefsRemover(
+        repoManager, ALL_USERS, projectCacheMock, changeFinderMock, indexerMock, gitRefUpdatedMock);
+  }
+
+  private void createPersonalRefs(Account.Id accountId) throws Exception {
+    try (TestRepository<InMemoryRepository> allUsers = testRepository(ALL_USERS);
+        TestRepository<InMemoryRepository> project = testRepository(PROJECT)) {
+      allUsers.update(RefNames.refsDraftComments(CHANGE, accountId), allUsers.commit().create());
+      allUsers.update(RefNames.refsStarredChanges(CHANGE, accountId), allUsers.commit().create());
+      project.update(
+          RefNames.refsEdit(accountId, CHANGE, PatchSet.id(CHANGE, 1)), project.commit().create());
+    }
+  }
+
+  private TestRepository<InMemoryRepository> testRepository(Project.NameKey name)
+      throws IOException {
+    InMemoryRepository repo;
+    try {
+      repo = repoManager.openRepository(name);
+    } catch (RepositoryNotFoundException e) {
+      repo = repoManager.createRepository(name);
+    }
+    return new TestRepository<>(repo);
+  }
+
+  private List<String> refs(Project.NameKey project, Account.Id accountId) throws IOException {
+    try (Repository repo = repoManager.openRepository(project)) {
+      return repo.getRefDatabase().getRefs().stream()
+          .map(Ref::getName)
+          .filter(
+              name ->
+                  name.startsWith(RefNames.refsEditPrefix(accountId))
+                      || (!name.startsWith(RefNames.REFS_USERS)
+                          && name.endsWith("/" + accountId.get())))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static void assertFailed(CompletableFuture<Void> refsRemoval) throws Exception {
+    try {
+      refsRemoval.get();
+      fail("expected the deferred removal to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+}
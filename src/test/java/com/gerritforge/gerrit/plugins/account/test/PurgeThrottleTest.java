@@ -0,0 +1,74 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.gerritforge.gerrit.plugins.account.PurgeThrottle;
+import org.junit.Test;
+
+public class PurgeThrottleTest {
+  private static final double MAX_RATE = 16.0;
+  private static final long TARGET_LATENCY_MS = 100;
+  private static final double TOLERANCE = 1e-9;
+
+  private final PurgeThrottle throttle = new PurgeThrottle(MAX_RATE, TARGET_LATENCY_MS);
+
+  @Test
+  public void givenLatencyAboveTarget_whenRemoved_shouldHalveTheRate() {
+    throttle.removed(slow());
+
+    assertThat(throttle.getRate()).isWithin(TOLERANCE).of(MAX_RATE / 2);
+
+    throttle.removed(slow());
+
+    assertThat(throttle.getRate()).isWithin(TOLERANCE).of(MAX_RATE / 4);
+  }
+
+  @Test
+  public void givenLatencyWithinTarget_whenRemoved_shouldIncreaseTheRateByATenthOfTheMaximum() {
+    throttle.removed(slow());
+    throttle.removed(slow());
+
+    throttle.removed(fast());
+
+    assertThat(throttle.getRate()).isWithin(TOLERANCE).of(MAX_RATE / 4 + MAX_RATE / 10);
+  }
+
+  @Test
+  public void givenLatencyWithinTarget_whenRemoved_shouldNotExceedTheMaximumRate() {
+    throttle.removed(fast());
+
+    assertThat(throttle.getRate()).isWithin(TOLERANCE).of(MAX_RATE);
+  }
+
+  @Test
+  public void givenLatencyConstantlyAboveTarget_whenRemoved_shouldNotGoBelowTheFloor() {
+    for (int i = 0; i < 10; i++) {
+      throttle.removed(slow());
+    }
+
+    assertThat(throttle.getRate()).isWithin(TOLERANCE).of(MAX_RATE / 16);
+  }
+
+  private static long slow() {
+    return MILLISECONDS.toNanos(TARGET_LATENCY_MS + 1);
+  }
+
+  private static long fast() {
+    return MILLISECONDS.toNanos(TARGET_LATENCY_MS);
+  }
+}
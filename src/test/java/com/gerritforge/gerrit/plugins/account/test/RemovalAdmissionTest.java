@@ -0,0 +1,115 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.RemovalAdmission;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics;
+import com.gerritforge.gerrit.plugins.account.RemovalRejectedException;
+import com.google.gerrit.extensions.restapi.QuotaException;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemovalAdmissionTest {
+  private static final long QUEUE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+
+  @Mock private Configuration configMock;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setup() {
+    when(configMock.getMaxConcurrentDeletions()).thenReturn(1);
+    when(configMock.getDeletionQueueTimeoutMs()).thenReturn(QUEUE_TIMEOUT_MS);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenNoSlotAndQueueFull_whenAdmitting_shouldRejectAsTooManyRequests()
+      throws Exception {
+    RemovalAdmission admission = admission(0);
+
+    try (RemovalAdmission.Permit permit = admission.admit()) {
+      admission.admit();
+      fail("expected the deletion to be rejected");
+    } catch (RemovalRejectedException e) {
+      // Reported as 429 Too Many Requests by the REST API
+      assertThat(e).isInstanceOf(QuotaException.class);
+      assertThat(e.getRetryAfterSeconds()).isEqualTo(5);
+    }
+    assertThat(admission.getRetryAfterSeconds()).isEqualTo(5);
+  }
+
+  @Test
+  public void givenNoSlot_whenAdmittingWithRoomInTheQueue_shouldWaitForTheRunningDeletion()
+      throws Exception {
+    RemovalAdmission admission = admission(1);
+
+    AtomicReference<Thread> queuedThread = new AtomicReference<>();
+    Future<?> queued;
+    try (RemovalAdmission.Permit permit = admission.admit()) {
+      queued =
+          executor.submit(
+              () -> {
+                queuedThread.set(Thread.currentThread());
+                try (RemovalAdmission.Permit next = admission.admit()) {
+                  return null;
+                }
+              });
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (queuedThread.get() == null
+          || queuedThread.get().getState() != Thread.State.TIMED_WAITING) {
+        assertThat(System.nanoTime()).isLessThan(deadline);
+        Thread.sleep(1);
+      }
+    }
+
+    queued.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void givenPermitClosed_whenAdmitting_shouldReuseItsSlot() throws Exception {
+    RemovalAdmission admission = admission(0);
+
+    admission.admit().close();
+
+    admission.admit().close();
+  }
+
+  private RemovalAdmission admission(int maxQueued) {
+    when(configMock.getMaxQueuedDeletions()).thenReturn(maxQueued);
+    return new RemovalAdmission(configMock, new RemovalMetrics(new DisabledMetricMaker()));
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints;
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints.Checkpoint;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics.Phase;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RemovalCheckpointsTest {
+  private static final String JOURNAL_FILE = "removal-checkpoints.journal";
+  private static final int COMPLETED = 1 << 30;
+  private static final int MIN_COMPACTION_ENTRIES = 10000;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path pluginData;
+  private RemovalCheckpoints checkpoints;
+
+  @Before
+  public void setup() {
+    pluginData = tempFolder.getRoot().toPath();
+  }
+
+  @After
+  public void tearDown() {
+    if (checkpoints != null) {
+      checkpoints.stop();
+    }
+  }
+
+  @Test
+  public void givenStepsDone_whenRestarting_shouldReplayThemOnResume() throws Exception {
+    checkpoints = start();
+    Checkpoint checkpoint = checkpoints.open(1, false);
+    checkpoint.done(Phase.EMAILS);
+    checkpoint.done(Phase.SSH_KEYS);
+    checkpoints.open(2, false).completed();
+
+    checkpoints.stop();
+    checkpoints = start();
+
+    Checkpoint resumed = checkpoints.open(1, true);
+    assertThat(resumed.isDone(Phase.EMAILS)).isTrue();
+    assertThat(resumed.isDone(Phase.SSH_KEYS)).isTrue();
+    assertThat(resumed.isDone(Phase.FULL_NAME)).isFalse();
+    assertThat(checkpoints.open(1, false).isDone(Phase.EMAILS)).isFalse();
+    assertThat(checkpoints.isCompleted(1)).isFalse();
+    assertThat(checkpoints.isCompleted(2)).isTrue();
+  }
+
+  @Test
+  public void givenJournalEntry_whenCompacted_shouldKeepItsStepsAndUpdateTime() throws Exception {
+    long updatedOn = Instant.now().getEpochSecond() - 60;
+    int steps = COMPLETED | bit(Phase.EMAILS) | bit(Phase.PERSONAL_REFS);
+    writeJournal("7 " + steps + " " + updatedOn, "invalid entry");
+
+    checkpoints = start();
+
+    assertThat(readJournal()).containsExactly("7 " + steps + " " + updatedOn);
+    assertThat(checkpoints.isCompleted(7)).isTrue();
+    assertThat(checkpoints.open(7, true).isDone(Phase.PERSONAL_REFS)).isTrue();
+    assertThat(checkpoints.open(7, true).isDone(Phase.FULL_NAME)).isFalse();
+  }
+
+  @Test
+  public void givenOldCompletedRemoval_whenStarting_shouldDropIt() throws Exception {
+    long now = Instant.now().getEpochSecond();
+    long twoDaysAgo = now - TimeUnit.DAYS.toSeconds(2);
+    writeJournal(
+        "1 " + (COMPLETED | bit(Phase.EMAILS)) + " " + twoDaysAgo,
+        "2 " + bit(Phase.EMAILS) + " " + twoDaysAgo,
+        "3 " + COMPLETED + " " + (now - 60));
+
+    checkpoints = start();
+
+    assertThat(checkpoints.isCompleted(1)).isFalse();
+    assertThat(checkpoints.open(1, true).isDone(Phase.EMAILS)).isFalse();
+    assertThat(checkpoints.open(2, true).isDone(Phase.EMAILS)).isTrue();
+    assertThat(checkpoints.isCompleted(3)).isTrue();
+    assertThat(readJournal()).hasSize(2);
+  }
+
+  @Test
+  public void givenManyEntriesAppended_whenRecording_shouldCompactTheJournal() throws Exception {
+    checkpoints = start();
+    Checkpoint checkpoint = checkpoints.open(1, false);
+
+    for (int i = 0; i <= MIN_COMPACTION_ENTRIES; i++) {
+      checkpoint.done(Phase.EMAILS);
+    }
+    checkpoint.done(Phase.SSH_KEYS);
+
+    assertThat(readJournal().size()).isAtMost(2);
+    checkpoints.stop();
+    checkpoints = start();
+    assertThat(checkpoints.open(1, true).isDone(Phase.SSH_KEYS)).isTrue();
+  }
+
+  private RemovalCheckpoints start() {
+    RemovalCheckpoints started = new RemovalCheckpoints(pluginData);
+    started.start();
+    return started;
+  }
+
+  private void writeJournal(String... entries) throws Exception {
+    Files.write(pluginData.resolve(JOURNAL_FILE), ImmutableList.copyOf(entries), UTF_8);
+  }
+
+  private ImmutableList<String> readJournal() throws Exception {
+    return ImmutableList.copyOf(Files.readAllLines(pluginData.resolve(JOURNAL_FILE), UTF_8));
+  }
+
+  private static int bit(Phase phase) {
+    return 1 << phase.ordinal();
+  }
+}
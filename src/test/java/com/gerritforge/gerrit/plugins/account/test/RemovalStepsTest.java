@@ -0,0 +1,220 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountRemovalStep;
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.DeletionRecord;
+import com.gerritforge.gerrit.plugins.account.RemovalCheckpoints;
+import com.gerritforge.gerrit.plugins.account.RemovalContext;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics;
+import com.gerritforge.gerrit.plugins.account.RemovalSteps;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemovalStepsTest {
+  private static final int THREADS = 4;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock private WorkQueue workQueueMock;
+  @Mock private Configuration configMock;
+  @Mock private CurrentUser userMock;
+
+  private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+  private ScheduledThreadPoolExecutor executor;
+
+  @Before
+  public void setup() {
+    executor = new ScheduledThreadPoolExecutor(THREADS);
+    when(configMock.getRemovalStepThreads()).thenReturn(THREADS);
+    when(workQueueMock.createQueue(THREADS, "AccountRemovalSteps")).thenReturn(executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenDependentStep_whenRunning_shouldRunItAfterItsDependency() throws Exception {
+    RemovalSteps steps =
+        removalSteps(
+            new TestStep("second", true, null, "first"),
+            new TestStep("first", true, () -> Thread.sleep(100)));
+
+    steps.run(removal()).get(10, TimeUnit.SECONDS);
+
+    assertThat(ran).containsExactly("first", "second").inOrder();
+  }
+
+  @Test
+  public void givenNonBlockingStep_whenRunning_shouldReturnItsCompletion() throws Exception {
+    RemovalSteps steps =
+        removalSteps(
+            new TestStep("account", true, null),
+            new TestStep(
+                "webhook",
+                false,
+                () -> {
+                  throw new IOException("webhook unreachable");
+                },
+                "account"));
+
+    CompletableFuture<Void> background = steps.run(removal());
+
+    assertThat(ran).contains("account");
+    assertFailsWith(background, IOException.class);
+  }
+
+  @Test
+  public void givenCyclicDependencies_whenRunning_shouldSkipTheCycleAndRunTheOthers()
+      throws Exception {
+    RemovalSteps steps =
+        removalSteps(
+            new TestStep("x", true, null, "y"),
+            new TestStep("y", true, null, "x"),
+            new TestStep("independent", true, null));
+
+    try {
+      steps.run(removal());
+      fail("expected the cyclic steps to fail the removal");
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageThat().contains("depends on itself");
+    }
+    assertThat(ran).containsExactly("independent");
+  }
+
+  @Test
+  public void givenFailedDependency_whenRunning_shouldSkipTheDependentSteps() throws Exception {
+    RemovalSteps steps =
+        removalSteps(
+            new TestStep(
+                "account",
+                true,
+                () -> {
+                  throw new IOException("All-Users unavailable");
+                }),
+            new TestStep("ldap", false, null, "account"),
+            new TestStep("unknown_dependency", false, null, "missing"));
+
+    CompletableFuture<Void> background = null;
+    try {
+      background = steps.run(removal());
+      fail("expected the failed blocking step to fail the removal");
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().isEqualTo("All-Users unavailable");
+    }
+    assertThat(background).isNull();
+    assertThat(ran).isEmpty();
+  }
+
+  private RemovalSteps removalSteps(AccountRemovalStep... steps) {
+    return new RemovalSteps(
+        DynamicSet.of(ImmutableSet.copyOf(Arrays.asList(steps))),
+        new ThreadLocalRequestContext(),
+        () -> userMock,
+        workQueueMock,
+        configMock);
+  }
+
+  private RemovalContext removal() {
+    return new RemovalContext(
+        Account.id(1),
+        new DeletionRecord(1, null, false),
+        new RemovalCheckpoints(tempFolder.getRoot().toPath()).open(1, false),
+        new RemovalMetrics(new DisabledMetricMaker()));
+  }
+
+  private static void assertFailsWith(CompletableFuture<Void> future, Class<?> cause)
+      throws Exception {
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("expected the non-blocking steps to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(cause);
+    }
+  }
+
+  @FunctionalInterface
+  private interface StepAction {
+    void run() throws Exception;
+  }
+
+  private class TestStep implements AccountRemovalStep {
+    private final String name;
+    private final boolean blocking;
+    private final StepAction action;
+    private final Set<String> dependencies;
+
+    TestStep(String name, boolean blocking, StepAction action, String... dependencies) {
+      this.name = name;
+      this.blocking = blocking;
+      this.action = action;
+      this.dependencies = ImmutableSet.copyOf(dependencies);
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public Set<String> getDependencies() {
+      return dependencies;
+    }
+
+    @Override
+    public boolean isBlocking() {
+      return blocking;
+    }
+
+    @Override
+    public void remove(RemovalContext removal) throws Exception {
+      if (action != null) {
+        action.run();
+      }
+      ran.add(name);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.RemovalAdmission;
+import com.gerritforge.gerrit.plugins.account.RetryAfterFilter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryAfterFilterTest {
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final long RETRY_AFTER_SECONDS = 5;
+
+  @Mock private RemovalAdmission admissionMock;
+  @Mock private HttpServletRequest requestMock;
+  @Mock private HttpServletResponse responseMock;
+  @Mock private FilterChain chainMock;
+
+  private RetryAfterFilter filter;
+
+  @Before
+  public void setup() {
+    filter = new RetryAfterFilter(admissionMock);
+  }
+
+  @Test
+  public void givenAccountDeletionRejected_whenFiltering_shouldAdviseWhenToRetry()
+      throws Exception {
+    when(admissionMock.getRetryAfterSeconds()).thenReturn(RETRY_AFTER_SECONDS);
+    mockRequest("DELETE", "/a/accounts/1000002");
+    respondWith(SC_TOO_MANY_REQUESTS);
+
+    filter.doFilter(requestMock, responseMock, chainMock);
+
+    verify(responseMock).setHeader("Retry-After", Long.toString(RETRY_AFTER_SECONDS));
+    verify(responseMock).sendError(eq(SC_TOO_MANY_REQUESTS), anyString());
+  }
+
+  @Test
+  public void givenAccountDeletionAdmitted_whenFiltering_shouldNotAdviseToRetry() throws Exception {
+    mockRequest("DELETE", "/a/accounts/1000002");
+    respondWith(HttpServletResponse.SC_NO_CONTENT);
+
+    filter.doFilter(requestMock, responseMock, chainMock);
+
+    verify(responseMock).setStatus(HttpServletResponse.SC_NO_CONTENT);
+    verify(responseMock, never()).setHeader(eq("Retry-After"), anyString());
+  }
+
+  @Test
+  public void givenBulkDeletion_whenFiltering_shouldPassTheResponseThrough() throws Exception {
+    mockRequest("POST", "/a/config/server/account~delete");
+
+    filter.doFilter(requestMock, responseMock, chainMock);
+
+    verify(chainMock).doFilter(requestMock, responseMock);
+  }
+
+  @Test
+  public void givenOtherAccountRequest_whenFiltering_shouldPassTheResponseThrough()
+      throws Exception {
+    mockRequest("GET", "/a/accounts/1000002/account~footprint");
+
+    filter.doFilter(requestMock, responseMock, chainMock);
+
+    verify(chainMock).doFilter(requestMock, responseMock);
+  }
+
+  private void mockRequest(String method, String requestUri) {
+    when(requestMock.getMethod()).thenReturn(method);
+    when(requestMock.getRequestURI()).thenReturn(requestUri);
+  }
+
+  private void respondWith(int status) throws Exception {
+    doAnswer(
+            invocation -> {
+              HttpServletResponse response = invocation.getArgument(1);
+              if (status >= 400) {
+                response.sendError(status, "rejected");
+              } else {
+                response.setStatus(status);
+              }
+              return null;
+            })
+        .when(chainMock)
+        .doFilter(eq(requestMock), any(ServletResponse.class));
+  }
+}
@@ -0,0 +1,264 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.AccountLocks;
+import com.gerritforge.gerrit.plugins.account.AccountRemover;
+import com.gerritforge.gerrit.plugins.account.CoalescingAccountRemover;
+import com.gerritforge.gerrit.plugins.account.Configuration;
+import com.gerritforge.gerrit.plugins.account.GerritAccountRemover;
+import com.gerritforge.gerrit.plugins.account.RemovalMetrics;
+import com.gerritforge.gerrit.plugins.account.SoftDeletions;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.restapi.ResourceConflictException;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.account.Accounts;
+import com.google.gerrit.server.account.AccountsUpdate;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import java.sql.Timestamp;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SoftDeletionsTest {
+  private static final int ACCOUNT_ID = 1000001;
+  private static final int CALLER_ID = 1000000;
+  private static final long EXPIRED_MS = 1;
+  private static final long GRACE_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock private Accounts accountsMock;
+  @Mock private AccountsUpdate accountsUpdateMock;
+  @Mock private IdentifiedUser callerMock;
+  @Mock private AccountRemover removerMock;
+  @Mock private GerritAccountRemover gerritRemoverMock;
+  @Mock private IdentifiedUser.GenericFactory userFactoryMock;
+  @Mock private Configuration configMock;
+
+  private final AccountLocks locks = new AccountLocks();
+  private ScheduledThreadPoolExecutor executor;
+  private SoftDeletions softDeletions;
+
+  @Before
+  public void setup() throws Exception {
+    executor = new ScheduledThreadPoolExecutor(2);
+    AccountState state =
+        AccountState.forAccount(Account.builder(Account.id(ACCOUNT_ID), new Timestamp(0)).build());
+    when(accountsMock.get(Account.id(ACCOUNT_ID))).thenReturn(Optional.of(state));
+    when(callerMock.getAccountId()).thenReturn(Account.id(CALLER_ID));
+    when(accountsUpdateMock.update(
+            any(String.class),
+            eq(Account.id(ACCOUNT_ID)),
+            any(AccountsUpdate.AccountUpdater.class)))
+        .thenReturn(Optional.of(state));
+  }
+
+  @After
+  public void tearDown() {
+    if (softDeletions != null) {
+      softDeletions.stop();
+    }
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void givenGracePeriodExpired_whenCheckingSoftDeletions_shouldScrubAsTheCaller()
+      throws Exception {
+    when(userFactoryMock.create(Account.id(CALLER_ID))).thenReturn(callerMock);
+    startSoftDeletions(EXPIRED_MS);
+
+    softDeletions.softDelete(ACCOUNT_ID);
+
+    verify(removerMock, timeout(10000)).removeAccount(ACCOUNT_ID);
+    verify(userFactoryMock).create(Account.id(CALLER_ID));
+  }
+
+  @Test
+  public void givenGracePeriodNotExpired_whenUndeleting_shouldRestoreTheAccountOnce()
+      throws Exception {
+    startSoftDeletions(GRACE_PERIOD_MS);
+
+    Timestamp scrubOn = softDeletions.softDelete(ACCOUNT_ID);
+    softDeletions.undelete(ACCOUNT_ID);
+
+    assertThat(scrubOn.getTime()).isGreaterThan(System.currentTimeMillis());
+    verify(accountsUpdateMock)
+        .update(
+            eq("Restore account via account plugin"),
+            eq(Account.id(ACCOUNT_ID)),
+            any(AccountsUpdate.AccountUpdater.class));
+    assertUndeleteConflicts();
+    verify(removerMock, never()).removeAccount(ACCOUNT_ID);
+  }
+
+  @Test
+  public void givenSoftDeletedAccount_whenSoftDeletingAgain_shouldConflict() throws Exception {
+    startSoftDeletions(GRACE_PERIOD_MS);
+    softDeletions.softDelete(ACCOUNT_ID);
+
+    try {
+      softDeletions.softDelete(ACCOUNT_ID);
+      fail("expected the second soft deletion to conflict");
+    } catch (ResourceConflictException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void givenAccountBeingScrubbed_whenUndeleting_shouldConflict() throws Exception {
+    when(userFactoryMock.create(Account.id(CALLER_ID))).thenReturn(callerMock);
+    CountDownLatch scrubStarted = new CountDownLatch(1);
+    CountDownLatch releaseScrub = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              scrubStarted.countDown();
+              releaseScrub.await();
+              return null;
+            })
+        .when(removerMock)
+        .removeAccount(ACCOUNT_ID);
+    startSoftDeletions(EXPIRED_MS);
+
+    softDeletions.softDelete(ACCOUNT_ID);
+    assertThat(scrubStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    try {
+      assertUndeleteConflicts();
+    } finally {
+      releaseScrub.countDown();
+    }
+    verify(accountsUpdateMock, never())
+        .update(
+            eq("Restore account via account plugin"),
+            any(Account.Id.class),
+            any(AccountsUpdate.AccountUpdater.class));
+  }
+
+  @Test
+  public void givenResumedRemovalInProgress_whenUndeleting_shouldWaitForIt() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await();
+              return null;
+            })
+        .when(gerritRemoverMock)
+        .resumeRemoval(ACCOUNT_ID);
+    CoalescingAccountRemover remover =
+        new CoalescingAccountRemover(
+            gerritRemoverMock, new RemovalMetrics(new DisabledMetricMaker()), locks);
+    startSoftDeletions(GRACE_PERIOD_MS);
+    softDeletions.softDelete(ACCOUNT_ID);
+
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> removal =
+          callers.submit(
+              () -> {
+                remover.resumeRemoval(ACCOUNT_ID);
+                return null;
+              });
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+      AtomicReference<Thread> undeleteThread = new AtomicReference<>();
+      Future<?> undelete =
+          callers.submit(
+              () -> {
+                undeleteThread.set(Thread.currentThread());
+                softDeletions.undelete(ACCOUNT_ID);
+                return null;
+              });
+      awaitWaiting(undeleteThread);
+      verify(accountsUpdateMock, never())
+          .update(
+              eq("Restore account via account plugin"),
+              any(Account.Id.class),
+              any(AccountsUpdate.AccountUpdater.class));
+      release.countDown();
+      removal.get(10, TimeUnit.SECONDS);
+      undelete.get(10, TimeUnit.SECONDS);
+    } finally {
+      release.countDown();
+      callers.shutdownNow();
+    }
+
+    verify(accountsUpdateMock)
+        .update(
+            eq("Restore account via account plugin"),
+            eq(Account.id(ACCOUNT_ID)),
+            any(AccountsUpdate.AccountUpdater.class));
+  }
+
+  private static void awaitWaiting(AtomicReference<Thread> thread) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  private void startSoftDeletions(long gracePeriodMs) throws Exception {
+    when(configMock.getSoftDeleteGracePeriodMs()).thenReturn(gracePeriodMs);
+    softDeletions =
+        new SoftDeletions(
+            accountsMock,
+            () -> accountsUpdateMock,
+            () -> callerMock,
+            removerMock,
+            locks,
+            executor,
+            new ThreadLocalRequestContext(),
+            userFactoryMock,
+            configMock,
+            tempFolder.getRoot().toPath());
+    softDeletions.start();
+  }
+
+  private void assertUndeleteConflicts() throws Exception {
+    try {
+      softDeletions.undelete(ACCOUNT_ID);
+      fail("expected the undeletion to conflict");
+    } catch (ResourceConflictException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright (C) 2019 GerritForge Ltd
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.plugins.account.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gerritforge.gerrit.plugins.account.StaticAssetServlet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StaticAssetServletTest {
+
+  @Mock private HttpServletRequest requestMock;
+  @Mock private HttpServletResponse responseMock;
+
+  private StaticAssetServlet servlet;
+  private ByteArrayOutputStream body;
+
+  @Before
+  public void setup() throws Exception {
+    servlet = new StaticAssetServlet();
+    body = new ByteArrayOutputStream();
+    when(requestMock.getMethod()).thenReturn("GET");
+    when(responseMock.getOutputStream())
+        .thenReturn(
+            new ServletOutputStream() {
+              @Override
+              public void write(int b) throws IOException {
+                body.write(b);
+              }
+
+              @Override
+              public boolean isReady() {
+                return true;
+              }
+
+              @Override
+              public void setWriteListener(WriteListener writeListener) {}
+            });
+  }
+
+  @Test
+  public void givenAccountPage_whenServed_shouldReferenceImmutableHashedScript() throws Exception {
+    when(requestMock.getPathInfo()).thenReturn("/account.html");
+    servlet.service(requestMock, responseMock);
+
+    verify(responseMock).setHeader("Cache-Control", "no-cache");
+    String page = body.toString("UTF-8");
+    String script = page.replaceAll("(?s).*src=\"(js/account\\.[0-9a-f]+\\.js)\".*", "$1");
+    assertThat(script).matches("js/account\\.[0-9a-f]{12}\\.js");
+
+    body.reset();
+    when(requestMock.getPathInfo()).thenReturn("/" + script);
+    servlet.service(requestMock, responseMock);
+
+    verify(responseMock).setHeader("Cache-Control", "public, max-age=31536000, immutable");
+    assertThat(body.size()).isGreaterThan(0);
+  }
+
+  @Test
+  public void givenMatchingETag_whenServed_shouldReturnNotModified() throws Exception {
+    when(requestMock.getPathInfo()).thenReturn("/js/account.js");
+    servlet.service(requestMock, responseMock);
+    ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+    verify(responseMock).setHeader(eq("ETag"), etag.capture());
+
+    body.reset();
+    when(requestMock.getHeader("If-None-Match")).thenReturn(etag.getValue());
+    servlet.service(requestMock, responseMock);
+
+    verify(responseMock).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    assertThat(body.size()).isEqualTo(0);
+    verify(responseMock, never()).setHeader(eq("Content-Encoding"), any());
+  }
+}